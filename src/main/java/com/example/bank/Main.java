@@ -1,10 +1,14 @@
 package com.example.bank;
 
+import java.nio.file.Path;
 import java.time.Clock;
+import java.time.Duration;
 import java.time.ZoneId;
 
 import com.example.bank.cli.ConsoleApp;
 import com.example.bank.repository.BankRepository;
+import com.example.bank.repository.FsyncPolicy;
+import com.example.bank.repository.Journal;
 import com.example.bank.service.AccountService;
 import com.example.bank.service.PaymentService;
 import com.example.bank.service.ReportService;
@@ -16,13 +20,17 @@ public class Main {
         Clock clock = Clock.systemUTC();
         ZoneId businessZone = ZoneId.of("America/New_York");
 
-        BankRepository repo = new BankRepository(clock, businessZone);
+        //optional data directory: journal every change there and recover from it on startup
+        Journal journal = args.length > 0 ? new Journal(Path.of(args[0]), FsyncPolicy.PER_BATCH) : null;
 
-        AccountService accountService = new AccountService(repo, clock, businessZone);
-        TransferService transferService = new TransferService(repo, clock, businessZone);
-        PaymentService paymentService = new PaymentService(repo, clock, businessZone);
-        ReportService reports = new ReportService(repo);
+        //reports repeat with the book unchanged more often than not: cache them, tolerating a few seconds of staleness
+        try (BankRepository repo = new BankRepository(clock, businessZone, journal);
+             ReportService reports = new ReportService(repo, clock, Duration.ofSeconds(5), 64)) {
+            AccountService accountService = new AccountService(repo, clock, businessZone);
+            TransferService transferService = new TransferService(repo, clock, businessZone);
+            PaymentService paymentService = new PaymentService(repo, clock, businessZone);
 
-        new ConsoleApp(repo, accountService, transferService, paymentService, reports).run();
+            new ConsoleApp(repo, accountService, transferService, paymentService, reports).run();
+        }
     }
 }
\ No newline at end of file
@@ -8,6 +8,7 @@ import java.util.UUID;
 
 import com.example.bank.domain.AccountType;
 import com.example.bank.domain.Customer;
+import com.example.bank.domain.Money;
 import com.example.bank.repository.BankRepository;
 import com.example.bank.service.AccountService;
 import com.example.bank.service.PaymentService;
@@ -156,15 +157,15 @@ public class ConsoleApp {
         }
     }
 
-    private BigDecimal readPositiveMoney(String prompt) {
+    private Money readPositiveMoney(String prompt) {
         while (true) {
             String input = readNonEmpty(prompt);
             try {
-                BigDecimal amount = new BigDecimal(input).setScale(2, RoundingMode.HALF_UP);
-                if (amount.compareTo(BigDecimal.ZERO) > 0) {
+                Money amount = Money.of(new BigDecimal(input).setScale(Money.SCALE, RoundingMode.HALF_UP));
+                if (amount.isPositive()) {
                     return amount;
                 }
-            } catch (NumberFormatException ignored) {}
+            } catch (IllegalArgumentException ignored) {} //malformed, or too large for Money
             System.out.println("Invalid amount. Please enter a positive number.");
         }
     }
@@ -213,9 +214,12 @@ public class ConsoleApp {
         if (accountsList.isEmpty()) {
             throw new IllegalStateException("No accounts available. Please create an account first.");
         }
+        var balances = repo.getBalanceSnapshot(); //one consistent cut for the whole listing
         System.out.println("Available Accounts:");
         for (int i = 0; i < accountsList.size(); i++) {
-            System.out.printf("%d. %s (ID: %s, Balance: %s)%n", i + 1, accountsList.get(i).getCustomerId(), accountsList.get(i).getAccountType(), accountsList.get(i).getId(), accountsList.get(i).getBalance());
+            var account = accountsList.get(i);
+            System.out.printf("%d. %s %s (ID: %s, Balance: %s)%n", i + 1, account.getCustomerId(), account.getAccountType(), account.getId(),
+                              balances.getOrDefault(account.getId(), account.getBalanceMoney()));
         }
         while (true) {
             String input = readLine("Select account by number: ");
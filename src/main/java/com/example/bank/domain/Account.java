@@ -3,20 +3,26 @@ package com.example.bank.domain;
 import java.math.BigDecimal;
 import java.util.Objects;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantLock; //same thread can acquire the lock multiple times, balance thread needs atomicity
 
 public class Account {
     private final UUID id;
     private final UUID customerId;
     private final AccountType accountType;
-    private BigDecimal balance;
-    private final ReentrantLock lock = new ReentrantLock(); //manual lock to protect shared, mutable state 
+    private final AtomicLong balance; //minor units, see Money; updated by CAS so single-account operations need no lock
+    private final ReentrantLock lock = new ReentrantLock(); //serializes hot debits across stripes and hot-account setup
+    private volatile StripedBalance stripes; //set once the account is marked hot; the balance is then balance + stripes
 
-    public Account(UUID id, UUID customerId, AccountType accountType, BigDecimal initialBalance) {
+    public Account(UUID id, UUID customerId, AccountType accountType, Money initialBalance) {
         this.id = Objects.requireNonNull(id, "Account ID cannot be null");
         this.customerId = Objects.requireNonNull(customerId, "Customer ID cannot be null");
         this.accountType = Objects.requireNonNull(accountType, "Account type cannot be null");
-        this.balance = initialBalance == null ? BigDecimal.ZERO : initialBalance;
+        this.balance = new AtomicLong(initialBalance == null ? 0 : initialBalance.minorUnits());
+    }
+
+    public Account(UUID id, UUID customerId, AccountType accountType, BigDecimal initialBalance) {
+        this(id, customerId, accountType, initialBalance == null ? null : Money.of(initialBalance));
     }
 
     public UUID getId() {
@@ -31,28 +37,164 @@ public class Account {
         return accountType;
     }
 
+    //API edge view of the balance
     public BigDecimal getBalance() {
-        return balance;
+        return BigDecimal.valueOf(total(), Money.SCALE);
+    }
+
+    public Money getBalanceMoney() {
+        return Money.ofMinor(total());
+    }
+
+    //a point-in-time check; use tryWithdraw to check and debit atomically
+    public boolean hasFunds(Money amount) {
+        return total() >= amount.minorUnits();
+    }
+
+    //Splits further credits over `stripeCount` cells so concurrent credits stop contending; money already in the account stays put
+    public void markHot(int stripeCount) {
+        if (stripeCount < 2) {
+            throw new IllegalArgumentException("A hot account needs at least two stripes");
+        }
+        lock.lock();
+        try {
+            if (stripes == null) {
+                stripes = new StripedBalance(stripeCount);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean isHot() {
+        return stripes != null;
     }
 
     public ReentrantLock getLock() {
         return lock;
     }
 
-    public void deposit(BigDecimal amount) {
-        if (amount.compareTo(BigDecimal.ZERO) <= 0) {
+    public void deposit(Money amount) {
+        if (!amount.isPositive()) {
             throw new IllegalArgumentException("Deposit amount must be positive");
         }
-        balance = balance.add(amount);
+        StripedBalance striped = stripes;
+        if (striped != null) {
+            striped.credit(amount.minorUnits());
+        } else {
+            balance.accumulateAndGet(amount.minorUnits(), Money::add);
+        }
     }
 
-    public void withdraw(BigDecimal amount) {
-        if (amount.compareTo(BigDecimal.ZERO) <= 0) {
-            throw new IllegalArgumentException("Withdrawal amount must be positive");
+    //throws as deposit(amount) would if the balance cannot take it right now; postings check this before they
+    //journal a credit, so the credit that follows the journal record is not refused
+    public void checkDeposit(Money amount) {
+        if (!amount.isPositive()) {
+            throw new IllegalArgumentException("Deposit amount must be positive");
         }
-        if (balance.compareTo(amount) < 0) {
+        Money.add(total(), amount.minorUnits());
+    }
+
+    public void withdraw(Money amount) {
+        if (!tryWithdraw(amount)) {
             throw new IllegalArgumentException("Insufficient funds for withdrawal");
         }
-        balance = balance.subtract(amount);
+    }
+
+    //debits only if the balance covers the amount at the moment of the CAS; false leaves the balance untouched.
+    //The base cell is tried first, lock-free, even on a hot account; only when it alone is short are the
+    //stripes gathered, under the account lock.
+    public boolean tryWithdraw(Money amount) {
+        long debit = debitAmount(amount);
+        if (debitBase(debit)) {
+            return true;
+        }
+        if (stripes == null) {
+            return false;
+        }
+        //the base is short, but on a hot account the rest may sit in the stripes
+        lock.lock();
+        try {
+            return debitStriped(debit);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    //like tryWithdraw, but when the base cell is short and a hot account's debit lock is held, answers BUSY
+    //instead of waiting for it
+    public DebitResult tryWithdrawNow(Money amount) {
+        long debit = debitAmount(amount);
+        if (debitBase(debit)) {
+            return DebitResult.DEBITED;
+        }
+        if (stripes == null) {
+            return DebitResult.INSUFFICIENT_FUNDS;
+        }
+        if (!lock.tryLock()) {
+            return DebitResult.BUSY;
+        }
+        try {
+            return debitStriped(debit) ? DebitResult.DEBITED : DebitResult.INSUFFICIENT_FUNDS;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static long debitAmount(Money amount) {
+        if (!amount.isPositive()) {
+            throw new IllegalArgumentException("Withdrawal amount must be positive");
+        }
+        return amount.minorUnits();
+    }
+
+    //the lock-free path: takes the whole debit from the base cell, or returns false if it holds less
+    private boolean debitBase(long debit) {
+        long current;
+        while ((current = balance.get()) >= debit) {
+            if (balance.compareAndSet(current, current - debit)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    //caller holds the lock, so while this runs the stripes only grow; the base cell may still lose money to a
+    //lock-free debit, in which case whatever was gathered is handed back and the debit fails
+    private boolean debitStriped(long debit) {
+        if (total() < debit) {
+            return false;
+        }
+        long taken = takeFromBase(debit);
+        taken += stripes.take(debit - taken);
+        if (taken < debit) {
+            //a lock-free debit beat us to the base cell
+            stripes.credit(taken);
+            return false;
+        }
+        return true;
+    }
+
+    private long takeFromBase(long wanted) {
+        long current;
+        long part;
+        do {
+            current = balance.get();
+            part = Math.min(current, wanted);
+        } while (part > 0 && !balance.compareAndSet(current, current - part));
+        return Math.max(part, 0);
+    }
+
+    private long total() {
+        StripedBalance striped = stripes;
+        return striped == null ? balance.get() : Money.add(balance.get(), striped.sum());
+    }
+
+    public void deposit(BigDecimal amount) {
+        deposit(Money.of(amount));
+    }
+
+    public void withdraw(BigDecimal amount) {
+        withdraw(Money.of(amount));
     }
 }
@@ -0,0 +1,8 @@
+package com.example.bank.domain;
+
+//outcome of a debit attempt that is not allowed to wait, see Account.tryWithdrawNow
+public enum DebitResult {
+    DEBITED,
+    INSUFFICIENT_FUNDS,
+    BUSY //a hot account's debit lock was held; nothing was taken
+}
@@ -0,0 +1,68 @@
+/*
+Extra balance cells for a hot account
+    - credits land on the caller's stripe, picked by thread id, so concurrent credits rarely share a
+      cache line or a CAS
+    - stripes are padded apart within one AtomicLongArray
+    - stripes only ever gain money from credits; debits take it back out while holding the account
+      lock (see Account.tryWithdraw)
+*/
+package com.example.bank.domain;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+final class StripedBalance {
+    private static final int PAD = 16; //longs between stripes: 128 bytes, clear of adjacent-line prefetch
+
+    private final int mask;
+    private final AtomicLongArray cells;
+
+    StripedBalance(int stripes) {
+        int count = Integer.highestOneBit(Math.max(1, stripes - 1)) << 1; //round up to a power of two
+        this.mask = count - 1;
+        this.cells = new AtomicLongArray(count * PAD);
+    }
+
+    int stripes() {
+        return mask + 1;
+    }
+
+    void credit(long amount) {
+        int index = home() * PAD;
+        long current;
+        do {
+            current = cells.get(index);
+        } while (!cells.compareAndSet(index, current, Money.add(current, amount)));
+    }
+
+    long sum() {
+        long sum = 0;
+        for (int s = 0; s <= mask; s++) {
+            sum = Money.add(sum, cells.get(s * PAD));
+        }
+        return sum;
+    }
+
+    //takes up to `wanted` from the stripes, the caller's own first; returns how much it took
+    long take(long wanted) {
+        long taken = 0;
+        int home = home();
+        for (int i = 0; i <= mask && taken < wanted; i++) {
+            int index = ((home + i) & mask) * PAD;
+            long current;
+            long part;
+            do {
+                current = cells.get(index);
+                part = Math.min(current, wanted - taken);
+            } while (part > 0 && !cells.compareAndSet(index, current, current - part));
+            if (part > 0) {
+                taken += part;
+            }
+        }
+        return taken;
+    }
+
+    private int home() {
+        long h = Thread.currentThread().threadId() * 0x9E3779B97F4A7C15L;
+        return (int) (h >>> 40) & mask;
+    }
+}
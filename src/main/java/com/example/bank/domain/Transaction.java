@@ -13,7 +13,7 @@ public class Transaction {
     private final TransactionType type;
     private final UUID fromAccountId;
     private final UUID toAccountId;
-    private final BigDecimal amount;  
+    private final Money amount;
     private final String description;
 
     public Transaction(UUID id, 
@@ -22,7 +22,7 @@ public class Transaction {
                         TransactionType type,
                         UUID fromAccountId, 
                         UUID toAccountId, 
-                        BigDecimal amount, 
+                        Money amount, 
                         String description) {
         this.id = Objects.requireNonNull(id, "Transaction ID cannot be null");
         this.timestamp = Objects.requireNonNull(timestamp, "Timestamp cannot be null");
@@ -30,13 +30,19 @@ public class Transaction {
         this.type = Objects.requireNonNull(type, "Transaction type cannot be null");
         this.fromAccountId = fromAccountId; // can be null for deposits
         this.toAccountId = toAccountId;     // can be null for withdrawals
-        if (amount == null || amount.compareTo(BigDecimal.ZERO) <= 0) {
+        if (amount == null || !amount.isPositive()) {
             throw new IllegalArgumentException("Transaction amount must be positive");
         }
         this.amount = amount;
         this.description = description != null ? description : "";
     }
 
+    public Transaction(UUID id, Instant timestamp, LocalDate businessDate, TransactionType type,
+                       UUID fromAccountId, UUID toAccountId, BigDecimal amount, String description) {
+        this(id, timestamp, businessDate, type, fromAccountId, toAccountId,
+             amount == null ? null : Money.of(amount), description);
+    }
+
     public UUID getId() {
         return id;
     }
@@ -61,7 +67,12 @@ public class Transaction {
         return toAccountId;
     }
 
+    //API edge view of the amount
     public BigDecimal getAmount() {
+        return amount.toBigDecimal();
+    }
+
+    public Money getAmountMoney() {
         return amount;
     }
 
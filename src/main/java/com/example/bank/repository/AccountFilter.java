@@ -0,0 +1,81 @@
+/*
+Bloom filter over the account ids of an immutable file of postings
+    - sized to the file's distinct accounts: about 10 bits and 7 probes each, under 1% false positives
+    - a power-of-two number of bits; probe k is h1 + k * h2 over a mixed 64-bit hash (double hashing)
+Used by the tiered store's cold files and the journal archive's sealed segments to skip whole files.
+*/
+package com.example.bank.repository;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.UUID;
+
+final class AccountFilter {
+    private static final int BITS_PER_ACCOUNT = 10;
+    private static final int PROBES = 7; //optimal for 10 bits per key: ~0.8% false positives
+    private static final int MAX_WORDS = 1 << 24;
+
+    private final long[] bits;
+
+    private AccountFilter(long[] bits) {
+        this.bits = bits;
+    }
+
+    static AccountFilter of(Collection<UUID> accountIds) {
+        int size = Integer.highestOneBit(Math.max(64, accountIds.size() * BITS_PER_ACCOUNT - 1)) << 1;
+        long[] bits = new long[size / 64];
+        for (UUID id : accountIds) {
+            long h = hash(id);
+            for (int k = 0; k < PROBES; k++) {
+                int bit = probe(h, k) & (size - 1);
+                bits[bit >>> 6] |= 1L << bit;
+            }
+        }
+        return new AccountFilter(bits);
+    }
+
+    boolean mayContain(UUID accountId) {
+        long h = hash(accountId);
+        int mask = bits.length * 64 - 1;
+        for (int k = 0; k < PROBES; k++) {
+            int bit = probe(h, k) & mask;
+            if ((bits[bit >>> 6] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    void write(DataOutput out) throws IOException {
+        out.writeInt(bits.length);
+        for (long word : bits) {
+            out.writeLong(word);
+        }
+    }
+
+    static AccountFilter read(DataInput in) throws IOException {
+        int words = in.readInt();
+        if (words < 1 || words > MAX_WORDS || Integer.bitCount(words) != 1) {
+            throw new IOException("Invalid account filter size " + words);
+        }
+        long[] bits = new long[words];
+        for (int i = 0; i < words; i++) {
+            bits[i] = in.readLong();
+        }
+        return new AccountFilter(bits);
+    }
+
+    //double hashing: h2 is odd so probes never collapse onto one bit
+    private static int probe(long h, int k) {
+        return (int) h + k * ((int) (h >>> 32) | 1);
+    }
+
+    private static long hash(UUID id) {
+        long h = id.getMostSignificantBits() * 0x9E3779B97F4A7C15L ^ id.getLeastSignificantBits();
+        h ^= h >>> 29;
+        h *= 0xBF58476D1CE4E5B9L;
+        return h ^ (h >>> 32);
+    }
+}
@@ -0,0 +1,93 @@
+/*
+Posting history of a durable repository that has been checkpointed before
+    - the journal archive holds what earlier checkpoints sealed, read from disk on demand
+    - the live store holds the journal tail replayed at startup and every posting since; appends go there
+    - archived postings were journaled before every live one, so newest-first reads take the live
+      store first and only reach the archive for what it cannot answer; the archive is the first partition
+*/
+package com.example.bank.repository;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.UUID;
+
+import com.example.bank.domain.Transaction;
+
+final class ArchivedTransactionStore implements TransactionStore, AutoCloseable {
+    private final JournalArchive archive;
+    private final TransactionStore live;
+
+    ArchivedTransactionStore(JournalArchive archive, TransactionStore live) {
+        this.archive = Objects.requireNonNull(archive, "Journal archive cannot be null");
+        this.live = Objects.requireNonNull(live, "Transaction store cannot be null");
+    }
+
+    @Override
+    public void append(Transaction transaction) {
+        live.append(transaction);
+    }
+
+    @Override
+    public void appendAll(List<Transaction> batch) {
+        live.appendAll(batch);
+    }
+
+    @Override
+    public long size() {
+        return archive.size() + live.size();
+    }
+
+    @Override
+    public List<Transaction> recent(int n) {
+        List<Transaction> result = new ArrayList<>(live.recent(n));
+        if (result.size() < n) {
+            result.addAll(archive.recent(n - result.size()));
+        }
+        return List.copyOf(result);
+    }
+
+    @Override
+    public List<Transaction> between(Instant from, Instant to) {
+        List<Transaction> result = new ArrayList<>(live.between(from, to));
+        result.addAll(archive.between(from, to));
+        return List.copyOf(result);
+    }
+
+    @Override
+    public long countBetween(Instant from, Instant to) {
+        return live.countBetween(from, to) + archive.countBetween(from, to);
+    }
+
+    @Override
+    public List<Transaction> byAccount(UUID accountId) {
+        List<Transaction> history = new ArrayList<>(live.byAccount(accountId));
+        history.addAll(archive.byAccount(accountId));
+        return List.copyOf(history);
+    }
+
+    @Override
+    public List<Transaction> all() {
+        return recent((int) Math.min(size(), Integer.MAX_VALUE - 8));
+    }
+
+    @Override
+    public List<PositionedHistory> partitions() {
+        List<PositionedHistory> partitions = new ArrayList<>();
+        partitions.add(archive);
+        partitions.addAll(live.partitions());
+        return List.copyOf(partitions);
+    }
+
+    @Override
+    public void close() {
+        if (live instanceof AutoCloseable closeable) {
+            try {
+                closeable.close();
+            } catch (Exception e) {
+                throw new IllegalStateException("Failed to close transaction store", e);
+            }
+        }
+    }
+}
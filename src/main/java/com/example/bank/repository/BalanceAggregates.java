@@ -0,0 +1,95 @@
+/*
+Running balance totals for the whole book, per customer and per account type
+    - opened accounts contribute their opening balance; every live posting then adds its legs, so the
+      totals move with the balances and reports never have to sum accounts
+    - each account is mapped once to the adders of its customer and type, so a posting costs one map
+      lookup per leg plus LongAdder increments that do not contend across threads
+    - a transfer between two accounts of the same customer and type leaves those totals alone
+    - the totals change inside the same posting-gate entry as the balances, so a consistent read
+      (BankRepository.readConsistent) sees them agree
+*/
+package com.example.bank.repository;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.example.bank.domain.Account;
+import com.example.bank.domain.AccountType;
+import com.example.bank.domain.Money;
+import com.example.bank.domain.Transaction;
+
+final class BalanceAggregates {
+    private final LongAdder total = new LongAdder(); //minor units, like every adder here
+    private final Map<UUID, LongAdder> byCustomer = new ConcurrentHashMap<>();
+    private final Map<AccountType, LongAdder> byAccountType = new EnumMap<>(AccountType.class); //filled once, then read-only
+    private final Map<UUID, Owner> owners = new ConcurrentHashMap<>(); //accountId -> its customer's and type's adders
+
+    BalanceAggregates() {
+        for (AccountType type : AccountType.values()) {
+            byAccountType.put(type, new LongAdder());
+        }
+    }
+
+    void open(Account account, Money openingBalance) {
+        Owner owner = new Owner(byCustomer.computeIfAbsent(account.getCustomerId(), k -> new LongAdder()),
+                                byAccountType.get(account.getAccountType()));
+        owners.put(account.getId(), owner);
+        owner.add(openingBalance.minorUnits());
+        total.add(openingBalance.minorUnits());
+    }
+
+    void post(Transaction tx) {
+        long amount = tx.getAmountMoney().minorUnits();
+        Owner from = owner(tx.getFromAccountId());
+        Owner to = owner(tx.getToAccountId());
+        if (from != null && to != null) {
+            //a transfer: the book total does not move, and neither does a customer or type on both legs
+            from.moveTo(to, amount);
+            return;
+        }
+        if (from != null) {
+            from.add(-amount);
+            total.add(-amount);
+        }
+        if (to != null) {
+            to.add(amount);
+            total.add(amount);
+        }
+    }
+
+    BalanceTotals snapshot() {
+        Map<UUID, Money> customers = new HashMap<>(byCustomer.size() * 2);
+        byCustomer.forEach((id, sum) -> customers.put(id, Money.ofMinor(sum.sum())));
+        Map<AccountType, Money> types = new EnumMap<>(AccountType.class);
+        byAccountType.forEach((type, sum) -> types.put(type, Money.ofMinor(sum.sum())));
+        return new BalanceTotals(Money.ofMinor(total.sum()),
+                                 Collections.unmodifiableMap(customers), Collections.unmodifiableMap(types));
+    }
+
+    private Owner owner(UUID accountId) {
+        return accountId == null ? null : owners.get(accountId);
+    }
+
+    private record Owner(LongAdder customer, LongAdder accountType) {
+        void add(long amount) {
+            customer.add(amount);
+            accountType.add(amount);
+        }
+
+        void moveTo(Owner target, long amount) {
+            if (customer != target.customer) {
+                customer.add(-amount);
+                target.customer.add(amount);
+            }
+            if (accountType != target.accountType) {
+                accountType.add(-amount);
+                target.accountType.add(amount);
+            }
+        }
+    }
+}
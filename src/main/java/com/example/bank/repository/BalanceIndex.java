@@ -0,0 +1,103 @@
+/*
+Accounts ordered by balance, for top-N, bottom-N and below-threshold queries without sorting the book
+    - a concurrent skip list of (balance, accountId) entries, one live entry per account
+    - every live posting refreshes the entries of the accounts it touched; a refresh re-reads the
+      account's balance under that account's slot monitor, so whichever refresh runs last installs the
+      latest balance even when postings on one account race
+    - the new entry goes in before the old one comes out, so a reader can meet an account twice but
+      never miss it; queries skip repeats. Under BankRepository.readConsistent no refresh is in flight
+    - queries walk from one end of the list: O(log n + N) for N results
+*/
+package com.example.bank.repository;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+import com.example.bank.domain.Account;
+import com.example.bank.domain.Money;
+
+final class BalanceIndex {
+    private static final UUID LOWEST_ID = new UUID(Long.MIN_VALUE, Long.MIN_VALUE);
+    private static final Comparator<Entry> ORDER =
+            Comparator.comparingLong(Entry::balance).thenComparing(Entry::accountId);
+
+    private final ConcurrentSkipListSet<Entry> ordered = new ConcurrentSkipListSet<>(ORDER);
+    private final Map<UUID, Slot> slots = new ConcurrentHashMap<>();
+
+    void open(Account account) {
+        Slot slot = new Slot(account);
+        slots.put(account.getId(), slot);
+        slot.refresh();
+    }
+
+    //call after the account's balance changed
+    void refresh(UUID accountId) {
+        Slot slot = accountId == null ? null : slots.get(accountId);
+        if (slot != null) {
+            slot.refresh();
+        }
+    }
+
+    List<Account> highest(int n) {
+        return collect(ordered.descendingSet(), n);
+    }
+
+    List<Account> lowest(int n) {
+        return collect(ordered, n);
+    }
+
+    //lowest first
+    List<Account> below(Money threshold) {
+        return collect(ordered.headSet(new Entry(threshold.minorUnits(), LOWEST_ID), false), Integer.MAX_VALUE);
+    }
+
+    private List<Account> collect(NavigableSet<Entry> entries, int n) {
+        if (n < 0) {
+            throw new IllegalArgumentException("Result size cannot be negative");
+        }
+        List<Account> result = new ArrayList<>(Math.min(n, 64));
+        Set<UUID> seen = new HashSet<>();
+        for (Entry entry : entries) {
+            if (result.size() == n) {
+                break;
+            }
+            Slot slot = slots.get(entry.accountId);
+            if (seen.add(entry.accountId) && slot != null) {
+                result.add(slot.account);
+            }
+        }
+        return result;
+    }
+
+    private record Entry(long balance, UUID accountId) {} //balance in minor units
+
+    private final class Slot {
+        final Account account;
+        private Entry current;
+
+        Slot(Account account) {
+            this.account = account;
+        }
+
+        synchronized void refresh() {
+            long balance = account.getBalanceMoney().minorUnits();
+            if (current != null && current.balance == balance) {
+                return;
+            }
+            Entry next = new Entry(balance, account.getId());
+            ordered.add(next);
+            if (current != null) {
+                ordered.remove(current);
+            }
+            current = next;
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package com.example.bank.repository;
+
+import java.util.Map;
+import java.util.UUID;
+
+import com.example.bank.domain.AccountType;
+import com.example.bank.domain.Money;
+
+//the book's balance in total, per customer holding accounts and per account type, at one point in time
+public record BalanceTotals(
+    Money total,
+    Map<UUID, Money> byCustomer,
+    Map<AccountType, Money> byAccountType
+){
+    public Money customer(UUID customerId) {
+        return byCustomer.getOrDefault(customerId, Money.ZERO);
+    }
+
+    public Money accountType(AccountType accountType) {
+        return byAccountType.getOrDefault(accountType, Money.ZERO);
+    }
+}
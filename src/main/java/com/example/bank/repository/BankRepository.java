@@ -2,42 +2,116 @@ package com.example.bank.repository;
 
 import java.math.BigDecimal;
 import java.time.Clock;
+import java.time.Duration;
 import java.time.Instant;
 import java.time.LocalDate;
 import java.time.ZoneId;
 import java.util.Collection;
-import java.util.Deque;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import com.example.bank.domain.Customer;
 import com.example.bank.domain.Account;
 import com.example.bank.domain.AccountType;
+import com.example.bank.domain.Money;
 import com.example.bank.domain.Transaction;
 import com.example.bank.domain.TransactionType;
 
-public class BankRepository {
+public class BankRepository implements AutoCloseable {
 
     private final Map<UUID, Customer> customers = new ConcurrentHashMap<>();
     private final Map<UUID, Account> accounts = new ConcurrentHashMap<>();
-    private final Deque<Transaction> transactions = new ConcurrentLinkedDeque<>(); //newest first 
+    private final Map<UUID, Set<Account>> accountsByCustomer = new ConcurrentHashMap<>(); //customerId -> accounts
+    private final TransactionStore transactions;
+    private final BusinessDayLedger ledger = new BusinessDayLedger();
+    private final BalanceAggregates aggregates = new BalanceAggregates(); //totals kept current by every posting
+    private final BalanceIndex balanceIndex = new BalanceIndex(); //accounts ordered by balance, refreshed by every posting
+    private final RateCounters rates;
+    private final PostingGate gate = new PostingGate(); //lets readers take consistent cuts of the balances
+    private final LongAdder version = new LongAdder(); //bumped after every posting and account opening; striped, not one contended word
 
     private final Clock clock;
     private final ZoneId businessZone;
+    private final Journal journal; //null when running purely in memory
+    private final ShardRouter shards; //null unless sharded
+    private final PostingPipeline pipeline; //null unless pipelined
+    private final IdGenerator ids;
+
     //dependency injection for testability, default to system UTC for quick start
     public BankRepository(Clock clock, ZoneId businessZone) {
+        this(clock, businessZone, null);
+    }
+
+    //durable mode: rebuilds customers and accounts from the latest snapshot plus the journal tail before accepting writes
+    public BankRepository(Clock clock, ZoneId businessZone, Journal journal) {
+        this(clock, businessZone, journal, new HeapTransactionStore());
+    }
+
+    //journal may be null for memory-only mode; the store decides how posting history is kept
+    public BankRepository(Clock clock, ZoneId businessZone, Journal journal, TransactionStore transactions) {
+        this(clock, businessZone, journal, transactions, new TimeOrderedIdGenerator(clock));
+    }
+
+    //the id generator names every customer, account and transaction this repository creates
+    public BankRepository(Clock clock, ZoneId businessZone, Journal journal, TransactionStore transactions, IdGenerator ids) {
+        this(clock, businessZone, journal, transactions, null, null, ids);
+    }
+
+    //sharded mode: services run each account's mutations on its shard's writer thread, and history is logged per shard
+    public BankRepository(Clock clock, ZoneId businessZone, Journal journal, ShardRouter shards) {
+        this(clock, businessZone, journal, new ShardedTransactionStore(Objects.requireNonNull(shards, "Shard router cannot be null")), shards, null,
+             new TimeOrderedIdGenerator(clock));
+    }
+
+    //pipelined mode: every posting and consistent read runs in sequence on the pipeline's business-logic thread
+    public BankRepository(Clock clock, ZoneId businessZone, Journal journal, PostingPipeline pipeline) {
+        this(clock, businessZone, journal, new HeapTransactionStore(), null,
+             Objects.requireNonNull(pipeline, "Posting pipeline cannot be null"), new TimeOrderedIdGenerator(clock));
+    }
+
+    private BankRepository(Clock clock, ZoneId businessZone, Journal journal, TransactionStore transactions, ShardRouter shards,
+                           PostingPipeline pipeline, IdGenerator ids) {
         this.clock = Objects.requireNonNull(clock, "Clock cannot be null");
         this.businessZone = Objects.requireNonNull(businessZone, "Business zone cannot be null");
+        Objects.requireNonNull(transactions, "Transaction store cannot be null");
+        this.journal = journal;
+        this.shards = shards;
+        this.ids = Objects.requireNonNull(ids, "Id generator cannot be null");
+        this.pipeline = pipeline;
+        this.rates = new RateCounters(this.clock);
+        if (journal != null) {
+            journal.replay(new Restorer(transactions));
+        }
+        //history sealed by earlier checkpoints stays in the journal's archive and is read from disk on demand
+        JournalArchive archive = journal == null ? JournalArchive.EMPTY : journal.archive();
+        this.transactions = archive.size() == 0 ? transactions : new ArchivedTransactionStore(archive, transactions);
+        if (pipeline != null) {
+            pipeline.bind(journal == null ? () -> {} : journal::awaitAppended);
+        }
     }
 
     public BankRepository() {
         this(Clock.systemUTC(), ZoneId.of("UTC"));
     }
 
+    //ids for records the services create; time ordered unless another generator was injected
+    public UUID newId() {
+        return ids.nextId();
+    }
+
     //Customer operations
     public Customer addCustomer(String name, String email) {
         if (name == null || name.isBlank()) {
@@ -46,9 +120,12 @@ public class BankRepository {
         if (email == null || email.isBlank()) {
             throw new IllegalArgumentException("Customer email cannot be null or blank");
         }
-        UUID id = UUID.randomUUID();
+        UUID id = ids.nextId();
         Customer customer = new Customer(id, name, email);
         customers.put(id, customer);
+        if (journal != null) {
+            journal.awaitDurable(journal.appendCustomer(customer));
+        }
         return customer;
     }
 
@@ -65,6 +142,10 @@ public class BankRepository {
 
     //Account operations
     public Account addAccount(UUID customerId, AccountType accountType, BigDecimal initialBalance) {
+        return addAccount(customerId, accountType, initialBalance == null ? null : Money.of(initialBalance));
+    }
+
+    public Account addAccount(UUID customerId, AccountType accountType, Money initialBalance) {
         if (customerId == null || !customers.containsKey(customerId)) {
             throw new IllegalArgumentException("Invalid customer ID");
         }
@@ -72,26 +153,63 @@ public class BankRepository {
             throw new IllegalArgumentException("Account type cannot be null or blank");
         }
         
-        UUID id = UUID.randomUUID();
-        Account account = new Account(id, customerId, accountType, initialBalance);
-        accounts.put(id, account);
-
-        if (initialBalance != null && initialBalance.compareTo(BigDecimal.ZERO) > 0) {
-            //create an initial deposit transaction if initial balance > 0
-            Instant now = Instant.now(clock);
-            LocalDate businessDate = now.atZone(businessZone).toLocalDate();
-            addTransaction(new Transaction(UUID.randomUUID(), 
-                                            now, 
-                                            businessDate, 
-                                            TransactionType.DEPOSIT, 
-                                            null, 
-                                            id, 
-                                            initialBalance, 
-                                            "Initial deposit"));
-        }
+        //opened like any other posting (gate, shard, pipeline), so consistent reads see the account together
+        //with its opening deposit, aggregates and index entry, or none of them
+        Account account = new Account(ids.nextId(), customerId, accountType, initialBalance);
+        long seq = post(account.getId(), () -> {
+            UUID id = account.getId();
+            register(account);
+
+            boolean fundedByDeposit = initialBalance != null && initialBalance.isPositive();
+            aggregates.open(account, fundedByDeposit ? Money.ZERO : account.getBalanceMoney()); //the deposit adds the rest
+            version.increment();
+            long opened = 0;
+            if (journal != null) {
+                //a positive opening balance is journaled as the initial deposit below, so replay starts from zero
+                opened = journal.appendAccount(id, customerId, accountType, fundedByDeposit ? Money.ZERO : account.getBalanceMoney());
+            }
+            if (fundedByDeposit) {
+                //create an initial deposit transaction if initial balance > 0
+                Instant now = Instant.now(clock);
+                LocalDate businessDate = now.atZone(businessZone).toLocalDate();
+                opened = addTransaction(new Transaction(ids.nextId(), 
+                                                now, 
+                                                businessDate, 
+                                                TransactionType.DEPOSIT, 
+                                                null, 
+                                                id, 
+                                                initialBalance, 
+                                                "Initial deposit"));
+            }
+            return opened;
+        });
+        awaitDurable(seq);
         return account;
     }
 
+    private void register(Account account) {
+        accounts.put(account.getId(), account);
+        accountsByCustomer.computeIfAbsent(account.getCustomerId(), c -> ConcurrentHashMap.newKeySet()).add(account);
+        balanceIndex.open(account);
+    }
+
+    private void countRate(Transaction transaction) {
+        rates.post(transaction, accountType(transaction.getFromAccountId()), accountType(transaction.getToAccountId()));
+    }
+
+    //postings are recorded after their balance changes, so the index reads final balances
+    private void refreshBalanceIndex(Transaction transaction) {
+        balanceIndex.refresh(transaction.getFromAccountId());
+        balanceIndex.refresh(transaction.getToAccountId());
+    }
+
+    //Changes whenever balances or the set of accounts may have changed; read it before computing anything to be cached.
+    //Postings bump it after their balances move, so a value read first can only understate what a computation saw.
+    //It is the sum of monotonic cells, so two equal reads mean nothing was bumped in between.
+    public long getVersion() {
+        return version.sum();
+    }
+
     public Account getAccount(UUID accountId) {
         if (accountId == null) {
             throw new IllegalArgumentException("Account ID cannot be null");
@@ -99,53 +217,434 @@ public class BankRepository {
         return accounts.get(accountId);
     }
 
+    //spreads an account's credits over stripes; runtime tuning only, balances and the journal are unaffected
+    public void markHot(UUID accountId, int stripes) {
+        Account account = getAccount(accountId);
+        if (account == null) {
+            throw new IllegalArgumentException("Account not found");
+        }
+        account.markHot(stripes);
+    }
+
     public Collection<Account> getAllAccounts() {
         return accounts.values();
     }
 
+    //customers that hold at least one account
+    public Collection<UUID> getCustomerIdsWithAccounts() {
+        return accountsByCustomer.keySet();
+    }
+
     public Collection<Account> getAccountsByCustomer(UUID customerId) {
         if (customerId == null) {
             throw new IllegalArgumentException("Customer ID cannot be null");
         }
-        return accounts.values().stream()
-                .filter(acc -> acc.getCustomerId().equals(customerId))
-                .toList();
+        Set<Account> owned = accountsByCustomer.get(customerId);
+        return owned == null ? List.of() : List.copyOf(owned);
     }
 
     //Transaction operations
-    public void addTransaction(Transaction transaction) {
+    //Records and journals a posting with no credit leg still to move (withdrawals, payments) and returns its journal
+    //sequence (0 in memory-only mode). Call it inside posting()/post(), on the shard that owns the posting, after
+    //its debit has moved
+    public long addTransaction(Transaction transaction) {
+        long seq = journalTransaction(transaction);
+        recordTransaction(transaction);
+        return seq;
+    }
+
+    //Batch form of addTransaction: one journal append and one store append for the lot; returns the last sequence.
+    //In sharded mode every posting must belong to the shard the caller is running on.
+    public long addTransactions(List<Transaction> batch) {
+        long seq = journalTransactions(batch);
+        recordTransactions(batch);
+        return seq;
+    }
+
+    //Journals a posting whose credit leg has not moved yet; returns its sequence (0 in memory-only mode).
+    //An account's journal order follows its balance order: a debit is journaled after it moves and a credit before,
+    //so whatever credit a debit spent is earlier in the journal and replay never takes an account below zero.
+    //Call it inside posting()/post() after any debit leg (and Account.checkDeposit), then move the credit and
+    //call recordTransaction on the shard that owns the posting.
+    public long journalTransaction(Transaction transaction) {
         if (transaction == null) {
             throw new IllegalArgumentException("Transaction cannot be null");
         }
-        transactions.addFirst(transaction); //newest first
+        requireOpenBusinessDay(transaction.getBusinessDate()); //checked again so nothing is journaled for a closed day
+        return journal == null ? 0 : journal.appendTransaction(transaction);
+    }
+
+    //Batch form of journalTransaction: one journal append for the lot; returns the last sequence
+    public long journalTransactions(List<Transaction> batch) {
+        if (batch == null || batch.stream().anyMatch(Objects::isNull)) {
+            throw new IllegalArgumentException("Transactions cannot be null");
+        }
+        if (batch.isEmpty()) {
+            return 0;
+        }
+        batch.forEach(tx -> requireOpenBusinessDay(tx.getBusinessDate()));
+        return journal == null ? 0 : journal.appendTransactions(batch);
+    }
+
+    //Records a journaled posting in memory once all its balances have moved: history, ledger, aggregates, index
+    public void recordTransaction(Transaction transaction) {
+        if (transaction == null) {
+            throw new IllegalArgumentException("Transaction cannot be null");
+        }
+        appendToHistory(transaction);
+        aggregates.post(transaction);
+        refreshBalanceIndex(transaction);
+        countRate(transaction);
+        version.increment();
+    }
+
+    //Batch form of recordTransaction: one store append for the lot. In sharded mode every posting must belong to
+    //the shard the caller is running on.
+    public void recordTransactions(List<Transaction> batch) {
+        if (batch == null || batch.stream().anyMatch(Objects::isNull)) {
+            throw new IllegalArgumentException("Transactions cannot be null");
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+        batch.forEach(ledger::post);
+        transactions.appendAll(batch);
+        batch.forEach(aggregates::post);
+        batch.forEach(this::refreshBalanceIndex);
+        batch.forEach(this::countRate);
+        version.increment();
+    }
+
+    //Runs a balance-changing operation on its account's shard, inside the posting gate
+    public <T> T post(UUID accountId, Supplier<T> operation) {
+        return posting(() -> onShard(accountId, operation));
+    }
+
+    //Runs a balance-changing operation, possibly spanning shards, inside the posting gate; must not nest
+    public <T> T posting(Supplier<T> operation) {
+        if (pipeline != null) {
+            return pipeline.call(operation); //one thread applies every posting, so there is nothing to gate
+        }
+        gate.enter();
+        try {
+            return operation.get();
+        } finally {
+            gate.exit();
+        }
+    }
+
+    //Like post(), but returns null without running `operation` if it cannot start by `deadline` (a System.nanoTime
+    //value): held at the posting gate, queued on the pipeline or queued on the account's shard. Once started it
+    //runs to completion. `operation` must not return null.
+    public <T> T tryPost(UUID accountId, long deadline, Supplier<T> operation) {
+        return tryPosting(deadline, () -> tryOnShard(accountId, deadline, operation));
+    }
+
+    //Like posting(), bounded by `deadline` as tryPost is; null if the operation never ran
+    public <T> T tryPosting(long deadline, Supplier<T> operation) {
+        if (pipeline != null) {
+            return pipeline.tryCall(operation, deadline);
+        }
+        if (!gate.tryEnter(deadline)) {
+            return null;
+        }
+        try {
+            return operation.get();
+        } finally {
+            gate.exit();
+        }
+    }
+
+    //Runs `view` against a point-in-time cut of the balances: optimistic, falling back to a bounded fence that
+    //holds off new postings while in-flight ones drain and the view runs; keep views short
+    public <T> T readConsistent(Supplier<T> view) {
+        if (pipeline != null) {
+            return pipeline.call(view); //sequenced between postings, so it sees all of each or none
+        }
+        return gate.read(view);
+    }
+
+    //How often consistent reads had to hold postings off, and for how long (all zero in pipelined mode)
+    public ConsistentReadStats getConsistentReadStats() {
+        return gate.stats();
+    }
+
+    //Every account's balance at one point in time
+    public Map<UUID, Money> getBalanceSnapshot() {
+        return readConsistent(() -> {
+            Map<UUID, Money> balances = new HashMap<>(accounts.size() * 2);
+            for (Account account : accounts.values()) {
+                balances.put(account.getId(), account.getBalanceMoney());
+            }
+            return Collections.unmodifiableMap(balances);
+        });
+    }
+
+    //Total, per-customer and per-account-type balances at one point in time; O(customers), whatever the volume
+    public BalanceTotals getBalanceTotals() {
+        return readConsistent(aggregates::snapshot);
+    }
+
+    //The n accounts with the highest balances, highest first; O(log n + N) from the balance index
+    public List<Account> getTopAccounts(int n) {
+        return readConsistent(() -> balanceIndex.highest(n));
+    }
+
+    //The n accounts with the lowest balances, lowest first
+    public List<Account> getBottomAccounts(int n) {
+        return readConsistent(() -> balanceIndex.lowest(n));
+    }
+
+    //Every account whose balance is below `threshold`, lowest first
+    public List<Account> getAccountsBelow(Money threshold) {
+        if (threshold == null) {
+            throw new IllegalArgumentException("Threshold cannot be null");
+        }
+        return readConsistent(() -> balanceIndex.below(threshold));
+    }
+
+    //Runs an account mutation on the writer thread owning the account in sharded mode, or inline otherwise
+    public <T> T onShard(UUID accountId, Supplier<T> operation) {
+        return shards == null ? operation.get() : shards.call(accountId, operation);
+    }
+
+    //Like onShard(), bounded by `deadline` as tryPost is; null if the operation never ran
+    public <T> T tryOnShard(UUID accountId, long deadline, Supplier<T> operation) {
+        return shards == null ? operation.get() : shards.tryCall(accountId, operation, deadline);
+    }
+
+    public boolean sameShard(UUID first, UUID second) {
+        return shards == null || shards.shardOf(first) == shards.shardOf(second);
+    }
+
+    //Blocks until the posting with this sequence is durable; call after posting()/post() returns, never inside it
+    public void awaitDurable(long seq) {
+        if (journal != null && seq > 0) {
+            journal.awaitDurable(seq);
+        }
+    }
+
+    private void appendToHistory(Transaction transaction) {
+        ledger.post(transaction); //rejects postings dated on a closed business day before anything is stored
+        transactions.append(transaction);
     }
 
     public List<Transaction> getRecentTransactions(int n) {
         if (n <= 0) {
             throw new IllegalArgumentException("Number of transactions must be positive");
         }
-        return transactions.stream().limit(n).toList();
+        return transactions.recent(n);
     }
 
     public List<Transaction> getTransactionsSince(Instant since) {
         if (since == null) {
             throw new IllegalArgumentException("Since timestamp cannot be null");
         }
-        return transactions.stream()
-                .filter(tx -> tx.getTimestamp().isAfter(since))
-                .toList();
+        return transactions.between(since, null);
+    }
+
+    //postings after `from` and not after `to`, newest first
+    public List<Transaction> getTransactionsBetween(Instant from, Instant to) {
+        if (from == null || to == null) {
+            throw new IllegalArgumentException("Time range bounds cannot be null");
+        }
+        if (to.isBefore(from)) {
+            throw new IllegalArgumentException("Time range end cannot be before its start");
+        }
+        return transactions.between(from, to);
+    }
+
+    //Postings in the last `lookback` by the injected clock, from bucketed counters: O(buckets), not O(postings)
+    public TransactionRates getTransactionRates(Duration lookback) {
+        return rates.window(lookback);
+    }
+
+    //Posting count over the last `lookback` by the injected clock: from the counters where they span it,
+    //otherwise counted over the store
+    public long countTransactionsWithin(Duration lookback) {
+        if (rates.covers(lookback)) {
+            return rates.window(lookback).count();
+        }
+        return countTransactionsSince(Instant.now(clock).minus(lookback));
+    }
+
+    public long countTransactionsSince(Instant since) {
+        if (since == null) {
+            throw new IllegalArgumentException("Since timestamp cannot be null");
+        }
+        return transactions.countBetween(since, null);
     }
     
     public List<Transaction> getAllTransactions() {
-        return List.copyOf(transactions);
+        return transactions.all();
     }
 
     public List<Transaction> getTransactionsByAccount(UUID accountId) {
         if (accountId == null) {
             throw new IllegalArgumentException("Account ID cannot be null");
         }
-        return transactions.stream()
-                .filter(tx -> accountId.equals(tx.getFromAccountId()) || accountId.equals(tx.getToAccountId()))
-                .toList();
+        return transactions.byAccount(accountId);
+    }
+
+    //lazy scan over the history as of this call, reading the store in bounded chunks; shards are merged by timestamp
+    public Stream<Transaction> streamTransactions(TransactionFilter filter, ScanDirection direction) {
+        if (filter == null || direction == null) {
+            throw new IllegalArgumentException("Filter and direction cannot be null");
+        }
+        Spliterator<Transaction> spliterator = Spliterators.spliteratorUnknownSize(
+                TransactionCursor.open(transactions.partitions(), filter, direction), Spliterator.ORDERED | Spliterator.NONNULL);
+        return StreamSupport.stream(spliterator, false);
+    }
+
+    //Every posting held, oldest first, split by position for parallel passes; pinned to the current size.
+    //Sharded history has no global positions, so it is split as a list instead (newest first).
+    public Spliterator<Transaction> splitTransactions() {
+        List<PositionedHistory> partitions = transactions.partitions();
+        if (partitions.size() > 1) {
+            return transactions.all().spliterator();
+        }
+        PositionedHistory history = partitions.get(0);
+        return new PositionSpliterator(history, 0, history.size());
+    }
+
+    //Every account, split along the account map's own bins
+    public Spliterator<Account> splitAccounts() {
+        return accounts.values().spliterator();
+    }
+
+    //one page of a scan; pass null for the first page, then each page's nextPageToken with the same filter and direction
+    public TransactionPage getTransactionPage(TransactionFilter filter, ScanDirection direction, String pageToken, int pageSize) {
+        if (filter == null || direction == null) {
+            throw new IllegalArgumentException("Filter and direction cannot be null");
+        }
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("Page size must be positive");
+        }
+        TransactionCursor cursor = pageToken == null
+                ? TransactionCursor.open(transactions.partitions(), filter, direction)
+                : TransactionCursor.resume(transactions.partitions(), filter, direction, pageToken);
+        return cursor.page(pageSize);
+    }
+
+    //Business day operations
+    //Freezes a past business day into its rollup; postings dated on it are rejected from then on.
+    //The close runs with every posting held off, so one that found the day open is always recorded first.
+    public LedgerRollup closeBusinessDay(LocalDate businessDate) {
+        if (businessDate == null) {
+            throw new IllegalArgumentException("Business date cannot be null");
+        }
+        if (!businessDate.isBefore(Instant.now(clock).atZone(businessZone).toLocalDate())) {
+            throw new IllegalArgumentException("Only business days before today can be closed");
+        }
+        Supplier<LedgerRollup> close = () -> ledger.close(businessDate, this::accountType);
+        LedgerRollup rollup = pipeline != null ? pipeline.call(close) : gate.exclusive(close);
+        if (journal != null) {
+            //every posting of the day was journaled before the close ran
+            journal.awaitDurable(journal.appendBusinessDayClose(businessDate));
+        }
+        return rollup;
+    }
+
+    //Services call this inside posting()/post() before moving money: a day cannot close while a posting that
+    //passed the check is in flight, so the ledger never rejects a posting whose balances have moved
+    public void requireOpenBusinessDay(LocalDate businessDate) {
+        if (isBusinessDayClosed(businessDate)) {
+            throw new IllegalStateException("Business day " + businessDate + " is closed");
+        }
+    }
+
+    public boolean isBusinessDayClosed(LocalDate businessDate) {
+        if (businessDate == null) {
+            throw new IllegalArgumentException("Business date cannot be null");
+        }
+        return ledger.isClosed(businessDate);
+    }
+
+    //totals for firstDay..lastDay from the day partitions; open days contribute their running totals
+    public LedgerRollup getRollup(LocalDate firstDay, LocalDate lastDay) {
+        if (firstDay == null || lastDay == null) {
+            throw new IllegalArgumentException("Business date bounds cannot be null");
+        }
+        if (lastDay.isBefore(firstDay)) {
+            throw new IllegalArgumentException("Business date range end cannot be before its start");
+        }
+        return ledger.rollup(firstDay, lastDay, this::accountType);
+    }
+
+    private AccountType accountType(UUID accountId) {
+        Account account = accountId == null ? null : accounts.get(accountId);
+        return account == null ? null : account.getAccountType();
+    }
+
+    //Snapshots customers, balances and the ledger so the next startup only replays the journal written after it.
+    //The roll and the ledger copy run with every posting held off, so the two cover exactly the same postings
+    public void checkpoint() {
+        if (journal == null) {
+            throw new IllegalStateException("Checkpoints require a journal");
+        }
+        AtomicReference<BusinessDayLedger.Checkpoint> ledgerAtMarker = new AtomicReference<>();
+        Supplier<Journal.Marker> roll = () -> {
+            ledgerAtMarker.set(ledger.capture());
+            return journal.roll();
+        };
+        Journal.Marker marker = pipeline != null ? pipeline.call(roll) : gate.exclusive(roll);
+        journal.checkpoint(marker, ledgerAtMarker.get().encode());
+    }
+
+    @Override
+    public void close() {
+        if (shards != null) {
+            shards.close(); //drains queued mutations before the journal stops
+        }
+        if (pipeline != null) {
+            pipeline.close();
+        }
+        if (journal != null) {
+            journal.close();
+        }
+        if (transactions instanceof AutoCloseable closeable) {
+            try {
+                closeable.close();
+            } catch (Exception e) {
+                throw new IllegalStateException("Failed to close transaction store", e);
+            }
+        }
+    }
+
+    //Rebuilds in-memory state from the journal's recovered image and tail, without journaling it again
+    private class Restorer implements Journal.Visitor {
+        private final TransactionStore live; //the tail goes to the live store; the archive already holds the rest
+
+        Restorer(TransactionStore live) {
+            this.live = live;
+        }
+
+        @Override
+        public void checkpointedLedger(byte[] state) {
+            ledger.restore(state);
+        }
+
+        @Override
+        public void customer(Customer customer) {
+            customers.put(customer.getId(), customer);
+        }
+
+        @Override
+        public void account(UUID id, UUID customerId, AccountType accountType, Money balance) {
+            Account account = new Account(id, customerId, accountType, balance);
+            register(account);
+            aggregates.open(account, balance); //recovered balances already include the replayed tail
+        }
+
+        @Override
+        public void transaction(Transaction tx) {
+            ledger.post(tx);
+            live.append(tx); //the tail only; balances come from the image
+        }
+
+        @Override
+        public void businessDayClosed(LocalDate businessDate) {
+            ledger.close(businessDate, BankRepository.this::accountType); //history and accounts are back by now
+        }
     }
 }
@@ -0,0 +1,268 @@
+/*
+Ledger partitioned by business date
+    - every posting is added to its business day's partition as it is recorded: running minor-unit
+      totals per account and LedgerBucket, so no day is ever rescanned
+    - closing a day freezes its partition into a LedgerRollup, with per account-type totals derived
+      from the per-account ones; later postings dated on a closed day are rejected
+    - postings are recorded inside the posting gate, and BankRepository closes a day exclusively behind
+      it, so a posting that found its day open is recorded before the close and none lands after it;
+      post() still rejects a closed day, before anything is stored, as a last line of defence. No lock
+      is shared by a day's postings
+    - rollups of open days are live views built from the running totals
+    - a checkpoint captures the ledger with every posting held off, so the snapshot's copy matches its
+      journal marker: open days are copied, closed days are immutable and encoded from their rollups
+Recovery restores the checkpointed partitions, every one of them open, posts the journal tail on top and
+re-applies the closes once the accounts are back.
+*/
+package com.example.bank.repository;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import com.example.bank.domain.AccountType;
+import com.example.bank.domain.Money;
+import com.example.bank.domain.Transaction;
+
+final class BusinessDayLedger {
+    private static final LedgerBucket[] BUCKETS = LedgerBucket.values();
+
+    private final ConcurrentSkipListMap<LocalDate, DayPartition> days = new ConcurrentSkipListMap<>();
+
+    //throws if the posting's business day is closed; nothing is recorded in that case
+    void post(Transaction tx) {
+        days.computeIfAbsent(tx.getBusinessDate(), DayPartition::new).post(tx);
+    }
+
+    boolean isClosed(LocalDate day) {
+        DayPartition partition = days.get(day);
+        return partition != null && partition.rollup != null;
+    }
+
+    LedgerRollup close(LocalDate day, Function<UUID, AccountType> accountTypes) {
+        return days.computeIfAbsent(day, DayPartition::new).close(accountTypes);
+    }
+
+    //Copies the ledger for a checkpoint; callers hold every posting off (see BankRepository.checkpoint)
+    Checkpoint capture() {
+        List<DayImage> images = new ArrayList<>();
+        for (DayPartition partition : days.values()) {
+            LedgerRollup closed = partition.rollup;
+            if (closed != null) {
+                images.add(new DayImage(partition.day, closed.postingCount(), null, closed));
+                continue;
+            }
+            Map<UUID, AccountTotals> copy = new HashMap<>();
+            partition.accounts.forEach((id, totals) -> copy.put(id, totals.copy()));
+            images.add(new DayImage(partition.day, partition.postings.sum(), copy, null));
+        }
+        return new Checkpoint(images);
+    }
+
+    //Loads a checkpointed ledger into this empty one, before any posting; closed days come back open until
+    //their close is re-applied
+    void restore(byte[] state) {
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(state));
+            for (int d = in.readInt(); d > 0; d--) {
+                DayPartition partition = new DayPartition(JournalCodec.readDate(in));
+                partition.postings.add(in.readLong());
+                for (int a = in.readInt(); a > 0; a--) {
+                    partition.accounts.put(JournalCodec.readUuid(in), AccountTotals.read(in));
+                }
+                days.put(partition.day, partition);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to restore the checkpointed ledger", e);
+        }
+    }
+
+    //merged rollup of every day in firstDay..lastDay; days without postings contribute nothing
+    LedgerRollup rollup(LocalDate firstDay, LocalDate lastDay, Function<UUID, AccountType> accountTypes) {
+        List<LedgerRollup> partials = new ArrayList<>();
+        for (DayPartition partition : days.subMap(firstDay, true, lastDay, true).values()) {
+            partials.add(partition.view(accountTypes));
+        }
+        return LedgerRollup.merge(firstDay, lastDay, partials);
+    }
+
+    private static LedgerBucket debitBucket(Transaction tx) {
+        return switch (tx.getType()) {
+            case WITHDRAWAL -> LedgerBucket.WITHDRAWALS;
+            case PAYMENT -> LedgerBucket.PAYMENTS;
+            case TRANSFER -> LedgerBucket.TRANSFERS_OUT;
+            case DEPOSIT -> null;
+        };
+    }
+
+    private static LedgerBucket creditBucket(Transaction tx) {
+        return switch (tx.getType()) {
+            case DEPOSIT -> LedgerBucket.DEPOSITS;
+            case TRANSFER -> LedgerBucket.TRANSFERS_IN;
+            case WITHDRAWAL, PAYMENT -> null;
+        };
+    }
+
+    private static final class DayPartition {
+        final LocalDate day;
+        final Map<UUID, AccountTotals> accounts = new ConcurrentHashMap<>();
+        final LongAdder postings = new LongAdder();
+        volatile LedgerRollup rollup; //set once, when the day closes
+
+        DayPartition(LocalDate day) {
+            this.day = day;
+        }
+
+        void post(Transaction tx) {
+            if (rollup != null) {
+                throw new IllegalStateException("Business day " + day + " is closed");
+            }
+            LedgerBucket debit = debitBucket(tx);
+            LedgerBucket credit = creditBucket(tx);
+            if (debit != null && tx.getFromAccountId() != null) {
+                totals(tx.getFromAccountId()).add(debit, tx.getAmountMoney().minorUnits());
+            }
+            if (credit != null && tx.getToAccountId() != null) {
+                totals(tx.getToAccountId()).add(credit, tx.getAmountMoney().minorUnits());
+            }
+            postings.increment();
+        }
+
+        //callers hold every posting off (see BankRepository.closeBusinessDay), so the totals are final
+        synchronized LedgerRollup close(Function<UUID, AccountType> accountTypes) {
+            if (rollup != null) {
+                throw new IllegalStateException("Business day " + day + " is already closed");
+            }
+            rollup = build(accountTypes);
+            accounts.clear(); //the rollup is now the partition
+            return rollup;
+        }
+
+        LedgerRollup view(Function<UUID, AccountType> accountTypes) {
+            LedgerRollup closed = rollup;
+            return closed != null ? closed : build(accountTypes);
+        }
+
+        private LedgerRollup build(Function<UUID, AccountType> accountTypes) {
+            Map<UUID, Map<LedgerBucket, BigDecimal>> byAccount = new HashMap<>();
+            Map<AccountType, Map<LedgerBucket, BigDecimal>> byAccountType = new EnumMap<>(AccountType.class);
+            accounts.forEach((id, totals) -> {
+                Map<LedgerBucket, BigDecimal> snapshot = totals.snapshot();
+                byAccount.put(id, snapshot);
+                AccountType type = accountTypes.apply(id);
+                if (type != null) {
+                    LedgerRollup.addAll(byAccountType.computeIfAbsent(type, k -> new EnumMap<>(LedgerBucket.class)), snapshot);
+                }
+            });
+            return new LedgerRollup(day, day, postings.sum(), LedgerRollup.freeze(byAccount), LedgerRollup.freeze(byAccountType));
+        }
+
+        private AccountTotals totals(UUID accountId) {
+            return accounts.computeIfAbsent(accountId, k -> new AccountTotals());
+        }
+    }
+
+    //a captured ledger; encoding runs after postings resume, closed days only ever read their frozen rollups
+    static final class Checkpoint {
+        private final List<DayImage> days;
+
+        private Checkpoint(List<DayImage> days) {
+            this.days = days;
+        }
+
+        byte[] encode() {
+            try {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                DataOutputStream out = new DataOutputStream(bytes);
+                out.writeInt(days.size());
+                for (DayImage day : days) {
+                    Map<UUID, AccountTotals> accounts = day.accounts;
+                    if (day.closed != null) {
+                        accounts = new HashMap<>();
+                        for (Map.Entry<UUID, Map<LedgerBucket, BigDecimal>> entry : day.closed.byAccount().entrySet()) {
+                            AccountTotals totals = new AccountTotals();
+                            entry.getValue().forEach((bucket, amount) -> totals.add(bucket, Money.of(amount).minorUnits()));
+                            accounts.put(entry.getKey(), totals);
+                        }
+                    }
+                    JournalCodec.writeDate(out, day.day);
+                    out.writeLong(day.postings);
+                    out.writeInt(accounts.size());
+                    for (Map.Entry<UUID, AccountTotals> entry : accounts.entrySet()) {
+                        JournalCodec.writeUuid(out, entry.getKey());
+                        entry.getValue().write(out);
+                    }
+                }
+                out.flush();
+                return bytes.toByteArray();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to encode the ledger", e);
+            }
+        }
+    }
+
+    //an open day's copied totals, or a closed day's rollup
+    private record DayImage(LocalDate day, long postings, Map<UUID, AccountTotals> accounts, LedgerRollup closed) {}
+
+    private static final class AccountTotals {
+        private final long[] amounts = new long[BUCKETS.length]; //minor units
+        private int touched; //bit per bucket that has seen a posting
+
+        synchronized AccountTotals copy() {
+            AccountTotals copy = new AccountTotals();
+            System.arraycopy(amounts, 0, copy.amounts, 0, amounts.length);
+            copy.touched = touched;
+            return copy;
+        }
+
+        synchronized void write(DataOutputStream out) throws IOException {
+            out.writeInt(touched);
+            for (LedgerBucket bucket : BUCKETS) {
+                if ((touched & (1 << bucket.ordinal())) != 0) {
+                    out.writeLong(amounts[bucket.ordinal()]);
+                }
+            }
+        }
+
+        static AccountTotals read(DataInputStream in) throws IOException {
+            AccountTotals totals = new AccountTotals();
+            totals.touched = in.readInt();
+            for (LedgerBucket bucket : BUCKETS) {
+                if ((totals.touched & (1 << bucket.ordinal())) != 0) {
+                    totals.amounts[bucket.ordinal()] = in.readLong();
+                }
+            }
+            return totals;
+        }
+
+        synchronized void add(LedgerBucket bucket, long amount) {
+            amounts[bucket.ordinal()] = Money.add(amounts[bucket.ordinal()], amount);
+            touched |= 1 << bucket.ordinal();
+        }
+
+        synchronized Map<LedgerBucket, BigDecimal> snapshot() {
+            Map<LedgerBucket, BigDecimal> result = new EnumMap<>(LedgerBucket.class);
+            for (LedgerBucket bucket : BUCKETS) {
+                if ((touched & (1 << bucket.ordinal())) != 0) {
+                    result.put(bucket, BigDecimal.valueOf(amounts[bucket.ordinal()], Money.SCALE));
+                }
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package com.example.bank.repository;
+
+import java.time.Duration;
+
+//running totals for BankRepository.readConsistent since the repository was created
+public record ConsistentReadStats(
+    long optimisticReads, //validated without holding off any writer
+    long fencedReads,     //ran behind a fence after repeated failed validations (business-day closes count too)
+    long abandonedFences, //fences lowered because in-flight postings did not drain in time
+    Duration fencedTime,  //total time new postings were held off
+    Duration longestFence
+){}
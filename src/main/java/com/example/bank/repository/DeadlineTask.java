@@ -0,0 +1,30 @@
+/*
+A queued task its caller may give up on until it starts
+    - the caller waits for it up to a deadline; if it has not started by then, abandon() claims it and
+      it does nothing when its turn comes
+    - once started it always runs to completion and the caller waits for its result, so a caller told
+      that nothing happened can rely on it
+*/
+package com.example.bank.repository;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+final class DeadlineTask<T> implements Supplier<T> {
+    private final Supplier<T> task;
+    private final AtomicBoolean claimed = new AtomicBoolean();
+
+    DeadlineTask(Supplier<T> task) {
+        this.task = task;
+    }
+
+    @Override
+    public T get() {
+        return claimed.compareAndSet(false, true) ? task.get() : null;
+    }
+
+    //true if the task will never run; false if it has already started
+    boolean abandon() {
+        return claimed.compareAndSet(false, true);
+    }
+}
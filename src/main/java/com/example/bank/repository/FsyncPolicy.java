@@ -0,0 +1,7 @@
+package com.example.bank.repository;
+
+public enum FsyncPolicy {
+    PER_OPERATION, //every record is written and forced before append returns
+    PER_BATCH,     //group commit: one force covers every record queued while the previous force ran
+    INTERVAL       //records are forced on a timer; callers do not wait for the disk
+}
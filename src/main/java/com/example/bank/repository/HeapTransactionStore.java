@@ -0,0 +1,95 @@
+/*
+Default on-heap transaction store
+    - a segmented, time-ordered TransactionLog for recency and time-range queries
+    - a per-account index over both legs of every posting
+*/
+package com.example.bank.repository;
+
+import java.time.Instant;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+
+import com.example.bank.domain.Transaction;
+
+public class HeapTransactionStore implements TransactionStore, PositionedHistory {
+    private final TransactionLog log = new TransactionLog(); //time-ordered segments, read newest first
+    private final Map<UUID, Deque<Transaction>> byAccount = new ConcurrentHashMap<>(); //per-account index, newest first
+
+    @Override
+    public void append(Transaction transaction) {
+        log.append(transaction);
+        index(transaction);
+    }
+
+    @Override
+    public void appendAll(List<Transaction> batch) {
+        log.appendAll(batch);
+        batch.forEach(this::index);
+    }
+
+    //index both legs so per-account history never scans the log
+    private void index(Transaction transaction) {
+        UUID from = transaction.getFromAccountId();
+        UUID to = transaction.getToAccountId();
+        if (from != null) {
+            accountIndex(from).addFirst(transaction);
+        }
+        if (to != null && !to.equals(from)) {
+            accountIndex(to).addFirst(transaction);
+        }
+    }
+
+    @Override
+    public long size() {
+        return log.size();
+    }
+
+    @Override
+    public List<Transaction> recent(int n) {
+        return log.recent(n);
+    }
+
+    @Override
+    public List<Transaction> between(Instant from, Instant to) {
+        return log.between(from, to);
+    }
+
+    @Override
+    public long countBetween(Instant from, Instant to) {
+        return log.countBetween(from, to);
+    }
+
+    @Override
+    public List<Transaction> byAccount(UUID accountId) {
+        Deque<Transaction> history = byAccount.get(accountId);
+        return history == null ? List.of() : List.copyOf(history);
+    }
+
+    @Override
+    public List<Transaction> all() {
+        return log.all();
+    }
+
+    @Override
+    public List<PositionedHistory> partitions() {
+        return List.of(this);
+    }
+
+    @Override
+    public List<Transaction> range(long from, long to) {
+        return log.range(from, to);
+    }
+
+    @Override
+    public long positionAfter(Instant instant) {
+        return log.positionAfter(instant);
+    }
+
+    private Deque<Transaction> accountIndex(UUID accountId) {
+        return byAccount.computeIfAbsent(accountId, id -> new ConcurrentLinkedDeque<>());
+    }
+}
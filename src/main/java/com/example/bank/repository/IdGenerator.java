@@ -0,0 +1,13 @@
+/*
+Source of ids for customers, accounts and transactions created through BankRepository
+    - nextId() is called on every posting, possibly from many threads at once, so it must not
+      block or contend
+    - ids must be unique across the whole book, including ids recovered from the journal
+*/
+package com.example.bank.repository;
+
+import java.util.UUID;
+
+public interface IdGenerator {
+    UUID nextId();
+}
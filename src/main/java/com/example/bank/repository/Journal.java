@@ -0,0 +1,681 @@
+/*
+Append-only binary write-ahead journal
+    - one record per customer, account opening, transaction and business-day close:
+      [length][type][payload][crc32]
+    - appends encode into an in-memory batch under a short lock and return a sequence number
+    - a flusher thread swaps the batch out, writes it with one FileChannel write and forces it,
+      so concurrent callers share a single fsync (group commit)
+    - callers wait with awaitDurable(seq) once their posting section has returned
+    - records go to numbered segment files (journal-NNNNNN.log); replay reads them in order and
+      truncates a torn or corrupt tail left by a crash in the last one
+    - a checkpoint rolls the journal into a new segment and snapshots the journal image (see
+      JournalImage) as of the roll; replay takes balances and the ledger from the latest snapshot and
+      only reads the segments from its marker on
+    - the sealed segments before the marker are the archive (see JournalArchive): posting history
+      that is read from disk on demand instead of being decoded at startup
+*/
+package com.example.bank.repository;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+import com.example.bank.domain.AccountType;
+import com.example.bank.domain.Customer;
+import com.example.bank.domain.Money;
+import com.example.bank.domain.Transaction;
+import com.example.bank.domain.TransactionType;
+
+public class Journal implements AutoCloseable {
+    static final byte TRANSACTION = 3;
+
+    private static final String LEGACY_FILE = "journal.log"; //the single file written before segments
+    private static final byte CUSTOMER = 1;
+    private static final byte ACCOUNT = 2;
+    private static final byte DAY_CLOSED = 4;
+    private static final int MAX_RECORD_LENGTH = 1 << 24;
+    private static final int MAX_ENCODER_RETAINED = 1 << 20; //bytes a thread's encoding buffer may keep between appends
+    private static final ThreadLocal<RecordBuffer> ENCODER = ThreadLocal.withInitial(() -> new RecordBuffer(512));
+
+    //callbacks for replay: the ledger state the snapshot carries (if any), the transactions journaled after it in
+    //order, then the recovered customers and accounts, then the closed business days, oldest first
+    public interface Visitor {
+        void checkpointedLedger(byte[] state);
+        void customer(Customer customer);
+        void account(UUID id, UUID customerId, AccountType accountType, Money balance);
+        void transaction(Transaction transaction);
+        void businessDayClosed(LocalDate businessDate);
+    }
+
+    //where a roll left the journal: what a snapshot taken with it covers, and the segment it sealed
+    record Marker(long seq, long segment, long sealedSegment, JournalArchive.Summary sealed) {}
+
+    private final Path directory;
+    private final FsyncPolicy policy;
+    private final Duration syncInterval;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition workAvailable = lock.newCondition();
+    private final Condition durableAdvanced = lock.newCondition();
+    private RecordBuffer pending = new RecordBuffer();
+    private RecordBuffer spare = new RecordBuffer();
+    private final Object checkpointLock = new Object();
+    private JournalImage image = new JournalImage();
+    private JournalArchive archive = JournalArchive.EMPTY;
+    private FileChannel channel; //the active segment, opened by replay
+    private long segment;
+    private JournalArchive.Summary active = new JournalArchive.Summary(); //what the active segment holds
+    private long publishedSegment = -1; //marker segment of the newest snapshot written by this journal
+    private long appendedSeq;
+    private long durableSeq;
+    private boolean flushing; //the flusher is writing a swapped-out batch to the active segment
+    private IOException failure;
+    private boolean replayed;
+    private boolean closed;
+    private Thread flusher;
+
+    public Journal(Path directory, FsyncPolicy policy, Duration syncInterval) {
+        this.policy = Objects.requireNonNull(policy, "Fsync policy cannot be null");
+        this.syncInterval = Objects.requireNonNull(syncInterval, "Sync interval cannot be null");
+        if (syncInterval.isNegative() || syncInterval.isZero()) {
+            throw new IllegalArgumentException("Sync interval must be positive");
+        }
+        this.directory = Objects.requireNonNull(directory, "Journal directory cannot be null");
+        try {
+            Files.createDirectories(directory);
+            Path legacy = directory.resolve(LEGACY_FILE);
+            if (Files.exists(legacy) && segments(directory).isEmpty()) {
+                Files.move(legacy, segmentFile(directory, 0));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open journal in " + directory, e);
+        }
+    }
+
+    public Journal(Path directory, FsyncPolicy policy) {
+        this(directory, policy, Duration.ofMillis(10));
+    }
+
+    public FsyncPolicy getPolicy() {
+        return policy;
+    }
+
+    //Loads the latest snapshot, replays every intact record in the segments from its marker on, truncates anything
+    //after the last one and starts accepting appends; the segments before the marker become the archive
+    public void replay(Visitor visitor) {
+        lock.lock();
+        try {
+            if (replayed) {
+                throw new IllegalStateException("Journal has already been replayed");
+            }
+            List<Long> segments = segments(directory);
+            JournalImage loaded = JournalImage.load(directory);
+            if (!segments.contains(loaded.markerSegment())) {
+                loaded = new JournalImage(); //the segment the snapshot starts from is gone: rebuild from scratch
+            }
+            image = loaded;
+            if (loaded.ledger() != null) {
+                visitor.checkpointedLedger(loaded.ledger());
+            }
+            List<Long> tail = new ArrayList<>();
+            List<Long> sealed = new ArrayList<>();
+            for (long number : segments) {
+                (number < loaded.markerSegment() ? sealed : tail).add(number);
+            }
+            if (tail.isEmpty()) {
+                tail.add(loaded.markerSegment());
+            }
+            long[] records = {loaded.markerSeq()};
+            for (int i = 0; i < tail.size(); i++) {
+                boolean last = i == tail.size() - 1;
+                FileChannel file = FileChannel.open(segmentFile(directory, tail.get(i)),
+                        StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                active = new JournalArchive.Summary();
+                long validEnd;
+                try {
+                    validEnd = readRecords(Channels.newInputStream(file), body -> decode(body, ++records[0], visitor));
+                    if (!last && validEnd < file.size()) {
+                        throw new IOException("Journal segment " + tail.get(i) + " is damaged at offset " + validEnd);
+                    }
+                } catch (IOException | RuntimeException e) {
+                    file.close();
+                    throw e;
+                }
+                if (!last) {
+                    file.close();
+                    continue;
+                }
+                file.truncate(validEnd);
+                file.position(validEnd);
+                channel = file;
+                segment = tail.get(i);
+            }
+            image.restore(visitor);
+            archive = JournalArchive.open(directory, sealed);
+            appendedSeq = records[0];
+            durableSeq = records[0];
+            replayed = true;
+            if (policy != FsyncPolicy.PER_OPERATION) {
+                flusher = new Thread(this::flushLoop, "journal-flusher");
+                flusher.setDaemon(true);
+                flusher.start();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to replay journal", e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    //posting history sealed by earlier checkpoints; empty until replay has run
+    JournalArchive archive() {
+        lock.lock();
+        try {
+            return archive;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    //archived segments decoded from disk so far (the archive's decoded-cache misses)
+    public long archivedSegmentReads() {
+        return archive().segmentReads();
+    }
+
+    //reads intact records from the start of a segment and returns the offset after the last one; stops at a torn
+    //or corrupt record
+    static long readRecords(InputStream raw, RecordHandler handler) throws IOException {
+        long validEnd = 0;
+        DataInputStream in = new DataInputStream(new BufferedInputStream(raw, 1 << 16));
+        while (true) {
+            byte[] body;
+            try {
+                int length = in.readInt();
+                if (length < 1 || length > MAX_RECORD_LENGTH) {
+                    break;
+                }
+                body = new byte[length];
+                in.readFully(body);
+                int crc = in.readInt();
+                if (crc != checksum(body, 0, body.length)) {
+                    break;
+                }
+            } catch (EOFException e) {
+                break;
+            }
+            validEnd += 8L + body.length;
+            handler.record(body);
+        }
+        return validEnd;
+    }
+
+    static Path segmentFile(Path directory, long number) {
+        return directory.resolve(String.format("journal-%06d.log", number));
+    }
+
+    //segment numbers present in the directory, oldest first
+    private static List<Long> segments(Path directory) throws IOException {
+        List<Long> numbers = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "journal-*.log")) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                try {
+                    numbers.add(Long.parseLong(name.substring("journal-".length(), name.length() - ".log".length())));
+                } catch (NumberFormatException e) {
+                    //not one of ours
+                }
+            }
+        }
+        Collections.sort(numbers);
+        return numbers;
+    }
+
+    public long appendCustomer(Customer customer) {
+        lock.lock();
+        try {
+            RecordBuffer out = beginRecord(CUSTOMER);
+            JournalCodec.writeUuid(out.data, customer.getId());
+            JournalCodec.writeString(out.data, customer.getName());
+            JournalCodec.writeString(out.data, customer.getEmail());
+            long seq = endRecord(out);
+            image.customer(customer);
+            return seq;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to encode customer record", e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long appendAccount(UUID id, UUID customerId, AccountType accountType, Money openingBalance) {
+        lock.lock();
+        try {
+            RecordBuffer out = beginRecord(ACCOUNT);
+            JournalCodec.writeUuid(out.data, id);
+            JournalCodec.writeUuid(out.data, customerId);
+            out.data.writeByte(accountType.ordinal());
+            JournalCodec.writeMoney(out.data, openingBalance);
+            long seq = endRecord(out);
+            image.account(id, customerId, accountType, openingBalance, seq);
+            return seq;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to encode account record", e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long appendTransaction(Transaction tx) {
+        return appendTransactions(List.of(tx));
+    }
+
+    //Records are encoded and checksummed on the caller's thread, outside the lock; the lock only covers copying
+    //the framed bytes into the pending batch and numbering them. Returns the sequence of the last record.
+    public long appendTransactions(List<Transaction> batch) {
+        if (batch.isEmpty()) {
+            throw new IllegalArgumentException("Transaction batch cannot be empty");
+        }
+        RecordBuffer encoded = ENCODER.get();
+        try {
+            encoded.reset();
+            for (Transaction tx : batch) {
+                encodeTransaction(encoded, tx);
+            }
+            lock.lock();
+            try {
+                requireAppendable();
+                pending.write(encoded.buffer(), 0, encoded.size());
+                long seq = appended(batch.size());
+                long first = seq - batch.size() + 1;
+                for (int i = 0; i < batch.size(); i++) {
+                    image.transaction(batch.get(i), first + i);
+                    active.add(batch.get(i));
+                }
+                return seq;
+            } finally {
+                lock.unlock();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to encode transaction record", e);
+        } finally {
+            if (encoded.size() > MAX_ENCODER_RETAINED) {
+                ENCODER.remove(); //a huge batch should not pin its buffer to the thread
+            }
+        }
+    }
+
+    public long appendBusinessDayClose(LocalDate businessDate) {
+        lock.lock();
+        try {
+            RecordBuffer out = beginRecord(DAY_CLOSED);
+            JournalCodec.writeDate(out.data, businessDate);
+            long seq = endRecord(out);
+            image.businessDayClosed(businessDate);
+            return seq;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to encode business day record", e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    //frames one transaction record into `out`; needs no journal state, so it runs outside the lock
+    private static void encodeTransaction(RecordBuffer out, Transaction tx) throws IOException {
+        out.begin(TRANSACTION);
+        JournalCodec.writeUuid(out.data, tx.getId());
+        JournalCodec.writeInstant(out.data, tx.getTimestamp());
+        JournalCodec.writeDate(out.data, tx.getBusinessDate());
+        out.data.writeByte(tx.getType().ordinal());
+        JournalCodec.writeUuid(out.data, tx.getFromAccountId());
+        JournalCodec.writeUuid(out.data, tx.getToAccountId());
+        JournalCodec.writeMoney(out.data, tx.getAmountMoney());
+        JournalCodec.writeString(out.data, tx.getDescription());
+        out.end();
+    }
+
+    //Blocks until the record with this sequence number is on disk; returns at once under INTERVAL
+    public void awaitDurable(long seq) {
+        if (policy == FsyncPolicy.INTERVAL) {
+            return;
+        }
+        waitUntilDurable(seq);
+    }
+
+    //Blocks until every record appended before the call is on disk
+    public void awaitAppended() {
+        long seq;
+        lock.lock();
+        try {
+            seq = appendedSeq;
+        } finally {
+            lock.unlock();
+        }
+        awaitDurable(seq);
+    }
+
+    //Seals the active segment and starts the next one. Callers hold every posting off, so the marker and whatever
+    //state they capture with it (the ledger) cover exactly the same records
+    Marker roll() {
+        lock.lock();
+        try {
+            if (!replayed || closed) {
+                throw new IllegalStateException("Journal is not open");
+            }
+            throwIfFailed();
+            while (flushing) {
+                durableAdvanced.awaitUninterruptibly();
+            }
+            FileChannel next = FileChannel.open(segmentFile(directory, segment + 1),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            try {
+                writeFully(pending);
+                pending.reset();
+                channel.force(false);
+                channel.close();
+            } catch (IOException e) {
+                failure = e; //the old segment's tail is in doubt: stop accepting appends, as a failed flush would
+                durableAdvanced.signalAll();
+                next.close();
+                throw e;
+            }
+            durableSeq = appendedSeq;
+            durableAdvanced.signalAll();
+            channel = next;
+            long sealed = segment++;
+            Marker marker = new Marker(appendedSeq, segment, sealed, active);
+            active = new JournalArchive.Summary();
+            return marker;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to roll journal", e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    //Indexes the segment the roll sealed and writes a snapshot with the given ledger state as of the marker;
+    //postings keep flowing while it is written. A marker older than the last published one is ignored
+    void checkpoint(Marker marker, byte[] ledger) {
+        synchronized (checkpointLock) {
+            if (marker.segment() <= publishedSegment) {
+                return;
+            }
+            Path tmp = directory.resolve(JournalImage.SNAPSHOT_FILE + ".tmp");
+            try {
+                marker.sealed().write(JournalArchive.indexFile(directory, marker.sealedSegment()));
+                image.write(tmp, marker.seq(), marker.segment(), ledger);
+                //the image may already include records appended during the scan; they must be on disk first
+                long covered;
+                lock.lock();
+                try {
+                    covered = appendedSeq;
+                } finally {
+                    lock.unlock();
+                }
+                waitUntilDurable(covered);
+                Files.move(tmp, directory.resolve(JournalImage.SNAPSHOT_FILE),
+                        StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+                publishedSegment = marker.segment();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to write snapshot", e);
+            }
+        }
+    }
+
+    private void waitUntilDurable(long seq) {
+        lock.lock();
+        try {
+            while (durableSeq < seq) {
+                throwIfFailed();
+                if (closed) {
+                    throw new IllegalStateException("Journal closed before record " + seq + " was durable");
+                }
+                durableAdvanced.awaitUninterruptibly();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        Thread toJoin;
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            toJoin = flusher;
+            workAvailable.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        if (toJoin != null) {
+            try {
+                toJoin.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        try {
+            if (channel != null) {
+                channel.close();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to close journal", e);
+        }
+    }
+
+    private RecordBuffer beginRecord(byte type) throws IOException {
+        requireAppendable();
+        pending.begin(type);
+        return pending;
+    }
+
+    private void requireAppendable() {
+        throwIfFailed();
+        if (closed) {
+            throw new IllegalStateException("Journal is closed");
+        }
+        if (!replayed) {
+            throw new IllegalStateException("Journal must be replayed before appending");
+        }
+    }
+
+    private long endRecord(RecordBuffer out) throws IOException {
+        out.end();
+        return appended(1);
+    }
+
+    //numbers the last `records` framed records in the pending batch and hands them to the fsync policy;
+    //returns the sequence of the last one
+    private long appended(int records) throws IOException {
+        appendedSeq += records;
+        long seq = appendedSeq;
+        if (policy == FsyncPolicy.PER_OPERATION) {
+            //no batching: the caller pays for its own write and force
+            writeFully(pending);
+            channel.force(false);
+            pending.reset();
+            durableSeq = seq;
+        } else if (policy == FsyncPolicy.PER_BATCH) {
+            workAvailable.signal();
+        }
+        return seq;
+    }
+
+    private void flushLoop() {
+        while (true) {
+            RecordBuffer batch;
+            FileChannel target;
+            long batchEnd;
+            lock.lock();
+            try {
+                if (policy == FsyncPolicy.INTERVAL) {
+                    //appends do not signal under INTERVAL; only close() cuts the wait short
+                    do {
+                        workAvailable.awaitNanos(syncInterval.toNanos());
+                    } while (pending.size() == 0 && !closed);
+                } else {
+                    while (pending.size() == 0 && !closed) {
+                        workAvailable.await();
+                    }
+                }
+                if (pending.size() == 0 && closed) {
+                    return;
+                }
+                batch = pending;
+                pending = spare;
+                spare = batch;
+                batchEnd = appendedSeq;
+                target = channel; //roll() waits for this batch before it swaps segments
+                flushing = true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                lock.unlock();
+            }
+
+            //write and force outside the lock so new records keep queueing into the next batch
+            IOException error = null;
+            try {
+                writeFully(batch, target);
+                target.force(false);
+            } catch (IOException e) {
+                error = e;
+            }
+            batch.reset();
+
+            lock.lock();
+            try {
+                flushing = false;
+                if (error != null) {
+                    failure = error;
+                } else {
+                    durableSeq = batchEnd;
+                }
+                durableAdvanced.signalAll();
+                if (error != null) {
+                    return;
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private void writeFully(RecordBuffer batch) throws IOException {
+        writeFully(batch, channel);
+    }
+
+    private static void writeFully(RecordBuffer batch, FileChannel target) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(batch.buffer(), 0, batch.size());
+        while (buffer.hasRemaining()) {
+            target.write(buffer);
+        }
+    }
+
+    private void throwIfFailed() {
+        if (failure != null) {
+            throw new UncheckedIOException("Journal write failed", failure);
+        }
+    }
+
+    private void decode(byte[] body, long seq, Visitor visitor) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(body, 1, body.length - 1));
+        switch (body[0]) {
+            case CUSTOMER -> image.customer(new Customer(
+                    JournalCodec.readUuid(in), JournalCodec.readString(in), JournalCodec.readString(in)));
+            case ACCOUNT -> image.account(
+                    JournalCodec.readUuid(in), JournalCodec.readUuid(in),
+                    AccountType.values()[in.readByte()], JournalCodec.readMoney(in), seq);
+            case TRANSACTION -> {
+                Transaction tx = readTransaction(body);
+                image.transaction(tx, seq);
+                active.add(tx);
+                visitor.transaction(tx);
+            }
+            case DAY_CLOSED -> image.businessDayClosed(JournalCodec.readDate(in));
+            default -> throw new IOException("Unknown journal record type " + body[0]);
+        }
+    }
+
+    static Transaction readTransaction(byte[] body) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(body, 1, body.length - 1));
+        return new Transaction(
+                JournalCodec.readUuid(in), JournalCodec.readInstant(in), JournalCodec.readDate(in),
+                TransactionType.values()[in.readByte()],
+                JournalCodec.readUuid(in), JournalCodec.readUuid(in),
+                JournalCodec.readMoney(in), JournalCodec.readString(in));
+    }
+
+    private static int checksum(byte[] bytes, int offset, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes, offset, length);
+        return (int) crc.getValue();
+    }
+
+    interface RecordHandler {
+        void record(byte[] body) throws IOException;
+    }
+
+    //growable batch buffer; records are framed in place so a batch is written with one call
+    private static final class RecordBuffer extends ByteArrayOutputStream {
+        final DataOutputStream data = new DataOutputStream(this);
+        private int recordStart;
+
+        RecordBuffer() {
+            this(1 << 16);
+        }
+
+        RecordBuffer(int capacity) {
+            super(capacity);
+        }
+
+        byte[] buffer() {
+            return buf;
+        }
+
+        void begin(byte type) throws IOException {
+            recordStart = count;
+            data.writeInt(0); //length, patched in end()
+            data.writeByte(type);
+        }
+
+        //frames the record and returns its size on disk
+        int end() throws IOException {
+            int length = count - recordStart - 4;
+            buf[recordStart] = (byte) (length >>> 24);
+            buf[recordStart + 1] = (byte) (length >>> 16);
+            buf[recordStart + 2] = (byte) (length >>> 8);
+            buf[recordStart + 3] = (byte) length;
+            data.writeInt(checksum(buf, recordStart + 4, length));
+            return count - recordStart;
+        }
+    }
+}
@@ -0,0 +1,314 @@
+/*
+Posting history sealed into journal segments by earlier checkpoints, read from disk on demand
+    - recovery replays only the segments from the snapshot's marker on; the ones before it stay on
+      disk as the archive and are never decoded at startup
+    - each sealed segment has an index file (journal-NNNNNN.idx) written at checkpoint: posting count,
+      time bounds and an AccountFilter; a missing or damaged index is rebuilt from its segment once
+    - queries skip segments by time range or account and decode the rest; the last few decoded
+      segments are cached and segmentReads() counts the decodes
+    - positions run across the segments in journal order, starting at 0
+The journal stays the only copy: segments are never rewritten, so the archive is as durable as they are.
+*/
+package com.example.bank.repository;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+import com.example.bank.domain.Transaction;
+
+final class JournalArchive implements PositionedHistory {
+    static final JournalArchive EMPTY = new JournalArchive(List.of());
+
+    private static final int MAGIC = 0x4A494458; //"JIDX"
+    private static final int DECODED_CACHE_SIZE = 2; //whole segments: one checkpoint interval each
+
+    private final List<Sealed> segments; //oldest first, empty segments left out
+    private final long size;
+    private final Map<Path, Transaction[]> decoded = new LinkedHashMap<>(DECODED_CACHE_SIZE, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Path, Transaction[]> eldest) {
+            return size() > DECODED_CACHE_SIZE;
+        }
+    };
+    private final LongAdder reads = new LongAdder();
+
+    private JournalArchive(List<Sealed> segments) {
+        this.segments = segments;
+        this.size = segments.isEmpty() ? 0 : segments.get(segments.size() - 1).end();
+    }
+
+    //the sealed segments with these numbers, oldest first; reads only their index files
+    static JournalArchive open(Path directory, List<Long> numbers) throws IOException {
+        List<Sealed> segments = new ArrayList<>();
+        long position = 0;
+        for (long number : numbers) {
+            Path file = Journal.segmentFile(directory, number);
+            Path index = indexFile(directory, number);
+            Sealed segment = readIndex(index, file, position);
+            if (segment == null) {
+                Summary summary = new Summary();
+                for (Transaction tx : decode(file, -1)) {
+                    summary.add(tx);
+                }
+                summary.write(index);
+                segment = summary.seal(file, position);
+            }
+            if (segment.count > 0) {
+                segments.add(segment);
+                position += segment.count;
+            }
+        }
+        return new JournalArchive(Collections.unmodifiableList(segments));
+    }
+
+    static Path indexFile(Path directory, long number) {
+        return directory.resolve(String.format("journal-%06d.idx", number));
+    }
+
+    @Override
+    public long size() {
+        return size;
+    }
+
+    @Override
+    public List<Transaction> range(long from, long to) {
+        List<Transaction> result = new ArrayList<>((int) Math.max(0, Math.min(to - from, 1 << 16)));
+        for (Sealed segment : segments) {
+            if (segment.end() <= from || segment.firstPosition >= to) {
+                continue;
+            }
+            Transaction[] rows = rows(segment);
+            int start = (int) (Math.max(from, segment.firstPosition) - segment.firstPosition);
+            int end = (int) (Math.min(to, segment.end()) - segment.firstPosition);
+            for (int i = start; i < end; i++) {
+                result.add(rows[i]);
+            }
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    @Override
+    public long positionAfter(Instant instant) {
+        for (Sealed segment : segments) {
+            if (segment.max.isAfter(instant)) {
+                return segment.firstPosition;
+            }
+        }
+        return size;
+    }
+
+    //newest first, like every TransactionStore query
+    List<Transaction> recent(int n) {
+        List<Transaction> result = new ArrayList<>();
+        for (int s = segments.size() - 1; s >= 0 && result.size() < n; s--) {
+            Transaction[] rows = rows(segments.get(s));
+            for (int i = rows.length - 1; i >= 0 && result.size() < n; i--) {
+                result.add(rows[i]);
+            }
+        }
+        return result;
+    }
+
+    List<Transaction> between(Instant from, Instant to) {
+        List<Transaction> result = new ArrayList<>();
+        for (int s = segments.size() - 1; s >= 0; s--) {
+            Sealed segment = segments.get(s);
+            if (segment.overlaps(from, to)) {
+                collect(segment, tx -> inRange(tx.getTimestamp(), from, to), result);
+            }
+        }
+        return result;
+    }
+
+    long countBetween(Instant from, Instant to) {
+        long count = 0;
+        for (Sealed segment : segments) {
+            if (!segment.overlaps(from, to)) {
+                continue;
+            }
+            if (segment.coveredBy(from, to)) {
+                count += segment.count;
+                continue;
+            }
+            for (Transaction tx : rows(segment)) {
+                if (inRange(tx.getTimestamp(), from, to)) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    List<Transaction> byAccount(UUID accountId) {
+        List<Transaction> result = new ArrayList<>();
+        for (int s = segments.size() - 1; s >= 0; s--) {
+            Sealed segment = segments.get(s);
+            if (segment.accounts.mayContain(accountId)) {
+                collect(segment, tx -> accountId.equals(tx.getFromAccountId()) || accountId.equals(tx.getToAccountId()), result);
+            }
+        }
+        return result;
+    }
+
+    long segmentReads() {
+        return reads.sum();
+    }
+
+    private void collect(Sealed segment, Predicate<Transaction> filter, List<Transaction> result) {
+        Transaction[] rows = rows(segment);
+        for (int i = rows.length - 1; i >= 0; i--) {
+            if (filter.test(rows[i])) {
+                result.add(rows[i]);
+            }
+        }
+    }
+
+    private Transaction[] rows(Sealed segment) {
+        synchronized (decoded) {
+            Transaction[] rows = decoded.get(segment.file);
+            if (rows != null) {
+                return rows;
+            }
+        }
+        Transaction[] rows;
+        try {
+            rows = decode(segment.file, segment.count);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read archived journal segment " + segment.file, e);
+        }
+        reads.increment();
+        synchronized (decoded) {
+            decoded.put(segment.file, rows);
+        }
+        return rows;
+    }
+
+    //the transactions a sealed segment holds, in journal order; expected is the count its index promises, or -1
+    private static Transaction[] decode(Path file, int expected) throws IOException {
+        List<Transaction> rows = new ArrayList<>(Math.max(expected, 16));
+        long validEnd;
+        try (InputStream in = Files.newInputStream(file)) {
+            validEnd = Journal.readRecords(in, body -> {
+                if (body[0] == Journal.TRANSACTION) {
+                    rows.add(Journal.readTransaction(body));
+                }
+            });
+        }
+        //sealed segments were forced whole when they were rolled: anything short of that is damage
+        if (validEnd < Files.size(file) || (expected >= 0 && rows.size() != expected)) {
+            throw new IOException("Archived journal segment " + file + " is damaged at offset " + validEnd);
+        }
+        return rows.toArray(new Transaction[0]);
+    }
+
+    //the segment as its index describes it, or null if there is no index or it is damaged
+    private static Sealed readIndex(Path index, Path file, long firstPosition) {
+        if (!Files.exists(index)) {
+            return null;
+        }
+        try (InputStream raw = new BufferedInputStream(Files.newInputStream(index), 1 << 16)) {
+            CheckedInputStream checked = new CheckedInputStream(raw, new CRC32());
+            DataInputStream in = new DataInputStream(checked);
+            if (in.readInt() != MAGIC) {
+                return null;
+            }
+            int count = in.readInt();
+            Sealed segment = count <= 0 ? new Sealed(file, firstPosition, 0, null, null, null)
+                    : new Sealed(file, firstPosition, count, JournalCodec.readInstant(in), JournalCodec.readInstant(in), AccountFilter.read(in));
+            int expected = (int) checked.getChecksum().getValue();
+            return in.readInt() == expected ? segment : null;
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static boolean inRange(Instant ts, Instant from, Instant to) {
+        return (from == null || ts.isAfter(from)) && (to == null || !ts.isAfter(to));
+    }
+
+    private record Sealed(Path file, long firstPosition, int count, Instant min, Instant max, AccountFilter accounts) {
+        long end() {
+            return firstPosition + count;
+        }
+
+        boolean overlaps(Instant from, Instant to) {
+            return (from == null || max.isAfter(from)) && (to == null || !min.isAfter(to));
+        }
+
+        boolean coveredBy(Instant from, Instant to) {
+            return (from == null || min.isAfter(from)) && (to == null || !max.isAfter(to));
+        }
+    }
+
+    //What a segment holds, accumulated under the journal lock as records are appended or replayed and written
+    //as the segment's index once it is sealed. Not thread-safe
+    static final class Summary {
+        private int count;
+        private Instant min;
+        private Instant max;
+        private final Set<UUID> accounts = new HashSet<>();
+
+        void add(Transaction tx) {
+            Instant ts = tx.getTimestamp();
+            min = min == null || ts.isBefore(min) ? ts : min;
+            max = max == null || ts.isAfter(max) ? ts : max;
+            count++;
+            if (tx.getFromAccountId() != null) {
+                accounts.add(tx.getFromAccountId());
+            }
+            if (tx.getToAccountId() != null) {
+                accounts.add(tx.getToAccountId());
+            }
+        }
+
+        void write(Path index) throws IOException {
+            Path tmp = index.resolveSibling(index.getFileName() + ".tmp");
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                CheckedOutputStream checked = new CheckedOutputStream(
+                        new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16), new CRC32());
+                DataOutputStream out = new DataOutputStream(checked);
+                out.writeInt(MAGIC);
+                out.writeInt(count);
+                if (count > 0) {
+                    JournalCodec.writeInstant(out, min);
+                    JournalCodec.writeInstant(out, max);
+                    AccountFilter.of(accounts).write(out);
+                }
+                out.writeInt((int) checked.getChecksum().getValue());
+                out.flush();
+                channel.force(true);
+            }
+            Files.move(tmp, index, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        Sealed seal(Path file, long firstPosition) {
+            return new Sealed(file, firstPosition, count, min, max, count == 0 ? null : AccountFilter.of(accounts));
+        }
+    }
+}
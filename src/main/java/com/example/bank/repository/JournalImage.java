@@ -0,0 +1,230 @@
+/*
+Compact image of the book as of the journal: customers, each account's balance and the
+sequence of the last record applied to it, and the closed business days
+    - updated under the journal lock in journal order, so it never depends on how callers lock accounts
+    - a checkpoint streams the live image into snapshot.bin without stopping writers; each account
+      entry is read atomically together with its last applied sequence
+    - the snapshot also carries the business-day ledger as of its marker, captured by the repository
+      with every posting held off, so recovery needs none of the history before the marker
+    - recovery loads the snapshot and replays only the journal segments from its marker on, skipping
+      records an account entry has already absorbed
+*/
+package com.example.bank.repository;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+import com.example.bank.domain.AccountType;
+import com.example.bank.domain.Customer;
+import com.example.bank.domain.Money;
+import com.example.bank.domain.Transaction;
+
+final class JournalImage {
+    static final String SNAPSHOT_FILE = "snapshot.bin";
+
+    private static final int MAGIC = 0x534E5032; //"SNP2": marker segment and ledger state
+    private static final byte END = 0;
+    private static final byte CUSTOMER = 1;
+    private static final byte ACCOUNT = 2;
+    private static final byte DAY_CLOSED = 3;
+    private static final int MAX_LEDGER_LENGTH = 1 << 30;
+
+    private final Map<UUID, Customer> customers = new ConcurrentHashMap<>();
+    private final Map<UUID, AccountEntry> accounts = new ConcurrentHashMap<>();
+    private final Set<LocalDate> closedDays = new ConcurrentSkipListSet<>();
+    private final long markerSeq;     //last journal sequence the loaded snapshot covers
+    private final long markerSegment; //first journal segment after markerSeq
+    private final byte[] ledger;      //encoded BusinessDayLedger as of markerSeq; null without a snapshot
+
+    JournalImage() {
+        this(0, 0, null);
+    }
+
+    private JournalImage(long markerSeq, long markerSegment, byte[] ledger) {
+        this.markerSeq = markerSeq;
+        this.markerSegment = markerSegment;
+        this.ledger = ledger;
+    }
+
+    long markerSeq() {
+        return markerSeq;
+    }
+
+    long markerSegment() {
+        return markerSegment;
+    }
+
+    byte[] ledger() {
+        return ledger;
+    }
+
+    void customer(Customer customer) {
+        customers.putIfAbsent(customer.getId(), customer);
+    }
+
+    void account(UUID id, UUID customerId, AccountType accountType, Money openingBalance, long seq) {
+        accounts.putIfAbsent(id, new AccountEntry(id, customerId, accountType, openingBalance.minorUnits(), seq));
+    }
+
+    void businessDayClosed(LocalDate businessDate) {
+        closedDays.add(businessDate);
+    }
+
+    void transaction(Transaction tx, long seq) {
+        long amount = tx.getAmountMoney().minorUnits();
+        switch (tx.getType()) {
+            case DEPOSIT -> entry(tx.getToAccountId()).apply(amount, seq);
+            case WITHDRAWAL, PAYMENT -> entry(tx.getFromAccountId()).apply(-amount, seq);
+            case TRANSFER -> {
+                entry(tx.getFromAccountId()).apply(-amount, seq);
+                entry(tx.getToAccountId()).apply(amount, seq);
+            }
+        }
+    }
+
+    //hands the recovered book to the repository once the tail has been applied
+    void restore(Journal.Visitor visitor) {
+        customers.values().forEach(visitor::customer);
+        for (AccountEntry entry : accounts.values()) {
+            visitor.account(entry.id, entry.customerId, entry.accountType, Money.ofMinor(entry.balance));
+        }
+        closedDays.forEach(visitor::businessDayClosed); //sorted set: oldest first
+    }
+
+    //streams the live image; callers must make every record it may reflect durable before publishing the file
+    void write(Path file, long seq, long segment, byte[] ledgerState) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            CheckedOutputStream checked = new CheckedOutputStream(
+                    new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16), new CRC32());
+            DataOutputStream out = new DataOutputStream(checked);
+            out.writeInt(MAGIC);
+            out.writeLong(seq);
+            out.writeLong(segment);
+            out.writeInt(ledgerState.length);
+            out.write(ledgerState);
+            for (Customer customer : customers.values()) {
+                out.writeByte(CUSTOMER);
+                JournalCodec.writeUuid(out, customer.getId());
+                JournalCodec.writeString(out, customer.getName());
+                JournalCodec.writeString(out, customer.getEmail());
+            }
+            for (AccountEntry entry : accounts.values()) {
+                out.writeByte(ACCOUNT);
+                entry.write(out);
+            }
+            for (LocalDate day : closedDays) {
+                out.writeByte(DAY_CLOSED);
+                JournalCodec.writeDate(out, day);
+            }
+            out.writeByte(END);
+            out.writeInt((int) checked.getChecksum().getValue());
+            out.flush();
+            channel.force(true);
+        }
+    }
+
+    //the snapshot in this directory, or an empty image (full replay) if there is none or it is damaged
+    static JournalImage load(Path directory) {
+        Path file = directory.resolve(SNAPSHOT_FILE);
+        if (!Files.exists(file)) {
+            return new JournalImage();
+        }
+        try (InputStream raw = new BufferedInputStream(Files.newInputStream(file), 1 << 16)) {
+            CheckedInputStream checked = new CheckedInputStream(raw, new CRC32());
+            DataInputStream in = new DataInputStream(checked);
+            if (in.readInt() != MAGIC) {
+                return new JournalImage();
+            }
+            long seq = in.readLong();
+            long segment = in.readLong();
+            int length = in.readInt();
+            if (length < 0 || length > MAX_LEDGER_LENGTH) {
+                return new JournalImage();
+            }
+            byte[] ledger = new byte[length];
+            in.readFully(ledger);
+            JournalImage image = new JournalImage(seq, segment, ledger);
+            byte tag;
+            while ((tag = in.readByte()) != END) {
+                if (tag == CUSTOMER) {
+                    image.customer(new Customer(JournalCodec.readUuid(in), JournalCodec.readString(in), JournalCodec.readString(in)));
+                } else if (tag == ACCOUNT) {
+                    AccountEntry entry = AccountEntry.read(in);
+                    image.accounts.put(entry.id, entry);
+                } else if (tag == DAY_CLOSED) {
+                    image.closedDays.add(JournalCodec.readDate(in));
+                } else {
+                    return new JournalImage();
+                }
+            }
+            int expected = (int) checked.getChecksum().getValue();
+            return in.readInt() == expected ? image : new JournalImage();
+        } catch (IOException | RuntimeException e) {
+            return new JournalImage();
+        }
+    }
+
+    private AccountEntry entry(UUID accountId) {
+        AccountEntry entry = accountId == null ? null : accounts.get(accountId);
+        if (entry == null) {
+            throw new IllegalStateException("Journal references unknown account " + accountId);
+        }
+        return entry;
+    }
+
+    private static final class AccountEntry {
+        final UUID id;
+        final UUID customerId;
+        final AccountType accountType;
+        private long balance; //minor units
+        private long lastSeq;
+
+        AccountEntry(UUID id, UUID customerId, AccountType accountType, long balance, long lastSeq) {
+            this.id = id;
+            this.customerId = customerId;
+            this.accountType = accountType;
+            this.balance = balance;
+            this.lastSeq = lastSeq;
+        }
+
+        //records at or below lastSeq are already part of the balance (tail replay over a snapshot)
+        synchronized void apply(long delta, long seq) {
+            if (seq > lastSeq) {
+                balance = Money.add(balance, delta);
+                lastSeq = seq;
+            }
+        }
+
+        synchronized void write(DataOutputStream out) throws IOException {
+            JournalCodec.writeUuid(out, id);
+            JournalCodec.writeUuid(out, customerId);
+            out.writeByte(accountType.ordinal());
+            out.writeLong(balance);
+            out.writeLong(lastSeq);
+        }
+
+        static AccountEntry read(DataInputStream in) throws IOException {
+            return new AccountEntry(JournalCodec.readUuid(in), JournalCodec.readUuid(in),
+                    AccountType.values()[in.readByte()], in.readLong(), in.readLong());
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package com.example.bank.repository;
+
+//how a posting leg counts toward an account's daily totals
+public enum LedgerBucket {
+    DEPOSITS,
+    WITHDRAWALS,
+    TRANSFERS_IN,
+    TRANSFERS_OUT,
+    PAYMENTS
+}
@@ -0,0 +1,54 @@
+package com.example.bank.repository;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import com.example.bank.domain.AccountType;
+import com.example.bank.domain.Money;
+
+//totals by bucket for the business days firstDay..lastDay, per account and per account type; missing buckets are zero
+public record LedgerRollup(
+    LocalDate firstDay,
+    LocalDate lastDay,
+    long postingCount,
+    Map<UUID, Map<LedgerBucket, BigDecimal>> byAccount,
+    Map<AccountType, Map<LedgerBucket, BigDecimal>> byAccountType
+){
+    private static final BigDecimal NONE = Money.ZERO.toBigDecimal();
+
+    public BigDecimal total(UUID accountId, LedgerBucket bucket) {
+        return byAccount.getOrDefault(accountId, Map.of()).getOrDefault(bucket, NONE);
+    }
+
+    public BigDecimal total(AccountType accountType, LedgerBucket bucket) {
+        return byAccountType.getOrDefault(accountType, Map.of()).getOrDefault(bucket, NONE);
+    }
+
+    //sums daily rollups into one covering firstDay..lastDay
+    static LedgerRollup merge(LocalDate firstDay, LocalDate lastDay, List<LedgerRollup> days) {
+        long postings = 0;
+        Map<UUID, Map<LedgerBucket, BigDecimal>> byAccount = new HashMap<>();
+        Map<AccountType, Map<LedgerBucket, BigDecimal>> byAccountType = new EnumMap<>(AccountType.class);
+        for (LedgerRollup day : days) {
+            postings += day.postingCount;
+            day.byAccount.forEach((id, totals) -> addAll(byAccount.computeIfAbsent(id, k -> new EnumMap<>(LedgerBucket.class)), totals));
+            day.byAccountType.forEach((type, totals) -> addAll(byAccountType.computeIfAbsent(type, k -> new EnumMap<>(LedgerBucket.class)), totals));
+        }
+        return new LedgerRollup(firstDay, lastDay, postings, freeze(byAccount), freeze(byAccountType));
+    }
+
+    static void addAll(Map<LedgerBucket, BigDecimal> into, Map<LedgerBucket, BigDecimal> totals) {
+        totals.forEach((bucket, amount) -> into.merge(bucket, amount, BigDecimal::add));
+    }
+
+    static <K> Map<K, Map<LedgerBucket, BigDecimal>> freeze(Map<K, Map<LedgerBucket, BigDecimal>> totals) {
+        totals.replaceAll((key, buckets) -> Collections.unmodifiableMap(buckets));
+        return Collections.unmodifiableMap(totals);
+    }
+}
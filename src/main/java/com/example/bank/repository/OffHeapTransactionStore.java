@@ -0,0 +1,380 @@
+/*
+Off-heap, columnar transaction store
+    - postings live in direct-memory chunks of CHUNK_ROWS rows; inside a chunk every field is its own
+      primitive column: ids and account legs as long pairs, epoch-nanos timestamps, epoch-day business
+      dates, Money minor-unit amounts, a type/flags byte and a description reference
+    - descriptions are dictionary-encoded up to MAX_DICTIONARY_SIZE distinct strings (kept on the heap);
+      once the dictionary is full, new ones are stored inline as UTF-8 in the chunk's own off-heap text
+      area, so free-text descriptions cannot grow the heap without bound
+    - each chunk keeps min/max/ceiling timestamps like TransactionLog, so time queries binary search
+      and skip chunks, and only read the timestamp column of the chunks they touch
+    - the per-account index holds primitive row positions, not objects; cursors filtered by account
+      walk it through accountPositions() instead of scanning every row
+    - Transaction objects are materialized only for rows a query returns
+Timestamps are kept to the nanosecond.
+*/
+package com.example.bank.repository;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.example.bank.domain.Money;
+import com.example.bank.domain.Transaction;
+import com.example.bank.domain.TransactionType;
+
+public class OffHeapTransactionStore implements TransactionStore, PositionedHistory {
+    static final int CHUNK_SHIFT = 16;
+    static final int CHUNK_ROWS = 1 << CHUNK_SHIFT;
+
+    //column offsets inside a chunk buffer; each column is CHUNK_ROWS values wide
+    private static final int ID_HI = 0;
+    private static final int ID_LO = ID_HI + 8 * CHUNK_ROWS;
+    private static final int TIMESTAMP = ID_LO + 8 * CHUNK_ROWS;
+    private static final int FROM_HI = TIMESTAMP + 8 * CHUNK_ROWS;
+    private static final int FROM_LO = FROM_HI + 8 * CHUNK_ROWS;
+    private static final int TO_HI = FROM_LO + 8 * CHUNK_ROWS;
+    private static final int TO_LO = TO_HI + 8 * CHUNK_ROWS;
+    private static final int AMOUNT = TO_LO + 8 * CHUNK_ROWS;
+    private static final int BUSINESS_DAY = AMOUNT + 8 * CHUNK_ROWS;
+    private static final int DESCRIPTION = BUSINESS_DAY + 4 * CHUNK_ROWS;
+    private static final int FLAGS = DESCRIPTION + 4 * CHUNK_ROWS;
+    private static final int CHUNK_BYTES = FLAGS + CHUNK_ROWS;
+
+    private static final int TYPE_MASK = 0x0F;
+    private static final int HAS_FROM = 0x10;
+    private static final int HAS_TO = 0x20;
+    private static final TransactionType[] TYPES = TransactionType.values();
+    private static final int MAX_DICTIONARY_SIZE = 4096;
+    private static final int INITIAL_TEXT_BYTES = 1 << 12;
+
+    private volatile Chunk[] chunks = new Chunk[0]; //copy-on-write, oldest first
+    private volatile long size;
+
+    //description dictionary, bounded; ids are written before the row that uses them is published
+    private final Map<String, Integer> descriptionIds = new HashMap<>();
+    private volatile String[] descriptions = new String[1024];
+
+    private final Map<UUID, PositionList> byAccount = new ConcurrentHashMap<>();
+
+    @Override
+    public synchronized void append(Transaction tx) {
+        Objects.requireNonNull(tx, "Transaction cannot be null");
+        Chunk[] current = chunks;
+        Chunk tail = current.length == 0 ? null : current[current.length - 1];
+        if (tail == null || tail.size == CHUNK_ROWS) {
+            Chunk next = new Chunk(this, tail == null ? Long.MIN_VALUE : tail.ceiling);
+            Chunk[] grown = Arrays.copyOf(current, current.length + 1);
+            grown[current.length] = next;
+            chunks = grown;
+            tail = next;
+        }
+
+        int row = tail.size;
+        ByteBuffer data = tail.data;
+        UUID from = tx.getFromAccountId();
+        UUID to = tx.getToAccountId();
+        long ts = toEpochNanos(tx.getTimestamp());
+        data.putLong(ID_HI + row * 8, tx.getId().getMostSignificantBits());
+        data.putLong(ID_LO + row * 8, tx.getId().getLeastSignificantBits());
+        data.putLong(TIMESTAMP + row * 8, ts);
+        data.putLong(FROM_HI + row * 8, from == null ? 0 : from.getMostSignificantBits());
+        data.putLong(FROM_LO + row * 8, from == null ? 0 : from.getLeastSignificantBits());
+        data.putLong(TO_HI + row * 8, to == null ? 0 : to.getMostSignificantBits());
+        data.putLong(TO_LO + row * 8, to == null ? 0 : to.getLeastSignificantBits());
+        data.putLong(AMOUNT + row * 8, tx.getAmountMoney().minorUnits());
+        data.putInt(BUSINESS_DAY + row * 4, Math.toIntExact(tx.getBusinessDate().toEpochDay()));
+        data.putInt(DESCRIPTION + row * 4, descriptionRef(tail, tx.getDescription()));
+        data.put(FLAGS + row, (byte) (tx.getType().ordinal() | (from != null ? HAS_FROM : 0) | (to != null ? HAS_TO : 0)));
+        tail.widen(ts);
+        tail.size = row + 1; //publish
+
+        long position = size;
+        if (from != null) {
+            accountIndex(from).add(position);
+        }
+        if (to != null && !to.equals(from)) {
+            accountIndex(to).add(position);
+        }
+        size = position + 1;
+    }
+
+    @Override
+    public long size() {
+        return size;
+    }
+
+    @Override
+    public List<Transaction> recent(int n) {
+        List<Transaction> result = new ArrayList<>(Math.min(n, 1024));
+        Chunk[] snapshot = chunks;
+        for (int c = snapshot.length - 1; c >= 0 && result.size() < n; c--) {
+            Chunk chunk = snapshot[c];
+            for (int row = chunk.size - 1; row >= 0 && result.size() < n; row--) {
+                result.add(materialize(chunk, row));
+            }
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    @Override
+    public List<Transaction> between(Instant from, Instant to) {
+        long lo = from == null ? Long.MIN_VALUE : toEpochNanos(from);
+        long hi = to == null ? Long.MAX_VALUE : toEpochNanos(to);
+        List<Transaction> result = new ArrayList<>();
+        Chunk[] snapshot = chunks;
+        for (int c = snapshot.length - 1; c >= firstChunkAfter(snapshot, lo); c--) {
+            Chunk chunk = snapshot[c];
+            int n = chunk.size;
+            if (n == 0 || chunk.max <= lo || chunk.min > hi) {
+                continue;
+            }
+            for (int row = n - 1; row >= 0; row--) {
+                long ts = chunk.data.getLong(TIMESTAMP + row * 8);
+                if (ts > lo && ts <= hi) {
+                    result.add(materialize(chunk, row));
+                }
+            }
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    @Override
+    public long countBetween(Instant from, Instant to) {
+        long lo = from == null ? Long.MIN_VALUE : toEpochNanos(from);
+        long hi = to == null ? Long.MAX_VALUE : toEpochNanos(to);
+        long count = 0;
+        Chunk[] snapshot = chunks;
+        for (int c = firstChunkAfter(snapshot, lo); c < snapshot.length; c++) {
+            Chunk chunk = snapshot[c];
+            int n = chunk.size;
+            if (n == 0 || chunk.max <= lo || chunk.min > hi) {
+                continue;
+            }
+            if (chunk.min > lo && chunk.max <= hi) {
+                count += n;
+                continue;
+            }
+            for (int row = 0; row < n; row++) {
+                long ts = chunk.data.getLong(TIMESTAMP + row * 8);
+                if (ts > lo && ts <= hi) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public List<Transaction> byAccount(UUID accountId) {
+        PositionList positions = byAccount.get(accountId);
+        if (positions == null) {
+            return List.of();
+        }
+        long[] snapshot = positions.snapshot();
+        Chunk[] current = chunks;
+        List<Transaction> result = new ArrayList<>(snapshot.length);
+        for (int i = snapshot.length - 1; i >= 0; i--) {
+            long position = snapshot[i];
+            result.add(materialize(current[(int) (position >>> CHUNK_SHIFT)], (int) (position & (CHUNK_ROWS - 1))));
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    @Override
+    public List<Transaction> all() {
+        return recent((int) Math.min(size, Integer.MAX_VALUE - 8));
+    }
+
+    @Override
+    public List<PositionedHistory> partitions() {
+        return List.of(this);
+    }
+
+    @Override
+    public List<Transaction> range(long from, long to) {
+        Chunk[] snapshot = chunks;
+        List<Transaction> result = new ArrayList<>((int) Math.max(0, Math.min(to - from, 1 << 16)));
+        for (long position = from; position < to; position++) {
+            int c = (int) (position >>> CHUNK_SHIFT);
+            int row = (int) (position & (CHUNK_ROWS - 1));
+            if (c >= snapshot.length || row >= snapshot[c].size) {
+                break;
+            }
+            result.add(materialize(snapshot[c], row));
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    @Override
+    public long[] accountPositions(UUID accountId) {
+        PositionList positions = byAccount.get(accountId);
+        return positions == null ? new long[0] : positions.snapshot();
+    }
+
+    @Override
+    public long positionAfter(Instant instant) {
+        Chunk[] snapshot = chunks;
+        int c = firstChunkAfter(snapshot, toEpochNanos(instant));
+        if (c < snapshot.length) {
+            return (long) c << CHUNK_SHIFT;
+        }
+        return snapshot.length == 0 ? 0 : ((long) (snapshot.length - 1) << CHUNK_SHIFT) + snapshot[snapshot.length - 1].size;
+    }
+
+    private Transaction materialize(Chunk chunk, int row) {
+        ByteBuffer data = chunk.data;
+        int flags = data.get(FLAGS + row);
+        UUID from = (flags & HAS_FROM) == 0 ? null
+                : new UUID(data.getLong(FROM_HI + row * 8), data.getLong(FROM_LO + row * 8));
+        UUID to = (flags & HAS_TO) == 0 ? null
+                : new UUID(data.getLong(TO_HI + row * 8), data.getLong(TO_LO + row * 8));
+        return new Transaction(
+                new UUID(data.getLong(ID_HI + row * 8), data.getLong(ID_LO + row * 8)),
+                fromEpochNanos(data.getLong(TIMESTAMP + row * 8)),
+                LocalDate.ofEpochDay(data.getInt(BUSINESS_DAY + row * 4)),
+                TYPES[flags & TYPE_MASK],
+                from, to,
+                Money.ofMinor(data.getLong(AMOUNT + row * 8)),
+                description(chunk, data.getInt(DESCRIPTION + row * 4)));
+    }
+
+    //a dictionary id (>= 0), or -(offset + 1) of the description inlined in the chunk's text area
+    private static String description(Chunk chunk, int ref) {
+        if (ref >= 0) {
+            return chunk.owner.descriptions[ref];
+        }
+        ByteBuffer text = chunk.text;
+        int offset = -(ref + 1);
+        byte[] bytes = new byte[text.getInt(offset)];
+        text.get(offset + 4, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    //called under the append monitor
+    private int descriptionRef(Chunk chunk, String description) {
+        Integer id = descriptionIds.get(description);
+        if (id != null) {
+            return id;
+        }
+        if (descriptionIds.size() == MAX_DICTIONARY_SIZE) {
+            return -(chunk.inline(description.getBytes(StandardCharsets.UTF_8)) + 1);
+        }
+        int next = descriptionIds.size();
+        String[] current = descriptions;
+        if (next == current.length) {
+            current = Arrays.copyOf(current, current.length * 2);
+        }
+        current[next] = description;
+        descriptions = current;
+        descriptionIds.put(description, next);
+        return next;
+    }
+
+    private PositionList accountIndex(UUID accountId) {
+        return byAccount.computeIfAbsent(accountId, id -> new PositionList());
+    }
+
+    //index of the first chunk whose ceiling is after `lo`; every earlier chunk is entirely <= lo
+    private static int firstChunkAfter(Chunk[] snapshot, long lo) {
+        int low = 0;
+        int high = snapshot.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (snapshot[mid].ceiling > lo) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return low;
+    }
+
+    private static long toEpochNanos(Instant instant) {
+        return Math.addExact(Math.multiplyExact(instant.getEpochSecond(), 1_000_000_000L), instant.getNano());
+    }
+
+    private static Instant fromEpochNanos(long nanos) {
+        return Instant.ofEpochSecond(Math.floorDiv(nanos, 1_000_000_000L), Math.floorMod(nanos, 1_000_000_000L));
+    }
+
+    private static final class Chunk {
+        final OffHeapTransactionStore owner;
+        final ByteBuffer data = ByteBuffer.allocateDirect(CHUNK_BYTES).order(ByteOrder.nativeOrder());
+        volatile ByteBuffer text; //inlined descriptions, allocated on first use; replaced (never changed) when it grows
+        private int textSize; //written under the append monitor
+        volatile long min = Long.MAX_VALUE;
+        volatile long max = Long.MIN_VALUE;
+        volatile long ceiling;
+        volatile int size;
+
+        Chunk(OffHeapTransactionStore owner, long previousCeiling) {
+            this.owner = owner;
+            this.ceiling = previousCeiling;
+        }
+
+        //appends a length-prefixed description to the text area and returns its offset; called under the append
+        //monitor, before the row that refers to it is published
+        int inline(byte[] bytes) {
+            int needed = Math.addExact(textSize, 4 + bytes.length);
+            ByteBuffer current = text;
+            if (current == null || needed > current.capacity()) {
+                int capacity = Math.max(INITIAL_TEXT_BYTES, current == null ? 0 : current.capacity());
+                while (capacity < needed) {
+                    capacity = capacity > Integer.MAX_VALUE / 2 ? Integer.MAX_VALUE - 8 : capacity * 2;
+                }
+                ByteBuffer grown = ByteBuffer.allocateDirect(capacity).order(ByteOrder.nativeOrder());
+                if (current != null) {
+                    grown.put(0, current, 0, textSize);
+                }
+                current = grown;
+            }
+            int offset = textSize;
+            current.putInt(offset, bytes.length);
+            current.put(offset + 4, bytes);
+            textSize = needed;
+            text = current;
+            return offset;
+        }
+
+        //bounds widen before the row is published
+        void widen(long ts) {
+            if (ts < min) {
+                min = ts;
+            }
+            if (ts > max) {
+                max = ts;
+            }
+            if (ts > ceiling) {
+                ceiling = ts;
+            }
+        }
+    }
+
+    private static final class PositionList {
+        private long[] positions = new long[8];
+        private int size;
+
+        synchronized void add(long position) {
+            if (size == positions.length) {
+                positions = Arrays.copyOf(positions, size * 2);
+            }
+            positions[size++] = position;
+        }
+
+        synchronized long[] snapshot() {
+            return Arrays.copyOf(positions, size);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+/*
+Splittable walk over store positions [from, to), for parallel passes over transaction history
+    - splits by halving the position range, so every piece is sized exactly and pieces stay in order
+    - reads through PositionedHistory.range() CHUNK postings at a time, like TransactionCursor, so a
+      piece never materializes more than one chunk
+    - pinned to the store size when created: postings appended during the pass are not seen
+*/
+package com.example.bank.repository;
+
+import java.util.List;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+import com.example.bank.domain.Transaction;
+
+final class PositionSpliterator implements Spliterator<Transaction> {
+    private static final int CHUNK = 1024;
+
+    private final PositionedHistory store;
+    private long next;
+    private final long end;
+    private List<Transaction> chunk = List.of();
+    private int index;
+
+    PositionSpliterator(PositionedHistory store, long from, long end) {
+        this.store = store;
+        this.next = from;
+        this.end = end;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super Transaction> action) {
+        if (index == chunk.size()) {
+            if (next >= end) {
+                return false;
+            }
+            long to = Math.min(end, next + CHUNK);
+            chunk = store.range(next, to);
+            index = 0;
+            next = to;
+        }
+        action.accept(chunk.get(index++));
+        return true;
+    }
+
+    @Override
+    public void forEachRemaining(Consumer<? super Transaction> action) {
+        while (index < chunk.size()) {
+            action.accept(chunk.get(index++));
+        }
+        while (next < end) {
+            long to = Math.min(end, next + CHUNK);
+            for (Transaction transaction : store.range(next, to)) {
+                action.accept(transaction);
+            }
+            next = to;
+        }
+    }
+
+    //only splits between chunks it has not started
+    @Override
+    public Spliterator<Transaction> trySplit() {
+        if (index < chunk.size() || end - next < 2 * CHUNK) {
+            return null;
+        }
+        long middle = next + (end - next) / 2;
+        Spliterator<Transaction> prefix = new PositionSpliterator(store, next, middle);
+        next = middle;
+        return prefix;
+    }
+
+    @Override
+    public long estimateSize() {
+        return end - next + (chunk.size() - index);
+    }
+
+    @Override
+    public int characteristics() {
+        return ORDERED | SIZED | SUBSIZED | NONNULL | IMMUTABLE;
+    }
+}
@@ -0,0 +1,32 @@
+/*
+Posting history addressed by position: each posting's index in append order, starting at 0
+    - positions only ever grow, and timestamps follow them: every posting before positionAfter(t)
+      is not after t
+    - TransactionCursor and PositionSpliterator walk a history CHUNK positions at a time through range()
+    - a history with a per-account index of positions hands it out through accountPositions(), so
+      account-filtered cursors read only that account's postings
+A TransactionStore exposes its history as one or more of these (see TransactionStore.partitions()).
+*/
+package com.example.bank.repository;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+import com.example.bank.domain.Transaction;
+
+public interface PositionedHistory {
+    //one past the last position
+    long size();
+
+    //postings at positions [from, to), oldest first
+    List<Transaction> range(long from, long to);
+
+    //position of the first posting that can be after `instant`; every earlier posting is not after it
+    long positionAfter(Instant instant);
+
+    //positions of the postings touching the account (either leg), ascending, or null if there is no such index
+    default long[] accountPositions(UUID accountId) {
+        return null;
+    }
+}
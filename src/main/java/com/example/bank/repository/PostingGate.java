@@ -0,0 +1,197 @@
+/*
+Global posting epoch for consistent multi-account reads
+    - every balance-changing operation enters before touching a balance and exits after its last one;
+      entries and exits are counted in LongAdders, so writers never contend on a shared word
+    - a reader reads `completed`, then `begun`; equal counts mean nothing is in flight. It then runs its
+      view and re-reads `begun`: if that is still unchanged, no posting started or finished in between,
+      so the view is a point-in-time cut. This is the optimistic path, and it never blocks writers;
+      between attempts the reader backs off, so short gaps between postings get a chance to line up
+    - after OPTIMISTIC_ATTEMPTS failed validations the reader raises a fence: new writers back out and
+      wait while in-flight ones drain. The drain is bounded by MAX_DRAIN_NANOS; a fence that does not
+      drain in time is lowered again and retried after a pause, so writers are normally held for no
+      longer than one bounded drain plus the view itself
+    - after MAX_ABANDONED_FENCES such retries the fence stays up until the in-flight postings finish:
+      postings that keep overlapping cannot starve the reader, at the cost of holding new writers for
+      the longest posting in flight
+    - tryEnter() waits at a raised fence only until the caller's deadline
+    - exclusive() runs an action behind the same fence directly, e.g. closing a business day
+    - every fence is timed; stats() reports how many reads were fenced and for how long writers were held
+Views read live state, so under constant load the fence is what makes the cut; keep fenced views short.
+Operations must not enter while already inside, and must enter before taking account locks or hopping
+to a shard thread, so a writer waiting at the fence never holds anything a drained writer needs.
+*/
+package com.example.bank.repository;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+final class PostingGate {
+    private static final int OPTIMISTIC_ATTEMPTS = 8;
+    private static final long MAX_DRAIN_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final int MAX_ABANDONED_FENCES = 8;
+
+    private final LongAdder begun = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final Object barrierLock = new Object();
+    private volatile boolean barrier;
+
+    private final LongAdder optimisticReads = new LongAdder();
+    private final LongAdder fences = new LongAdder(); //including abandoned ones
+    private final LongAdder abandonedFences = new LongAdder();
+    private final LongAdder fencedNanos = new LongAdder();
+    private volatile long longestFenceNanos; //written only by the fencing reader, under barrierLock
+
+    void enter() {
+        while (true) {
+            begun.increment();
+            if (!barrier) {
+                return;
+            }
+            completed.increment(); //back out; the reader may already be waiting for the counts to meet
+            awaitBarrier();
+        }
+    }
+
+    //like enter, but gives up once `deadline` (System.nanoTime) passes while a fence is up; false if it did not enter
+    boolean tryEnter(long deadline) {
+        while (true) {
+            begun.increment();
+            if (!barrier) {
+                return true;
+            }
+            completed.increment();
+            if (!awaitBarrier(deadline)) {
+                return false;
+            }
+        }
+    }
+
+    void exit() {
+        completed.increment();
+    }
+
+    <T> T read(Supplier<T> view) {
+        for (int attempt = 0; attempt < OPTIMISTIC_ATTEMPTS; attempt++) {
+            long epoch = completed.sum();
+            if (begun.sum() == epoch) {
+                T result = view.get();
+                if (begun.sum() == epoch) {
+                    optimisticReads.increment();
+                    return result;
+                }
+            }
+            backOff(attempt);
+        }
+        return exclusive(view);
+    }
+
+    //runs `action` with no posting in flight and new ones held off (the fence), e.g. a read that could not
+    //validate, or a state change no posting may straddle; the last of MAX_ABANDONED_FENCES + 1 fences waits out
+    //the drain however long it takes
+    <T> T exclusive(Supplier<T> action) {
+        for (int fence = 0; ; fence++) {
+            boolean last = fence == MAX_ABANDONED_FENCES;
+            synchronized (barrierLock) { //one fenced reader at a time
+                barrier = true;
+                long raised = System.nanoTime();
+                try {
+                    if (last ? awaitDrain() : awaitDrain(raised + MAX_DRAIN_NANOS)) {
+                        T result = action.get();
+                        recordFence(System.nanoTime() - raised);
+                        return result;
+                    }
+                    abandonedFences.increment(); //a posting is taking long; let the others through meanwhile
+                    recordFence(System.nanoTime() - raised);
+                } finally {
+                    barrier = false;
+                    barrierLock.notifyAll();
+                }
+            }
+            backOff(fence);
+        }
+    }
+
+    ConsistentReadStats stats() {
+        return new ConsistentReadStats(optimisticReads.sum(), fences.sum() - abandonedFences.sum(), abandonedFences.sum(),
+                                       Duration.ofNanos(fencedNanos.sum()), Duration.ofNanos(longestFenceNanos));
+    }
+
+    //completed first: with both counters monotonic, equal sums mean no posting was in flight in between
+    private boolean drained() {
+        long done = completed.sum();
+        return begun.sum() == done;
+    }
+
+    private boolean awaitDrain(long deadline) {
+        while (!drained()) {
+            if (System.nanoTime() - deadline > 0) {
+                return false;
+            }
+            Thread.yield();
+        }
+        return true;
+    }
+
+    //no deadline: the fence holds new postings off, and those in flight never wait on the fence, so they finish
+    private boolean awaitDrain() {
+        for (int attempt = 0; !drained(); attempt++) {
+            if (attempt < 1_000) {
+                Thread.yield();
+            } else {
+                LockSupport.parkNanos(MAX_DRAIN_NANOS / 10);
+            }
+        }
+        return true;
+    }
+
+    private void recordFence(long nanos) {
+        fences.increment();
+        fencedNanos.add(nanos);
+        if (nanos > longestFenceNanos) {
+            longestFenceNanos = nanos;
+        }
+    }
+
+    //spins first, then parks for a growing few microseconds
+    private static void backOff(int attempt) {
+        if (attempt < 2) {
+            Thread.onSpinWait();
+        } else {
+            LockSupport.parkNanos(1_000L << Math.min(attempt, 10));
+        }
+    }
+
+    private boolean awaitBarrier(long deadline) {
+        synchronized (barrierLock) {
+            while (barrier) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                try {
+                    TimeUnit.NANOSECONDS.timedWait(barrierLock, remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted waiting for a consistent read to finish", e);
+                }
+            }
+            return true;
+        }
+    }
+
+    private void awaitBarrier() {
+        synchronized (barrierLock) {
+            while (barrier) {
+                try {
+                    barrierLock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted waiting for a consistent read to finish", e);
+                }
+            }
+        }
+    }
+}
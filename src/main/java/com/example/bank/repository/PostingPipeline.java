@@ -0,0 +1,269 @@
+/*
+Sequenced posting pipeline, an alternative to shards for running every balance change on one thread
+    - callers publish commands into a preallocated ring: claim a sequence, fill its slot, mark it published
+    - one business-logic thread applies the commands strictly in sequence; it is the only writer of
+      balances, so commands need no locks and a read it runs (BankRepository.readConsistent) is a
+      point-in-time cut for free
+    - a completion thread follows the business thread in batches: it waits once for the journal to
+      make everything applied so far durable, then completes the batch's futures and frees their slots,
+      so the business thread never sits on an fsync
+    - both threads spin briefly, then park; publishers only unpark a thread that said it is parking
+    - a command already running on the business thread runs inline instead of queueing behind itself
+    - a full ring makes publishers wait for the completion thread (backpressure)
+    - tryCall bounds the wait for a command to be applied: one not yet started at the deadline is
+      abandoned and never runs; one already applied is waited for (the ring-full wait is not bounded)
+*/
+package com.example.bank.repository;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+public class PostingPipeline implements AutoCloseable {
+    private static final int SPINS = 200;
+    private static final long PARK_NANOS = 100_000;
+
+    private final Slot[] ring;
+    private final int mask;
+    private final AtomicLong claimed = new AtomicLong(-1); //last sequence handed to a publisher
+    private volatile long applied = -1;                    //last sequence the business thread ran
+    private volatile long completed = -1;                  //last sequence whose slot is free again
+
+    private volatile Runnable durabilityBarrier;
+    private volatile Thread business;
+    private volatile Thread completion;
+    private volatile boolean businessParking;
+    private volatile boolean completionParking;
+    private volatile boolean closed;
+    private volatile boolean stopped;
+
+    public PostingPipeline(int capacity) {
+        if (capacity < 2 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Ring capacity must be a power of two of at least 2");
+        }
+        ring = new Slot[capacity];
+        for (int i = 0; i < capacity; i++) {
+            ring[i] = new Slot();
+        }
+        mask = capacity - 1;
+    }
+
+    public PostingPipeline() {
+        this(1 << 14);
+    }
+
+    public int capacity() {
+        return ring.length;
+    }
+
+    //starts the stages; the barrier runs on the completion thread before each batch's futures complete
+    synchronized void bind(Runnable durabilityBarrier) {
+        if (this.durabilityBarrier != null) {
+            throw new IllegalStateException("Posting pipeline is already bound to a repository");
+        }
+        this.durabilityBarrier = durabilityBarrier;
+        business = new Thread(this::runBusinessLogic, "posting-business");
+        completion = new Thread(this::runCompletion, "posting-completion");
+        business.setDaemon(true);
+        completion.setDaemon(true);
+        business.start();
+        completion.start();
+    }
+
+    //publishes `command`; the future completes with its result once it is applied and durable
+    public <T> CompletableFuture<T> submit(Supplier<T> command) {
+        if (durabilityBarrier == null) {
+            throw new IllegalStateException("Posting pipeline is not bound to a repository");
+        }
+        CompletableFuture<T> future = new CompletableFuture<>();
+        long seq = claimed.incrementAndGet();
+        //a closed pipeline still fills the sequence it handed out, so the stages never wait on a hole
+        boolean rejected = closed;
+        Slot slot = ring[(int) (seq & mask)];
+        long wrap = seq - ring.length;
+        for (int spins = 0; completed < wrap; spins++) {
+            if (stopped) {
+                throw new IllegalStateException("Posting pipeline is closed");
+            }
+            backOff(spins);
+        }
+        slot.command = rejected ? null : command;
+        slot.future = rejected ? null : future;
+        slot.published = seq; //volatile write publishes the fields above
+        if (businessParking) {
+            LockSupport.unpark(business);
+        }
+        if (rejected) {
+            throw new IllegalStateException("Posting pipeline is closed");
+        }
+        return future;
+    }
+
+    //runs `command` through the pipeline and returns its result; exceptions propagate unchanged
+    public <T> T call(Supplier<T> command) {
+        if (Thread.currentThread() == business) {
+            return command.get();
+        }
+        return await(submit(command));
+    }
+
+    //like call, but returns null without running `command` if it has not started by `deadline` (System.nanoTime)
+    public <T> T tryCall(Supplier<T> command, long deadline) {
+        if (Thread.currentThread() == business) {
+            return command.get();
+        }
+        DeadlineTask<T> guarded = new DeadlineTask<>(command);
+        CompletableFuture<T> result = submit(guarded);
+        try {
+            result.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            if (guarded.abandon()) {
+                return null;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt(); //reported by await
+        } catch (ExecutionException e) {
+            //reported by await
+        }
+        return await(result);
+    }
+
+    private static <T> T await(CompletableFuture<T> result) {
+        try {
+            return result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted waiting for the posting pipeline", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            if (e.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw new IllegalStateException("Posting command failed", e.getCause());
+        }
+    }
+
+    //lets every published command finish, then stops both stages
+    @Override
+    public void close() {
+        closed = true;
+        if (durabilityBarrier == null) {
+            return;
+        }
+        for (int spins = 0; completed < claimed.get(); spins++) {
+            backOff(spins);
+        }
+        stopped = true;
+        LockSupport.unpark(business);
+        LockSupport.unpark(completion);
+        try {
+            business.join();
+            completion.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void runBusinessLogic() {
+        long next = 0;
+        while (true) {
+            Slot slot = ring[(int) (next & mask)];
+            for (int spins = 0; slot.published != next; spins++) {
+                if (stopped) {
+                    return;
+                }
+                if (spins < SPINS) {
+                    Thread.onSpinWait();
+                } else {
+                    businessParking = true;
+                    if (slot.published != next) {
+                        LockSupport.parkNanos(this, PARK_NANOS);
+                    }
+                    businessParking = false;
+                }
+            }
+            if (slot.command != null) {
+                try {
+                    slot.result = slot.command.get();
+                } catch (RuntimeException | Error e) {
+                    slot.failure = e;
+                }
+            }
+            applied = next++;
+            if (completionParking) {
+                LockSupport.unpark(completion);
+            }
+        }
+    }
+
+    private void runCompletion() {
+        while (true) {
+            long from = completed + 1;
+            for (int spins = 0; applied < from; spins++) {
+                if (stopped) {
+                    return;
+                }
+                if (spins < SPINS) {
+                    Thread.onSpinWait();
+                } else {
+                    completionParking = true;
+                    if (applied < from) {
+                        LockSupport.parkNanos(this, PARK_NANOS);
+                    }
+                    completionParking = false;
+                }
+            }
+            long to = applied;
+            Throwable barrierFailure = null;
+            try {
+                durabilityBarrier.run(); //one durability wait for the whole batch
+            } catch (RuntimeException | Error e) {
+                barrierFailure = e;
+            }
+            for (long seq = from; seq <= to; seq++) {
+                ring[(int) (seq & mask)].complete(barrierFailure);
+            }
+            completed = to;
+        }
+    }
+
+    private static void backOff(int spins) {
+        if (spins < SPINS) {
+            Thread.onSpinWait();
+        } else {
+            LockSupport.parkNanos(PARK_NANOS);
+        }
+    }
+
+    private static final class Slot {
+        volatile long published = -1;
+        Supplier<?> command;
+        CompletableFuture<?> future;
+        Object result;
+        Throwable failure;
+
+        @SuppressWarnings("unchecked")
+        void complete(Throwable barrierFailure) {
+            CompletableFuture<Object> done = (CompletableFuture<Object>) future;
+            Throwable cause = failure != null ? failure : barrierFailure;
+            Object value = result;
+            command = null;
+            future = null;
+            result = null;
+            failure = null;
+            if (done != null) {
+                if (cause != null) {
+                    done.completeExceptionally(cause);
+                } else {
+                    done.complete(value);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,168 @@
+/*
+Sliding-window posting counters at per-second, per-minute and per-day resolution
+    - each resolution is a ring of time buckets indexed by the posting's timestamp (which comes from the
+      services' injected clock); a bucket holds posting counts and amounts per TransactionType, and
+      leg counts and amounts per AccountType (a transfer has two legs)
+    - a bucket is replaced, not cleared, when its slot comes round again: the first posting of a new
+      period swaps in a fresh bucket by CAS, so no increment can land in a bucket being wiped
+    - postings older than a ring's span are simply not counted at that resolution
+    - a bucket's cells are striped: each posting thread adds to one stripe, picked by thread id, and
+      stripes sit on separate cache lines, so concurrent postings in the same second do not contend
+    - a query picks the finest ring that spans the lookback and sums whole buckets (every stripe), current
+      one included: O(buckets), and exact to within one bucket of that resolution
+    - lookbacks longer than the coarsest ring are rejected; callers check covers() and count elsewhere
+*/
+package com.example.bank.repository;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import com.example.bank.domain.AccountType;
+import com.example.bank.domain.Money;
+import com.example.bank.domain.Transaction;
+import com.example.bank.domain.TransactionType;
+
+final class RateCounters {
+    private static final TransactionType[] TX_TYPES = TransactionType.values();
+    private static final AccountType[] ACCOUNT_TYPES = AccountType.values();
+
+    //cell layout: [count, amount] per transaction type, then [legs, amount] per account type
+    private static final int ACCOUNT_BASE = 2 * TX_TYPES.length;
+    private static final int CELLS = ACCOUNT_BASE + 2 * ACCOUNT_TYPES.length;
+    //one stripe per cache line or more, plus a line of padding between stripes
+    private static final int STRIDE = ((CELLS + 7) & ~7) + 8;
+    private static final int STRIPES = Math.min(16, Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2 - 1));
+
+    private final Clock clock;
+    private final Ring[] rings = { //finest first
+        new Ring(Duration.ofSeconds(1), 300),
+        new Ring(Duration.ofMinutes(1), 24 * 60),
+        new Ring(Duration.ofDays(1), 400)
+    };
+
+    RateCounters(Clock clock) {
+        this.clock = clock;
+    }
+
+    //accountTypes are the types of the debited and credited accounts, null where the posting has no such leg
+    void post(Transaction tx, AccountType fromType, AccountType toType) {
+        long millis = tx.getTimestamp().toEpochMilli();
+        long amount = tx.getAmountMoney().minorUnits();
+        int type = tx.getType().ordinal();
+        int stripe = (int) (Thread.currentThread().threadId() & (STRIPES - 1)) * STRIDE;
+        for (Ring ring : rings) {
+            AtomicLongArray cells = ring.cellsFor(millis);
+            if (cells == null) {
+                continue;
+            }
+            cells.incrementAndGet(stripe + 2 * type);
+            cells.addAndGet(stripe + 2 * type + 1, amount);
+            if (fromType != null) {
+                addLeg(cells, stripe, fromType, amount);
+            }
+            if (toType != null) {
+                addLeg(cells, stripe, toType, amount);
+            }
+        }
+    }
+
+    boolean covers(Duration lookback) {
+        return rings[rings.length - 1].covers(lookback);
+    }
+
+    TransactionRates window(Duration lookback) {
+        if (lookback == null || lookback.isNegative() || lookback.isZero()) {
+            throw new IllegalArgumentException("Lookback must be positive");
+        }
+        for (Ring ring : rings) {
+            if (ring.covers(lookback)) {
+                return ring.sum(clock.instant(), lookback);
+            }
+        }
+        throw new IllegalArgumentException("Lookback is longer than the counters keep: " + lookback);
+    }
+
+    private static void addLeg(AtomicLongArray cells, int stripe, AccountType accountType, long amount) {
+        int cell = stripe + ACCOUNT_BASE + 2 * accountType.ordinal();
+        cells.incrementAndGet(cell);
+        cells.addAndGet(cell + 1, amount);
+    }
+
+    private record Bucket(long period, AtomicLongArray cells) {}
+
+    private static final class Ring {
+        final long periodMillis;
+        final AtomicReferenceArray<Bucket> buckets;
+
+        Ring(Duration period, int size) {
+            this.periodMillis = period.toMillis();
+            this.buckets = new AtomicReferenceArray<>(size);
+        }
+
+        boolean covers(Duration lookback) {
+            return periods(lookback) <= buckets.length();
+        }
+
+        long periods(Duration lookback) {
+            return (lookback.toMillis() + periodMillis - 1) / periodMillis;
+        }
+
+        //the cells for the period holding `millis`, or null if that period has already left the ring
+        AtomicLongArray cellsFor(long millis) {
+            long period = Math.floorDiv(millis, periodMillis);
+            int slot = (int) Math.floorMod(period, (long) buckets.length());
+            while (true) {
+                Bucket current = buckets.get(slot);
+                if (current != null && current.period == period) {
+                    return current.cells;
+                }
+                if (current != null && current.period > period) {
+                    return null;
+                }
+                Bucket fresh = new Bucket(period, new AtomicLongArray(STRIPES * STRIDE));
+                if (buckets.compareAndSet(slot, current, fresh)) {
+                    return fresh.cells;
+                }
+            }
+        }
+
+        TransactionRates sum(Instant now, Duration lookback) {
+            long newest = Math.floorDiv(now.toEpochMilli(), periodMillis);
+            long oldest = newest - periods(lookback) + 1;
+            long[] totals = new long[CELLS];
+            for (int slot = 0; slot < buckets.length(); slot++) {
+                Bucket bucket = buckets.get(slot);
+                if (bucket != null && bucket.period >= oldest && bucket.period <= newest) {
+                    for (int stripe = 0; stripe < STRIPES * STRIDE; stripe += STRIDE) {
+                        for (int cell = 0; cell < CELLS; cell++) {
+                            totals[cell] += bucket.cells.get(stripe + cell);
+                        }
+                    }
+                }
+            }
+            Map<TransactionType, Long> countByType = new EnumMap<>(TransactionType.class);
+            Map<TransactionType, Money> amountByType = new EnumMap<>(TransactionType.class);
+            long count = 0;
+            long amount = 0;
+            for (TransactionType type : TX_TYPES) {
+                countByType.put(type, totals[2 * type.ordinal()]);
+                amountByType.put(type, Money.ofMinor(totals[2 * type.ordinal() + 1]));
+                count += totals[2 * type.ordinal()];
+                amount = Money.add(amount, totals[2 * type.ordinal() + 1]);
+            }
+            Map<AccountType, Long> legsByAccountType = new EnumMap<>(AccountType.class);
+            Map<AccountType, Money> amountByAccountType = new EnumMap<>(AccountType.class);
+            for (AccountType type : ACCOUNT_TYPES) {
+                legsByAccountType.put(type, totals[ACCOUNT_BASE + 2 * type.ordinal()]);
+                amountByAccountType.put(type, Money.ofMinor(totals[ACCOUNT_BASE + 2 * type.ordinal() + 1]));
+            }
+            return new TransactionRates(Duration.ofMillis((newest - oldest + 1) * periodMillis), count, Money.ofMinor(amount),
+                                        countByType, amountByType, legsByAccountType, amountByAccountType);
+        }
+    }
+}
@@ -0,0 +1,6 @@
+package com.example.bank.repository;
+
+public enum ScanDirection {
+    OLDEST_FIRST, //append order
+    NEWEST_FIRST  //reverse append order, like the list queries
+}
@@ -0,0 +1,140 @@
+/*
+Routes work to account shards
+    - accounts are spread over N shards by a mixed hash of their id
+    - each shard is owned by one writer thread; every mutation of an account runs on its shard's
+      thread, so writers of different shards never contend and writers of one shard never race
+    - a task already running on the target shard's thread runs inline instead of queueing behind itself
+    - callers block for the result, but durability waits happen after the call returns so a shard
+      thread never sits on an fsync
+    - tryCall bounds the wait for a task to start: one still queued at the deadline is abandoned and
+      never runs; one already running is waited for
+*/
+package com.example.bank.repository;
+
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+public class ShardRouter implements AutoCloseable {
+    private final Shard[] shards;
+
+    public ShardRouter(int shardCount) {
+        if (shardCount <= 0) {
+            throw new IllegalArgumentException("Shard count must be positive");
+        }
+        shards = new Shard[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new Shard(i);
+        }
+    }
+
+    //one shard per available core
+    public ShardRouter() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public int shardCount() {
+        return shards.length;
+    }
+
+    public int shardOf(UUID accountId) {
+        long h = accountId.getMostSignificantBits() ^ accountId.getLeastSignificantBits();
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL; //spread random and sequential ids alike
+        h ^= h >>> 33;
+        return (int) Math.floorMod(h, (long) shards.length);
+    }
+
+    //runs `task` on the thread owning accountId's shard and returns its result; exceptions propagate unchanged
+    public <T> T call(UUID accountId, Supplier<T> task) {
+        Shard shard = shards[shardOf(accountId)];
+        if (Thread.currentThread() == shard.owner) {
+            return task.get();
+        }
+        return await(shard, submit(shard, task));
+    }
+
+    //like call, but returns null without running `task` if it has not started by `deadline` (System.nanoTime)
+    public <T> T tryCall(UUID accountId, Supplier<T> task, long deadline) {
+        Shard shard = shards[shardOf(accountId)];
+        if (Thread.currentThread() == shard.owner) {
+            return task.get();
+        }
+        DeadlineTask<T> guarded = new DeadlineTask<>(task);
+        CompletableFuture<T> result = submit(shard, guarded);
+        try {
+            result.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            if (guarded.abandon()) {
+                return null;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt(); //reported by await
+        } catch (ExecutionException e) {
+            //reported by await
+        }
+        return await(shard, result);
+    }
+
+    private static <T> CompletableFuture<T> submit(Shard shard, Supplier<T> task) {
+        try {
+            return CompletableFuture.supplyAsync(task, shard.executor);
+        } catch (RejectedExecutionException e) {
+            throw new IllegalStateException("Shard router is closed", e);
+        }
+    }
+
+    private static <T> T await(Shard shard, CompletableFuture<T> result) {
+        try {
+            return result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted waiting for shard " + shard.index, e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            if (e.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw new IllegalStateException("Shard task failed", e.getCause());
+        }
+    }
+
+    //lets queued work finish, then stops the shard threads
+    @Override
+    public void close() {
+        for (Shard shard : shards) {
+            shard.executor.shutdown();
+        }
+        try {
+            for (Shard shard : shards) {
+                shard.executor.awaitTermination(1, TimeUnit.MINUTES);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static final class Shard {
+        final int index;
+        final ExecutorService executor;
+        volatile Thread owner;
+
+        Shard(int index) {
+            this.index = index;
+            this.executor = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "shard-" + index);
+                thread.setDaemon(true);
+                owner = thread;
+                return thread;
+            });
+        }
+    }
+}
@@ -0,0 +1,117 @@
+/*
+Transaction store split along ShardRouter's shards
+    - a posting is logged once, in the shard of its debited account (credited account for deposits),
+      so each shard's log has a single writer: that shard's thread
+    - each shard indexes the accounts it owns; a cross-shard transfer's credit leg is indexed by the
+      target shard without logging the posting twice
+    - reads fan out over the shards and merge newest first by timestamp; counts are summed
+    - positions are per shard: partitions() hands out the shard logs, which cursors merge by timestamp
+*/
+package com.example.bank.repository;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+
+import com.example.bank.domain.Transaction;
+
+public class ShardedTransactionStore implements TransactionStore {
+    private static final Comparator<Transaction> NEWEST_FIRST = Comparator.comparing(Transaction::getTimestamp).reversed();
+
+    private final ShardRouter router;
+    private final TransactionLog[] logs;
+    private final List<Map<UUID, Deque<Transaction>>> indexes = new ArrayList<>(); //per shard, accounts it owns
+
+    public ShardedTransactionStore(ShardRouter router) {
+        this.router = Objects.requireNonNull(router, "Shard router cannot be null");
+        this.logs = new TransactionLog[router.shardCount()];
+        for (int i = 0; i < logs.length; i++) {
+            logs[i] = new TransactionLog();
+            indexes.add(new ConcurrentHashMap<>());
+        }
+    }
+
+    @Override
+    public void append(Transaction transaction) {
+        UUID from = transaction.getFromAccountId();
+        UUID to = transaction.getToAccountId();
+        logs[router.shardOf(from != null ? from : to)].append(transaction);
+        if (from != null) {
+            accountIndex(from).addFirst(transaction);
+        }
+        if (to != null && !to.equals(from)) {
+            accountIndex(to).addFirst(transaction);
+        }
+    }
+
+    @Override
+    public long size() {
+        long size = 0;
+        for (TransactionLog log : logs) {
+            size += log.size();
+        }
+        return size;
+    }
+
+    @Override
+    public List<Transaction> recent(int n) {
+        List<Transaction> merged = new ArrayList<>();
+        for (TransactionLog log : logs) {
+            merged.addAll(log.recent(n));
+        }
+        merged.sort(NEWEST_FIRST);
+        return List.copyOf(merged.subList(0, Math.min(n, merged.size())));
+    }
+
+    @Override
+    public List<Transaction> between(Instant from, Instant to) {
+        List<Transaction> merged = new ArrayList<>();
+        for (TransactionLog log : logs) {
+            merged.addAll(log.between(from, to));
+        }
+        merged.sort(NEWEST_FIRST);
+        return List.copyOf(merged);
+    }
+
+    @Override
+    public long countBetween(Instant from, Instant to) {
+        long count = 0;
+        for (TransactionLog log : logs) {
+            count += log.countBetween(from, to);
+        }
+        return count;
+    }
+
+    @Override
+    public List<Transaction> byAccount(UUID accountId) {
+        Deque<Transaction> history = indexes.get(router.shardOf(accountId)).get(accountId);
+        return history == null ? List.of() : List.copyOf(history);
+    }
+
+    @Override
+    public List<Transaction> all() {
+        List<Transaction> merged = new ArrayList<>();
+        for (TransactionLog log : logs) {
+            merged.addAll(log.all());
+        }
+        merged.sort(NEWEST_FIRST);
+        return List.copyOf(merged);
+    }
+
+    //shard order; each log holds only the postings logged on its shard
+    @Override
+    public List<PositionedHistory> partitions() {
+        return List.of(logs);
+    }
+
+    private Deque<Transaction> accountIndex(UUID accountId) {
+        return indexes.get(router.shardOf(accountId)).computeIfAbsent(accountId, id -> new ConcurrentLinkedDeque<>());
+    }
+}
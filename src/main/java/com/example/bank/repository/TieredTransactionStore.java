@@ -0,0 +1,548 @@
+/*
+Two-tier transaction store: a bounded hot window in memory, older postings in compressed files
+    - new postings go to an in-memory TransactionLog plus per-account index, exactly like the heap store
+    - once the hot log holds more than hotWindow postings, a background roller writes the oldest
+      full segments into one immutable cold segment file and drops them from memory
+    - cold files are delta-encoded (timestamps, business dates, amounts), dictionary-encoded
+      (account ids, descriptions) and deflated
+    - in memory each cold segment keeps only its bounds, row count and an AccountFilter sized to the
+      file's distinct accounts, so queries skip whole files by time range or account
+    - the last few decoded files are cached; coldSegmentReads() counts the files decoded from disk
+    - queries read both tiers transparently, newest first; the tier swap is atomic with respect to readers
+    - the per-account hot index is only changed inside ConcurrentHashMap.compute, so an append and the
+      roller's eviction of the same account never race on an emptied deque
+    - a roll that fails leaves its segments hot and is reported by rollFailure(); the roller tries again
+      once another file's worth of segments has piled up
+Cold files are a memory offload, not a durability mechanism: the journal remains the source of truth
+and the directory is cleared on startup.
+*/
+package com.example.bank.repository;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import com.example.bank.domain.Money;
+import com.example.bank.domain.Transaction;
+import com.example.bank.domain.TransactionType;
+
+public class TieredTransactionStore implements TransactionStore, PositionedHistory, AutoCloseable {
+    static final int SEGMENTS_PER_FILE = 16;
+
+    private static final int MAGIC = 0x434F4C44; //"COLD"
+    private static final int DECODED_CACHE_SIZE = 4; //files of SEGMENTS_PER_FILE full log segments each
+
+    private final Path directory;
+    private final int hotSegments;
+
+    private final TransactionLog hot = new TransactionLog();
+    private final Map<UUID, Deque<Transaction>> hotByAccount = new ConcurrentHashMap<>();
+    private final List<ColdSegment> cold = new CopyOnWriteArrayList<>(); //oldest first
+
+    //readers hold the read lock across both tiers; the roller takes the write lock only to swap a batch over
+    private final ReentrantReadWriteLock tiers = new ReentrantReadWriteLock();
+    private final ExecutorService roller = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "transaction-roller");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicBoolean rollScheduled = new AtomicBoolean();
+    private volatile int rollAt; //hot segment count past which a roll is scheduled
+    private volatile IOException rollFailure; //why the last roll failed, null once one succeeds
+    private final Map<Path, Transaction[]> decoded = new LinkedHashMap<>(DECODED_CACHE_SIZE, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Path, Transaction[]> eldest) {
+            return size() > DECODED_CACHE_SIZE;
+        }
+    };
+    private final LongAdder coldReads = new LongAdder();
+    private int nextFile;
+
+    //hotWindow is the number of recent postings kept in memory, rounded up to whole log segments
+    public TieredTransactionStore(Path directory, int hotWindow) {
+        this.directory = Objects.requireNonNull(directory, "Segment directory cannot be null");
+        if (hotWindow <= 0) {
+            throw new IllegalArgumentException("Hot window must be positive");
+        }
+        this.hotSegments = Math.max(1, (hotWindow + TransactionLog.SEGMENT_SIZE - 1) / TransactionLog.SEGMENT_SIZE);
+        this.rollAt = hotSegments + SEGMENTS_PER_FILE;
+        try {
+            Files.createDirectories(directory);
+            try (DirectoryStream<Path> stale = Files.newDirectoryStream(directory, "segment-*.cold")) {
+                for (Path file : stale) {
+                    Files.delete(file);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to prepare segment directory " + directory, e);
+        }
+    }
+
+    @Override
+    public void append(Transaction transaction) {
+        hot.append(transaction);
+        UUID from = transaction.getFromAccountId();
+        UUID to = transaction.getToAccountId();
+        if (from != null) {
+            index(from, transaction);
+        }
+        if (to != null && !to.equals(from)) {
+            index(to, transaction);
+        }
+        if (hot.segmentCount() > rollAt && rollScheduled.compareAndSet(false, true)) {
+            roller.execute(this::roll);
+        }
+    }
+
+    @Override
+    public long size() {
+        return hot.size();
+    }
+
+    @Override
+    public List<Transaction> recent(int n) {
+        tiers.readLock().lock();
+        try {
+            List<Transaction> result = new ArrayList<>(hot.recent(n));
+            for (int s = cold.size() - 1; s >= 0 && result.size() < n; s--) {
+                Transaction[] rows = decode(cold.get(s));
+                for (int i = rows.length - 1; i >= 0 && result.size() < n; i--) {
+                    result.add(rows[i]);
+                }
+            }
+            return Collections.unmodifiableList(result);
+        } finally {
+            tiers.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Transaction> between(Instant from, Instant to) {
+        tiers.readLock().lock();
+        try {
+            List<Transaction> result = new ArrayList<>(hot.between(from, to));
+            for (int s = cold.size() - 1; s >= 0; s--) {
+                ColdSegment segment = cold.get(s);
+                if (segment.overlaps(from, to)) {
+                    collect(segment, tx -> inRange(tx.getTimestamp(), from, to), result);
+                }
+            }
+            return Collections.unmodifiableList(result);
+        } finally {
+            tiers.readLock().unlock();
+        }
+    }
+
+    @Override
+    public long countBetween(Instant from, Instant to) {
+        tiers.readLock().lock();
+        try {
+            long count = hot.countBetween(from, to);
+            for (ColdSegment segment : cold) {
+                if (!segment.overlaps(from, to)) {
+                    continue;
+                }
+                if (segment.coveredBy(from, to)) {
+                    count += segment.count;
+                    continue;
+                }
+                for (Transaction tx : decode(segment)) {
+                    if (inRange(tx.getTimestamp(), from, to)) {
+                        count++;
+                    }
+                }
+            }
+            return count;
+        } finally {
+            tiers.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Transaction> byAccount(UUID accountId) {
+        tiers.readLock().lock();
+        try {
+            Deque<Transaction> recent = hotByAccount.get(accountId);
+            List<Transaction> result = recent == null ? new ArrayList<>() : new ArrayList<>(recent);
+            for (int s = cold.size() - 1; s >= 0; s--) {
+                ColdSegment segment = cold.get(s);
+                if (segment.mayContain(accountId)) {
+                    collect(segment, tx -> accountId.equals(tx.getFromAccountId()) || accountId.equals(tx.getToAccountId()), result);
+                }
+            }
+            return Collections.unmodifiableList(result);
+        } finally {
+            tiers.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Transaction> all() {
+        return recent((int) Math.min(size(), Integer.MAX_VALUE - 8));
+    }
+
+    @Override
+    public List<PositionedHistory> partitions() {
+        return List.of(this);
+    }
+
+    @Override
+    public List<Transaction> range(long from, long to) {
+        tiers.readLock().lock();
+        try {
+            long hotStart = hot.firstPosition();
+            List<Transaction> result = new ArrayList<>((int) Math.max(0, Math.min(to - from, 1 << 16)));
+            long position = from;
+            int s = coldSegmentAt(position);
+            while (position < Math.min(to, hotStart) && s >= 0 && s < cold.size()) {
+                ColdSegment segment = cold.get(s);
+                Transaction[] rows = decode(segment);
+                int i = (int) (position - segment.firstPosition);
+                int end = (int) Math.min(rows.length, i + (to - position));
+                for (int j = i; j < end; j++) {
+                    result.add(rows[j]);
+                }
+                position += end - i;
+                s++;
+            }
+            if (position < to) {
+                result.addAll(hot.range(Math.max(position, hotStart), to));
+            }
+            return Collections.unmodifiableList(result);
+        } finally {
+            tiers.readLock().unlock();
+        }
+    }
+
+    @Override
+    public long positionAfter(Instant instant) {
+        tiers.readLock().lock();
+        try {
+            for (ColdSegment segment : cold) {
+                if (segment.max.isAfter(instant)) {
+                    return segment.firstPosition;
+                }
+            }
+            return hot.positionAfter(instant);
+        } finally {
+            tiers.readLock().unlock();
+        }
+    }
+
+    //cold files decoded from disk so far (decoded-cache misses)
+    public long coldSegmentReads() {
+        return coldReads.sum();
+    }
+
+    //why the last roll to disk failed, or null if it succeeded; the postings it could not roll are still hot
+    public IOException rollFailure() {
+        return rollFailure;
+    }
+
+    @Override
+    public void close() {
+        roller.shutdown();
+        try {
+            roller.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    //runs on the roller thread only
+    private void roll() {
+        try {
+            while (hot.segmentCount() > hotSegments + SEGMENTS_PER_FILE) {
+                long firstPosition = hot.firstPosition();
+                Transaction[] batch = hot.oldest(SEGMENTS_PER_FILE);
+                Path file = directory.resolve("segment-" + (nextFile++) + ".cold");
+                ColdSegment segment;
+                try {
+                    segment = ColdSegment.write(file, firstPosition, batch);
+                } catch (IOException e) {
+                    Files.deleteIfExists(file);
+                    throw e;
+                }
+
+                tiers.writeLock().lock();
+                try {
+                    cold.add(segment);
+                    hot.dropOldest(SEGMENTS_PER_FILE);
+                    for (Transaction tx : batch) {
+                        evict(tx.getFromAccountId(), tx);
+                        evict(tx.getToAccountId(), tx);
+                    }
+                } finally {
+                    tiers.writeLock().unlock();
+                }
+            }
+            rollFailure = null;
+            rollAt = hotSegments + SEGMENTS_PER_FILE;
+        } catch (IOException | RuntimeException e) {
+            //the batch was never swapped out, so it stays readable in the hot tier; retry after another file's worth
+            rollFailure = e instanceof IOException io ? io : new IOException("Failed to roll transactions into a cold segment", e);
+            rollAt = hot.segmentCount() + SEGMENTS_PER_FILE;
+        } finally {
+            rollScheduled.set(false);
+        }
+    }
+
+    //index of the cold segment holding `position`, or -1 if it is before the first one
+    private int coldSegmentAt(long position) {
+        int lo = 0;
+        int hi = cold.size() - 1;
+        int found = -1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (cold.get(mid).firstPosition <= position) {
+                found = mid;
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return found;
+    }
+
+    //removal and the emptiness check run in one compute, which excludes index() for the same account
+    private void evict(UUID accountId, Transaction tx) {
+        if (accountId == null) {
+            return;
+        }
+        hotByAccount.computeIfPresent(accountId, (id, history) -> {
+            history.removeLastOccurrence(tx); //oldest entries sit at the tail, so this is usually O(1)
+            return history.isEmpty() ? null : history;
+        });
+    }
+
+    private void index(UUID accountId, Transaction tx) {
+        hotByAccount.compute(accountId, (id, history) -> {
+            Deque<Transaction> recent = history == null ? new ConcurrentLinkedDeque<>() : history;
+            recent.addFirst(tx);
+            return recent;
+        });
+    }
+
+    private void collect(ColdSegment segment, Predicate<Transaction> filter, List<Transaction> result) {
+        Transaction[] rows = decode(segment);
+        for (int i = rows.length - 1; i >= 0; i--) {
+            if (filter.test(rows[i])) {
+                result.add(rows[i]);
+            }
+        }
+    }
+
+    private Transaction[] decode(ColdSegment segment) {
+        synchronized (decoded) {
+            Transaction[] rows = decoded.get(segment.file);
+            if (rows != null) {
+                return rows;
+            }
+        }
+        Transaction[] rows = segment.read();
+        coldReads.increment();
+        synchronized (decoded) {
+            decoded.put(segment.file, rows);
+        }
+        return rows;
+    }
+
+    private static boolean inRange(Instant ts, Instant from, Instant to) {
+        return (from == null || ts.isAfter(from)) && (to == null || !ts.isAfter(to));
+    }
+
+    private static final class ColdSegment {
+        private static final TransactionType[] TYPES = TransactionType.values();
+
+        final Path file;
+        final long firstPosition;
+        final int count;
+        final Instant min;
+        final Instant max;
+        private final AccountFilter accounts; //account ids present in the file
+
+        private ColdSegment(Path file, long firstPosition, int count, Instant min, Instant max, AccountFilter accounts) {
+            this.file = file;
+            this.firstPosition = firstPosition;
+            this.count = count;
+            this.min = min;
+            this.max = max;
+            this.accounts = accounts;
+        }
+
+        boolean overlaps(Instant from, Instant to) {
+            return (from == null || max.isAfter(from)) && (to == null || !min.isAfter(to));
+        }
+
+        boolean coveredBy(Instant from, Instant to) {
+            return (from == null || min.isAfter(from)) && (to == null || !max.isAfter(to));
+        }
+
+        boolean mayContain(UUID accountId) {
+            return accounts.mayContain(accountId);
+        }
+
+        static ColdSegment write(Path file, long firstPosition, Transaction[] rows) throws IOException {
+            Instant min = rows[0].getTimestamp();
+            Instant max = min;
+            Map<UUID, Integer> accountIds = new LinkedHashMap<>();
+            Map<String, Integer> descriptionIds = new LinkedHashMap<>();
+            for (Transaction tx : rows) {
+                min = tx.getTimestamp().isBefore(min) ? tx.getTimestamp() : min;
+                max = tx.getTimestamp().isAfter(max) ? tx.getTimestamp() : max;
+                for (UUID leg : new UUID[] {tx.getFromAccountId(), tx.getToAccountId()}) {
+                    if (leg != null) {
+                        accountIds.putIfAbsent(leg, accountIds.size());
+                    }
+                }
+                descriptionIds.putIfAbsent(tx.getDescription(), descriptionIds.size());
+            }
+            AccountFilter filter = AccountFilter.of(accountIds.keySet());
+
+            Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 1 << 16))) {
+                //uncompressed header carries the segment metadata
+                out.writeInt(MAGIC);
+                out.writeInt(rows.length);
+                JournalCodec.writeInstant(out, min);
+                JournalCodec.writeInstant(out, max);
+                out.flush();
+
+                DeflaterOutputStream compressed = new DeflaterOutputStream(out, deflater, 1 << 16);
+                DataOutputStream body = new DataOutputStream(new BufferedOutputStream(compressed, 1 << 16));
+                writeVarLong(body, accountIds.size());
+                for (UUID id : accountIds.keySet()) {
+                    body.writeLong(id.getMostSignificantBits());
+                    body.writeLong(id.getLeastSignificantBits());
+                }
+                writeVarLong(body, descriptionIds.size());
+                for (String description : descriptionIds.keySet()) {
+                    JournalCodec.writeString(body, description);
+                }
+                long previousSecond = 0;
+                long previousDay = 0;
+                long previousAmount = 0;
+                for (Transaction tx : rows) {
+                    body.writeLong(tx.getId().getMostSignificantBits());
+                    body.writeLong(tx.getId().getLeastSignificantBits());
+                    long second = tx.getTimestamp().getEpochSecond();
+                    writeVarLong(body, zigzag(second - previousSecond));
+                    writeVarLong(body, tx.getTimestamp().getNano());
+                    previousSecond = second;
+                    long day = tx.getBusinessDate().toEpochDay();
+                    writeVarLong(body, zigzag(day - previousDay));
+                    previousDay = day;
+                    body.writeByte(tx.getType().ordinal());
+                    writeVarLong(body, tx.getFromAccountId() == null ? 0 : accountIds.get(tx.getFromAccountId()) + 1);
+                    writeVarLong(body, tx.getToAccountId() == null ? 0 : accountIds.get(tx.getToAccountId()) + 1);
+                    long amount = tx.getAmountMoney().minorUnits();
+                    writeVarLong(body, zigzag(amount - previousAmount));
+                    previousAmount = amount;
+                    writeVarLong(body, descriptionIds.get(tx.getDescription()));
+                }
+                body.flush();
+                compressed.finish();
+            } finally {
+                deflater.end();
+            }
+            return new ColdSegment(file, firstPosition, rows.length, min, max, filter);
+        }
+
+        Transaction[] read() {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+                if (in.readInt() != MAGIC) {
+                    throw new IOException("Not a cold segment: " + file);
+                }
+                int rows = in.readInt();
+                JournalCodec.readInstant(in);
+                JournalCodec.readInstant(in);
+
+                DataInputStream body = new DataInputStream(new BufferedInputStream(new InflaterInputStream(in), 1 << 16));
+                UUID[] accounts = new UUID[(int) readVarLong(body)];
+                for (int i = 0; i < accounts.length; i++) {
+                    accounts[i] = new UUID(body.readLong(), body.readLong());
+                }
+                String[] descriptions = new String[(int) readVarLong(body)];
+                for (int i = 0; i < descriptions.length; i++) {
+                    descriptions[i] = JournalCodec.readString(body);
+                }
+                Transaction[] result = new Transaction[rows];
+                long second = 0;
+                long day = 0;
+                long amount = 0;
+                for (int i = 0; i < rows; i++) {
+                    UUID id = new UUID(body.readLong(), body.readLong());
+                    second += unzigzag(readVarLong(body));
+                    Instant timestamp = Instant.ofEpochSecond(second, readVarLong(body));
+                    day += unzigzag(readVarLong(body));
+                    TransactionType type = TYPES[body.readByte()];
+                    int from = (int) readVarLong(body);
+                    int to = (int) readVarLong(body);
+                    amount += unzigzag(readVarLong(body));
+                    result[i] = new Transaction(id, timestamp, LocalDate.ofEpochDay(day), type,
+                            from == 0 ? null : accounts[from - 1], to == 0 ? null : accounts[to - 1],
+                            Money.ofMinor(amount), descriptions[(int) readVarLong(body)]);
+                }
+                return result;
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to read cold segment " + file, e);
+            }
+        }
+
+        private static long zigzag(long value) {
+            return (value << 1) ^ (value >> 63);
+        }
+
+        private static long unzigzag(long value) {
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+            while ((value & ~0x7FL) != 0) {
+                out.writeByte((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            out.writeByte((int) value);
+        }
+
+        private static long readVarLong(DataInputStream in) throws IOException {
+            long value = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = in.readByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+        }
+    }
+}
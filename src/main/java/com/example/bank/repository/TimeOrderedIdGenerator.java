@@ -0,0 +1,59 @@
+/*
+UUIDv7-style ids: a 48-bit millisecond timestamp, then a per-thread sequence, then per-thread random bits
+    - ids sort by creation time (UUID.compareTo orders by the timestamp first), so the log and
+      indexes see keys in roughly insertion order
+    - each thread keeps its own last timestamp, sequence and 62 random bits, so generating an id
+      touches no shared state and never reaches SecureRandom
+    - within a thread ids are strictly increasing: when the clock stands still or steps back the
+      sequence counts on, and when the 12-bit sequence runs out the timestamp is borrowed forward
+    - threads differ in their random bits, so two threads minting in the same millisecond cannot collide
+      unless their 62 random bits happen to match
+*/
+package com.example.bank.repository;
+
+import java.time.Clock;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+public final class TimeOrderedIdGenerator implements IdGenerator {
+    private static final long VERSION = 0x7000L;               //version nibble in the most significant half
+    private static final long VARIANT = 0x8000000000000000L;   //IETF variant bits in the least significant half
+    private static final long RANDOM_MASK = 0x3FFFFFFFFFFFFFFFL;
+    private static final int SEQUENCE_BITS = 12;
+    private static final long MAX_SEQUENCE = (1L << SEQUENCE_BITS) - 1;
+
+    private final Clock clock;
+    private final ThreadLocal<ThreadState> state = ThreadLocal.withInitial(ThreadState::new);
+
+    public TimeOrderedIdGenerator(Clock clock) {
+        this.clock = Objects.requireNonNull(clock, "Clock cannot be null");
+    }
+
+    public TimeOrderedIdGenerator() {
+        this(Clock.systemUTC());
+    }
+
+    @Override
+    public UUID nextId() {
+        ThreadState s = state.get();
+        long now = clock.millis();
+        if (now > s.millis) {
+            s.millis = now;
+            s.sequence = 0;
+        } else if (s.sequence < MAX_SEQUENCE) {
+            s.sequence++;
+        } else {
+            s.millis++; //sequence exhausted: borrow the next millisecond rather than repeat or go backwards
+            s.sequence = 0;
+        }
+        long msb = (s.millis << 16) | VERSION | s.sequence;
+        return new UUID(msb, VARIANT | s.random);
+    }
+
+    private static final class ThreadState {
+        long millis = Long.MIN_VALUE;
+        long sequence;
+        final long random = ThreadLocalRandom.current().nextLong() & RANDOM_MASK;
+    }
+}
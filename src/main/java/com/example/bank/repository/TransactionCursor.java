@@ -0,0 +1,262 @@
+/*
+Constant-memory walk over transaction history
+    - the cursor is pinned to each partition's size when it is opened; postings appended later are not
+      seen, so a scan (or a paged export resumed from a token) reads one stable snapshot
+    - a time filter's lower bound is turned into a starting position with positionAfter(), so the
+      cursor skips everything older; the rest of the filter is applied posting by posting
+    - positions are read from each partition CHUNK postings at a time, in either direction, so memory
+      stays bounded however large the range is
+    - partitions (shards) are merged k-way by (timestamp, partition, position); with one partition this
+      is simply position order
+    - tokens carry the direction, each partition's snapshot end and next position; they stay valid for
+      as long as the store keeps the positions they point at
+Account filters walk a partition's accountPositions() when it has them, reading only that account's
+postings in the pinned range at the cost of one long per posting of the account's; partitions without a
+positional account index are scanned.
+*/
+package com.example.bank.repository;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import com.example.bank.domain.Transaction;
+
+final class TransactionCursor implements Iterator<Transaction> {
+    private static final int CHUNK = 1024;
+
+    private final TransactionFilter filter;
+    private final ScanDirection direction;
+    private final Lane[] lanes;
+    private Lane pending; //lane holding the next match, once hasNext() has chosen it
+
+    private TransactionCursor(List<PositionedHistory> partitions, TransactionFilter filter, ScanDirection direction,
+                              long[] ends, long[] nexts) {
+        this.filter = filter;
+        this.direction = direction;
+        this.lanes = new Lane[partitions.size()];
+        for (int i = 0; i < lanes.length; i++) {
+            lanes[i] = new Lane(partitions.get(i), ends[i]);
+            if (nexts != null) {
+                lanes[i].resumeFrom(nexts[i]);
+            }
+        }
+    }
+
+    static TransactionCursor open(List<PositionedHistory> partitions, TransactionFilter filter, ScanDirection direction) {
+        long[] ends = new long[partitions.size()];
+        for (int i = 0; i < ends.length; i++) {
+            ends[i] = partitions.get(i).size();
+        }
+        return new TransactionCursor(partitions, filter, direction, ends, null);
+    }
+
+    static TransactionCursor resume(List<PositionedHistory> partitions, TransactionFilter filter, ScanDirection direction, String token) {
+        String[] parts;
+        try {
+            parts = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8).split(":");
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Malformed page token");
+        }
+        if (parts.length != 3 || !parts[0].equals(direction.name())) {
+            throw new IllegalArgumentException("Page token does not belong to a " + direction + " scan");
+        }
+        String[] endParts = parts[1].split(",");
+        String[] nextParts = parts[2].split(",");
+        if (endParts.length != partitions.size() || nextParts.length != partitions.size()) {
+            throw new IllegalArgumentException("Page token does not belong to this repository");
+        }
+        try {
+            long[] ends = new long[endParts.length];
+            long[] nexts = new long[nextParts.length];
+            for (int i = 0; i < ends.length; i++) {
+                ends[i] = Long.parseLong(endParts[i]);
+                nexts[i] = Long.parseLong(nextParts[i]);
+                if (ends[i] < 0 || ends[i] > partitions.get(i).size()) {
+                    throw new IllegalArgumentException("Page token does not belong to this repository");
+                }
+            }
+            return new TransactionCursor(partitions, filter, direction, ends, nexts);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Malformed page token");
+        }
+    }
+
+    //the first `pageSize` matches, plus a token that resumes after the last one
+    TransactionPage page(int pageSize) {
+        List<Transaction> items = new ArrayList<>(Math.min(pageSize, CHUNK));
+        while (items.size() < pageSize && hasNext()) {
+            items.add(next());
+        }
+        //a null token needs one more look to know the range holds nothing further
+        String token = hasNext() ? token() : null;
+        return new TransactionPage(List.copyOf(items), token);
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (pending != null) {
+            return true;
+        }
+        for (Lane lane : lanes) {
+            if (lane.hasHead() && (pending == null || comesFirst(lane, pending))) {
+                pending = lane;
+            }
+        }
+        return pending != null;
+    }
+
+    @Override
+    public Transaction next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        Transaction tx = pending.consume();
+        pending = null;
+        return tx;
+    }
+
+    //lanes are tried in partition order, so ties go to the lower partition going forward, the higher going back
+    private boolean comesFirst(Lane candidate, Lane best) {
+        int order = candidate.head.getTimestamp().compareTo(best.head.getTimestamp());
+        return direction == ScanDirection.OLDEST_FIRST ? order < 0 : order >= 0;
+    }
+
+    private String token() {
+        StringBuilder ends = new StringBuilder();
+        StringBuilder nexts = new StringBuilder();
+        for (Lane lane : lanes) {
+            if (ends.length() > 0) {
+                ends.append(',');
+                nexts.append(',');
+            }
+            ends.append(lane.snapshot);
+            nexts.append(lane.resumeAt);
+        }
+        String raw = direction.name() + ":" + ends + ":" + nexts;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    //one partition's walk: chunked reads plus the next filtered match, held until the merge takes it
+    private final class Lane {
+        private final PositionedHistory history;
+        private final long[] positions; //the account's positions in range, ascending; null when scanning
+        private final long snapshot; //one past the last position in range
+        private final long start; //first position in range, or index into positions
+        private final long end;   //one past the last position in range, or index into positions
+        private long next;        //position (or index into positions) the next chunk is read from
+        private long resumeAt;    //first position not yet handed out, in scan direction
+
+        private List<Transaction> chunk = List.of();
+        private int index;
+        private long chunkFirst;  //position (or index into positions) of the oldest posting in the chunk
+        private Transaction head;
+        private long headPosition;
+
+        Lane(PositionedHistory history, long snapshot) {
+            this.history = history;
+            this.snapshot = snapshot;
+            long first = filter.from() == null ? 0 : history.positionAfter(filter.from());
+            long[] indexed = filter.accountId() == null ? null : history.accountPositions(filter.accountId());
+            if (indexed == null) {
+                this.positions = null;
+                this.start = first;
+                this.end = snapshot;
+            } else {
+                this.positions = Arrays.copyOfRange(indexed, firstAtOrAfter(indexed, first), firstAtOrAfter(indexed, snapshot));
+                this.start = 0;
+                this.end = positions.length;
+            }
+            this.next = direction == ScanDirection.OLDEST_FIRST ? this.start : this.end - 1;
+            this.resumeAt = direction == ScanDirection.OLDEST_FIRST ? first : snapshot - 1;
+        }
+
+        void resumeFrom(long position) {
+            if (positions == null) {
+                next = position;
+            } else {
+                //the first of the account's positions still to come in scan direction
+                next = direction == ScanDirection.OLDEST_FIRST
+                        ? firstAtOrAfter(positions, position) : firstAtOrAfter(positions, position + 1) - 1;
+            }
+            resumeAt = position;
+        }
+
+        boolean hasHead() {
+            while (head == null) {
+                if (index >= chunk.size() && !fill()) {
+                    return false;
+                }
+                Transaction tx = chunk.get(index);
+                long offset = direction == ScanDirection.OLDEST_FIRST ? chunkFirst + index : chunkFirst + chunk.size() - 1 - index;
+                long position = positions == null ? offset : positions[(int) offset];
+                index++;
+                if (filter.matches(tx)) {
+                    head = tx;
+                    headPosition = position;
+                }
+            }
+            return true;
+        }
+
+        Transaction consume() {
+            Transaction tx = head;
+            resumeAt = direction == ScanDirection.OLDEST_FIRST ? headPosition + 1 : headPosition - 1;
+            head = null;
+            return tx;
+        }
+
+        private boolean fill() {
+            long from;
+            long to;
+            if (direction == ScanDirection.OLDEST_FIRST) {
+                if (next >= end) {
+                    return false;
+                }
+                from = next;
+                to = Math.min(end, next + CHUNK);
+                next = to;
+            } else {
+                if (next < start) {
+                    return false;
+                }
+                from = Math.max(start, next - CHUNK + 1);
+                to = next + 1;
+                next = from - 1;
+            }
+            List<Transaction> read = positions == null ? history.range(from, to) : read((int) from, (int) to);
+            chunk = direction == ScanDirection.OLDEST_FIRST ? read : read.reversed();
+            chunkFirst = from;
+            index = 0;
+            return !chunk.isEmpty();
+        }
+
+        //the postings at positions[from, to), oldest first; each is below the snapshot point, so already readable
+        private List<Transaction> read(int from, int to) {
+            List<Transaction> read = new ArrayList<>(to - from);
+            for (int i = from; i < to; i++) {
+                read.addAll(history.range(positions[i], positions[i] + 1));
+            }
+            return read;
+        }
+    }
+
+    //index of the first of the ascending positions that is not below `position`
+    private static int firstAtOrAfter(long[] positions, long position) {
+        int low = 0;
+        int high = positions.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (positions[mid] < position) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
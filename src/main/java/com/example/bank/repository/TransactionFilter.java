@@ -0,0 +1,41 @@
+package com.example.bank.repository;
+
+import java.time.Instant;
+import java.util.UUID;
+
+import com.example.bank.domain.Transaction;
+
+//postings touching accountId (either leg) and timestamped after `from` and not after `to`; null means unbounded
+public record TransactionFilter(UUID accountId, Instant from, Instant to) {
+
+    public TransactionFilter {
+        if (from != null && to != null && to.isBefore(from)) {
+            throw new IllegalArgumentException("Time range end cannot be before its start");
+        }
+    }
+
+    public static TransactionFilter all() {
+        return new TransactionFilter(null, null, null);
+    }
+
+    public static TransactionFilter forAccount(UUID accountId) {
+        if (accountId == null) {
+            throw new IllegalArgumentException("Account ID cannot be null");
+        }
+        return new TransactionFilter(accountId, null, null);
+    }
+
+    public TransactionFilter between(Instant from, Instant to) {
+        return new TransactionFilter(accountId, from, to);
+    }
+
+    public boolean matches(Transaction tx) {
+        if (from != null && !tx.getTimestamp().isAfter(from)) {
+            return false;
+        }
+        if (to != null && tx.getTimestamp().isAfter(to)) {
+            return false;
+        }
+        return accountId == null || accountId.equals(tx.getFromAccountId()) || accountId.equals(tx.getToAccountId());
+    }
+}
@@ -0,0 +1,343 @@
+/*
+Append-only, time-ordered transaction log
+    - postings are appended in arrival order into fixed-size segments
+    - each segment records the min/max timestamp of its entries, plus a running ceiling
+      (max timestamp of this and every earlier segment), which only ever grows
+    - time-range queries binary search the ceilings for the first segment that can hold a match,
+      skip segments whose bounds fall outside the range and take fully covered segments whole
+Appends are lock-free: a writer claims its positions with one getAndAdd, widens its segment's bounds and
+stores its entries, then moves the published size past every contiguous stored entry (helping slower
+writers ahead of it). Only creating or dropping a segment takes the log's monitor. Readers never lock
+and only see entries below the published size.
+Full segments can be handed out and dropped from the old end (see TieredTransactionStore).
+*/
+package com.example.bank.repository;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import com.example.bank.domain.Transaction;
+
+final class TransactionLog implements PositionedHistory {
+    static final int SEGMENT_SIZE = 4096;
+
+    private volatile Segment[] segments = new Segment[0]; //copy-on-write, oldest first; grown and dropped under the monitor
+    private final AtomicLong claimed = new AtomicLong(); //positions handed out to writers
+    private final AtomicLong published = new AtomicLong(); //every position below this holds a stored entry
+
+    void append(Transaction transaction) {
+        Objects.requireNonNull(transaction, "Transaction cannot be null");
+        store(claimed.getAndIncrement(), transaction);
+        publish();
+    }
+
+    //one claim for a whole batch, so postings keep their list order and sit at contiguous positions
+    void appendAll(List<Transaction> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        batch.forEach(tx -> Objects.requireNonNull(tx, "Transaction cannot be null"));
+        long position = claimed.getAndAdd(batch.size());
+        for (Transaction transaction : batch) {
+            store(position++, transaction);
+        }
+        publish();
+    }
+
+    //bounds widen before the entry is stored, so a reader never sees an entry outside its segment's bounds
+    private void store(long position, Transaction transaction) {
+        Segment segment = segmentFor(position);
+        segment.widen(transaction.getTimestamp());
+        raiseLaterCeilings(segment, transaction.getTimestamp());
+        segment.entries.set((int) (position - segment.base), transaction);
+    }
+
+    //moves the published size over every stored entry it reaches; a writer whose predecessor has not stored yet
+    //stops there, and the predecessor carries the size past both when it publishes
+    private void publish() {
+        long position;
+        while ((position = published.get()) < claimed.get() && entryAt(position) != null) {
+            published.compareAndSet(position, position + 1);
+        }
+    }
+
+    private Transaction entryAt(long position) {
+        Segment[] snapshot = segments;
+        int s = (int) ((position - snapshot[0].base) / SEGMENT_SIZE);
+        return s < snapshot.length ? snapshot[s].entries.get((int) (position - snapshot[s].base)) : null;
+    }
+
+    private Segment segmentFor(long position) {
+        Segment[] snapshot = segments;
+        if (snapshot.length > 0) {
+            Segment tail = snapshot[snapshot.length - 1];
+            if (position >= tail.base && position < tail.base + SEGMENT_SIZE) {
+                return tail;
+            }
+            int s = (int) ((position - snapshot[0].base) / SEGMENT_SIZE);
+            if (s < snapshot.length) {
+                return snapshot[s]; //a slower writer still filling an earlier segment
+            }
+        }
+        return grow(position);
+    }
+
+    //roll-over: adds segments until one holds `position`
+    private synchronized Segment grow(long position) {
+        Segment[] current = segments;
+        while (current.length == 0 || current[current.length - 1].base + SEGMENT_SIZE <= position) {
+            Segment tail = current.length == 0 ? null : current[current.length - 1];
+            Segment next = new Segment(tail == null ? 0 : tail.base + SEGMENT_SIZE, tail == null ? null : tail.ceiling.get());
+            Segment[] grown = Arrays.copyOf(current, current.length + 1);
+            grown[current.length] = next;
+            segments = grown;
+            current = grown;
+            if (tail != null) {
+                //a writer may have raised the tail's ceiling before this segment was visible to it
+                next.raiseCeiling(tail.ceiling.get());
+            }
+        }
+        return current[(int) ((position - current[0].base) / SEGMENT_SIZE)];
+    }
+
+    //ceilings cover every earlier segment: a late entry in an older segment lifts the newer ones too. Repeats
+    //until no segment was added meanwhile; one added later reads this segment's raised ceiling in grow()
+    private void raiseLaterCeilings(Segment segment, Instant ts) {
+        Segment[] seen = null;
+        Segment[] snapshot;
+        while ((snapshot = segments) != seen) {
+            for (int s = snapshot.length - 1; s >= 0 && snapshot[s] != segment; s--) {
+                snapshot[s].raiseCeiling(ts);
+            }
+            seen = snapshot;
+        }
+    }
+
+    @Override
+    public long size() {
+        return published.get();
+    }
+
+    //postings at log positions [from, to), oldest first; positions count every posting ever appended
+    @Override
+    public List<Transaction> range(long from, long to) {
+        long limit = published.get();
+        Segment[] snapshot = segments;
+        if (snapshot.length == 0 || from >= to) {
+            return List.of();
+        }
+        long first = snapshot[0].base;
+        if (from < first) {
+            throw new IllegalArgumentException("Position " + from + " is no longer held by this log");
+        }
+        List<Transaction> result = new ArrayList<>((int) Math.min(to - from, 1 << 16));
+        long position = from;
+        while (position < to) {
+            int s = (int) ((position - first) / SEGMENT_SIZE); //every segment but the tail is full
+            if (s >= snapshot.length) {
+                break;
+            }
+            Segment segment = snapshot[s];
+            int i = (int) (position - segment.base);
+            int end = (int) Math.min(segment.size(limit), i + (to - position));
+            if (i >= end) {
+                break;
+            }
+            for (int j = i; j < end; j++) {
+                result.add(segment.entries.get(j));
+            }
+            position += end - i;
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    //position of the first posting that can be after `instant`; every earlier posting is not after it
+    @Override
+    public long positionAfter(Instant instant) {
+        long limit = published.get();
+        Segment[] snapshot = segments;
+        int s = firstSegmentAfter(snapshot, instant);
+        return s < snapshot.length ? Math.min(snapshot[s].base, limit) : limit;
+    }
+
+    //position of the oldest posting still held in memory
+    long firstPosition() {
+        Segment[] snapshot = segments;
+        return snapshot.length == 0 ? published.get() : snapshot[0].base;
+    }
+
+    //segments holding published entries; all but the last of them are full
+    int segmentCount() {
+        long limit = published.get();
+        Segment[] snapshot = segments;
+        if (snapshot.length == 0) {
+            return 0;
+        }
+        return (int) Math.min(snapshot.length, (limit - snapshot[0].base + SEGMENT_SIZE - 1) / SEGMENT_SIZE);
+    }
+
+    //entries of the oldest `count` segments, oldest first; only full, published segments are returned
+    Transaction[] oldest(int count) {
+        long limit = published.get();
+        Segment[] snapshot = segments;
+        if (count <= 0 || count >= snapshot.length || snapshot[count - 1].size(limit) < SEGMENT_SIZE) {
+            throw new IllegalArgumentException("Only full segments can be handed out");
+        }
+        Transaction[] result = new Transaction[count * SEGMENT_SIZE];
+        for (int s = 0; s < count; s++) {
+            for (int i = 0; i < SEGMENT_SIZE; i++) {
+                result[s * SEGMENT_SIZE + i] = snapshot[s].entries.get(i);
+            }
+        }
+        return result;
+    }
+
+    synchronized void dropOldest(int count) {
+        Segment[] current = segments;
+        if (count <= 0 || count >= current.length || current[count - 1].size(published.get()) < SEGMENT_SIZE) {
+            throw new IllegalArgumentException("Only full segments can be dropped");
+        }
+        segments = Arrays.copyOfRange(current, count, current.length);
+    }
+
+    List<Transaction> recent(int n) {
+        List<Transaction> result = new ArrayList<>(Math.min(n, 1024));
+        long limit = published.get();
+        Segment[] snapshot = segments;
+        for (int s = snapshot.length - 1; s >= 0 && result.size() < n; s--) {
+            Segment segment = snapshot[s];
+            for (int i = segment.size(limit) - 1; i >= 0 && result.size() < n; i--) {
+                result.add(segment.entries.get(i));
+            }
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    List<Transaction> all() {
+        long limit = published.get();
+        List<Transaction> result = new ArrayList<>((int) Math.min(limit, Integer.MAX_VALUE - 8));
+        Segment[] snapshot = segments;
+        for (int s = snapshot.length - 1; s >= 0; s--) {
+            Segment segment = snapshot[s];
+            for (int i = segment.size(limit) - 1; i >= 0; i--) {
+                result.add(segment.entries.get(i));
+            }
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    //postings strictly after `from` and not after `to` (null = unbounded), newest first
+    List<Transaction> between(Instant from, Instant to) {
+        List<Transaction> result = new ArrayList<>();
+        long limit = published.get();
+        Segment[] snapshot = segments;
+        int first = firstSegmentAfter(snapshot, from);
+        for (int s = snapshot.length - 1; s >= first; s--) {
+            Segment segment = snapshot[s];
+            int n = segment.size(limit);
+            if (n == 0 || !segment.overlaps(from, to)) {
+                continue;
+            }
+            boolean covered = segment.coveredBy(from, to);
+            for (int i = n - 1; i >= 0; i--) {
+                Transaction tx = segment.entries.get(i);
+                if (covered || inRange(tx.getTimestamp(), from, to)) {
+                    result.add(tx);
+                }
+            }
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    long countBetween(Instant from, Instant to) {
+        long count = 0;
+        long limit = published.get();
+        Segment[] snapshot = segments;
+        int first = firstSegmentAfter(snapshot, from);
+        for (int s = first; s < snapshot.length; s++) {
+            Segment segment = snapshot[s];
+            int n = segment.size(limit);
+            if (n == 0 || !segment.overlaps(from, to)) {
+                continue;
+            }
+            if (segment.coveredBy(from, to)) {
+                count += n;
+                continue;
+            }
+            for (int i = 0; i < n; i++) {
+                if (inRange(segment.entries.get(i).getTimestamp(), from, to)) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    //index of the first segment whose ceiling is after `from`; every earlier segment is entirely <= from
+    private static int firstSegmentAfter(Segment[] snapshot, Instant from) {
+        if (from == null) {
+            return 0;
+        }
+        int lo = 0;
+        int hi = snapshot.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            Instant ceiling = snapshot[mid].ceiling.get();
+            if (ceiling != null && ceiling.isAfter(from)) {
+                hi = mid;
+            } else {
+                lo = mid + 1;
+            }
+        }
+        return lo;
+    }
+
+    private static boolean inRange(Instant ts, Instant from, Instant to) {
+        return (from == null || ts.isAfter(from)) && (to == null || !ts.isAfter(to));
+    }
+
+    private static final class Segment {
+        final long base; //log position of entries[0]
+        final AtomicReferenceArray<Transaction> entries = new AtomicReferenceArray<>(SEGMENT_SIZE);
+        final AtomicReference<Instant> min = new AtomicReference<>();
+        final AtomicReference<Instant> max = new AtomicReference<>();
+        final AtomicReference<Instant> ceiling; //max timestamp of this and every earlier segment
+
+        Segment(long base, Instant previousCeiling) {
+            this.base = base;
+            this.ceiling = new AtomicReference<>(previousCeiling);
+        }
+
+        //entries of this segment below the log's published size
+        int size(long published) {
+            return (int) Math.max(0, Math.min(SEGMENT_SIZE, published - base));
+        }
+
+        void widen(Instant ts) {
+            min.accumulateAndGet(ts, (current, t) -> current == null || t.isBefore(current) ? t : current);
+            max.accumulateAndGet(ts, (current, t) -> current == null || t.isAfter(current) ? t : current);
+            raiseCeiling(ts);
+        }
+
+        void raiseCeiling(Instant ts) {
+            if (ts != null) {
+                ceiling.accumulateAndGet(ts, (current, t) -> current == null || t.isAfter(current) ? t : current);
+            }
+        }
+
+        boolean overlaps(Instant from, Instant to) {
+            return (from == null || max.get().isAfter(from)) && (to == null || !min.get().isAfter(to));
+        }
+
+        boolean coveredBy(Instant from, Instant to) {
+            return (from == null || min.get().isAfter(from)) && (to == null || !max.get().isAfter(to));
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package com.example.bank.repository;
+
+import java.util.List;
+
+import com.example.bank.domain.Transaction;
+
+//one page of a cursor; nextPageToken resumes right after the last item, and is null once the cursor is exhausted
+public record TransactionPage(
+    List<Transaction> items,
+    String nextPageToken
+){}
@@ -0,0 +1,35 @@
+package com.example.bank.repository;
+
+import java.time.Duration;
+import java.util.Map;
+
+import com.example.bank.domain.AccountType;
+import com.example.bank.domain.Money;
+import com.example.bank.domain.TransactionType;
+
+//postings in the last `window` (the lookback rounded up to whole buckets); account-type figures count legs, so a transfer counts twice
+public record TransactionRates(
+    Duration window,
+    long count,
+    Money amount,
+    Map<TransactionType, Long> countByType,
+    Map<TransactionType, Money> amountByType,
+    Map<AccountType, Long> legsByAccountType,
+    Map<AccountType, Money> amountByAccountType
+){
+    public long count(TransactionType type) {
+        return countByType.getOrDefault(type, 0L);
+    }
+
+    public Money amount(TransactionType type) {
+        return amountByType.getOrDefault(type, Money.ZERO);
+    }
+
+    public long legs(AccountType type) {
+        return legsByAccountType.getOrDefault(type, 0L);
+    }
+
+    public Money amount(AccountType type) {
+        return amountByAccountType.getOrDefault(type, Money.ZERO);
+    }
+}
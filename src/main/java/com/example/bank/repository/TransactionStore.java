@@ -0,0 +1,42 @@
+/*
+Storage for the posting history behind BankRepository
+    - append() is called for every posting, possibly from many threads at once
+    - every query returns newest first; time ranges are after `from` and not after `to`,
+      with null meaning unbounded
+    - the history is also addressable by position through partitions(): a single PositionedHistory for
+      stores with one append order, one per shard for ShardedTransactionStore; cursors walk each in
+      bounded chunks and merge them by timestamp
+*/
+package com.example.bank.repository;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+import com.example.bank.domain.Transaction;
+
+public interface TransactionStore {
+    void append(Transaction transaction);
+
+    //appends in list order; stores may override to pay their per-append costs once per batch
+    default void appendAll(List<Transaction> batch) {
+        for (Transaction transaction : batch) {
+            append(transaction);
+        }
+    }
+
+    long size();
+
+    List<Transaction> recent(int n);
+
+    List<Transaction> between(Instant from, Instant to);
+
+    long countBetween(Instant from, Instant to);
+
+    List<Transaction> byAccount(UUID accountId);
+
+    List<Transaction> all();
+
+    //the history as independently positioned partitions, in a fixed order
+    List<PositionedHistory> partitions();
+}
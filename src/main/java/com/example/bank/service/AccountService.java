@@ -6,10 +6,11 @@ Single account operations service
 
     Each operation that modifies account balance must:
         - validate input
-        - lock per account
-        - perform the operation
-        - record a transaction
-        - unlock the account
+        - update the balance with a CAS (no account lock; hot accounts use striped sub-balances)
+        - record a transaction; a deposit is journaled before its credit moves and a withdrawal after its
+          debit, so a withdrawal never reaches the journal ahead of a deposit it spent
+        - wait for the journal to make the transaction durable
+    In sharded mode the update and record steps run on the account's shard thread; the durability wait does not.
 */
 package com.example.bank.service;
 
@@ -24,6 +25,7 @@ import java.util.UUID;
 import com.example.bank.domain.Account;
 import com.example.bank.domain.AccountType;
 import com.example.bank.domain.Customer;
+import com.example.bank.domain.Money;
 import com.example.bank.domain.Transaction;
 import com.example.bank.domain.TransactionType;
 import com.example.bank.repository.BankRepository;
@@ -40,6 +42,10 @@ public class AccountService {
     }
 
     public Account createAccount(UUID customerId, AccountType accountType, BigDecimal initialBalance) {
+        return createAccount(customerId, accountType, initialBalance == null ? null : Money.of(initialBalance));
+    }
+
+    public Account createAccount(UUID customerId, AccountType accountType, Money initialBalance) {
         // Ensure customer exists
         Customer customer = repo.getCustomer(customerId);
         if (customer == null) {
@@ -51,7 +57,11 @@ public class AccountService {
     }
 
     public void deposit(UUID accountId, BigDecimal amount, String description) {
-        if (amount == null || amount.compareTo(BigDecimal.ZERO) <= 0) {
+        deposit(accountId, amount == null ? null : Money.of(amount), description);
+    }
+
+    public void deposit(UUID accountId, Money amount, String description) {
+        if (amount == null || !amount.isPositive()) {
             throw new IllegalArgumentException("Deposit amount must be positive");
         }
         Account account = repo.getAccount(accountId);
@@ -59,25 +69,16 @@ public class AccountService {
             throw new IllegalArgumentException("Account does not exist");
         }
 
-        // Lock the account for thread-safe operation
-        account.getLock().lock();
-        try {
-            account.deposit(amount);
-
-            Instant now = Instant.now(clock);
-            LocalDate businessDate = LocalDate.now(businessZone);
-            // Record the transaction
-            repo.addTransaction(new Transaction(
-                                    UUID.randomUUID(), now, businessDate,
-                                    TransactionType.DEPOSIT, null, 
-                                    accountId, amount, description));
-        } finally {
-            account.getLock().unlock();
-        }
+        long seq = repo.post(accountId, () -> postDeposit(account, amount, description));
+        repo.awaitDurable(seq);
     }
 
     public void withdraw(UUID accountId, BigDecimal amount, String description) {
-        if (amount == null || amount.compareTo(BigDecimal.ZERO) <= 0) {
+        withdraw(accountId, amount == null ? null : Money.of(amount), description);
+    }
+
+    public void withdraw(UUID accountId, Money amount, String description) {
+        if (amount == null || !amount.isPositive()) {
             throw new IllegalArgumentException("Withdrawal amount must be positive");
         }
         Account account = repo.getAccount(accountId);
@@ -85,21 +86,41 @@ public class AccountService {
             throw new IllegalArgumentException("Account does not exist");
         }
 
-        // Lock the account for thread-safe operation
-        account.getLock().lock();
-        try {
-            account.withdraw(amount);
-
-            Instant now = Instant.now(clock);
-            LocalDate businessDate = LocalDate.now(businessZone);
-            // Record the transaction
-            repo.addTransaction(new Transaction(
-                                    UUID.randomUUID(), now, businessDate,
-                                    TransactionType.WITHDRAWAL, 
-                                    accountId, null, 
-                                    amount, description));
-        } finally {
-            account.getLock().unlock();
-        }
+        long seq = repo.post(accountId, () -> postWithdrawal(account, amount, description));
+        repo.awaitDurable(seq);
+    }
+
+    //lock-free: the posting is journaled, the balance is updated by CAS, then the posting is recorded;
+    //returns the journal sequence to wait on
+    private long postDeposit(Account account, Money amount, String description) {
+        Instant now = Instant.now(clock);
+        LocalDate businessDate = now.atZone(businessZone).toLocalDate();
+        repo.requireOpenBusinessDay(businessDate);
+        account.checkDeposit(amount);
+        Transaction tx = new Transaction(
+                                repo.newId(), now, businessDate,
+                                TransactionType.DEPOSIT, null, 
+                                account.getId(), amount, description);
+        long seq = repo.journalTransaction(tx);
+        account.deposit(amount);
+
+        // Record the transaction
+        repo.recordTransaction(tx);
+        return seq;
+    }
+
+    //lock-free: the funds check and the debit are one CAS loop
+    private long postWithdrawal(Account account, Money amount, String description) {
+        Instant now = Instant.now(clock);
+        LocalDate businessDate = now.atZone(businessZone).toLocalDate();
+        repo.requireOpenBusinessDay(businessDate);
+        account.withdraw(amount);
+
+        // Record the transaction
+        return repo.addTransaction(new Transaction(
+                                repo.newId(), now, businessDate,
+                                TransactionType.WITHDRAWAL, 
+                                account.getId(), null, 
+                                amount, description));
     }
-}
\ No newline at end of file
+}
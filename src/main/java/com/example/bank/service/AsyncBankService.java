@@ -0,0 +1,105 @@
+/*
+Asynchronous facade over the account, transfer, payment and report services
+  - every call returns a CompletableFuture and runs the synchronous service method on its own virtual thread
+  - blocking inside the services (journal durability waits, shard and pipeline hand-offs, hot-account
+    debits, the posting gate's barrier) parks the virtual thread and frees its carrier, so thousands of
+    requests can be in flight without sizing a pool
+  - failures complete the future exceptionally with the service's own exception
+  - close() stops accepting work and waits for the calls already started
+*/
+package com.example.bank.service;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.List;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
+
+import com.example.bank.domain.Account;
+import com.example.bank.domain.AccountType;
+import com.example.bank.domain.Money;
+import com.example.bank.domain.Transaction;
+import com.example.bank.repository.LedgerRollup;
+
+public class AsyncBankService implements AutoCloseable {
+    private final AccountService accountService;
+    private final TransferService transferService;
+    private final PaymentService paymentService;
+    private final ReportService reportService;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    public AsyncBankService(AccountService accountService, TransferService transferService,
+                            PaymentService paymentService, ReportService reportService) {
+        this.accountService = Objects.requireNonNull(accountService, "AccountService cannot be null");
+        this.transferService = Objects.requireNonNull(transferService, "TransferService cannot be null");
+        this.paymentService = Objects.requireNonNull(paymentService, "PaymentService cannot be null");
+        this.reportService = Objects.requireNonNull(reportService, "ReportService cannot be null");
+    }
+
+    public CompletableFuture<Account> createAccount(UUID customerId, AccountType accountType, Money initialBalance) {
+        return async(() -> accountService.createAccount(customerId, accountType, initialBalance));
+    }
+
+    public CompletableFuture<Void> deposit(UUID accountId, Money amount, String description) {
+        return async(() -> {
+            accountService.deposit(accountId, amount, description);
+            return null;
+        });
+    }
+
+    public CompletableFuture<Void> withdraw(UUID accountId, Money amount, String description) {
+        return async(() -> {
+            accountService.withdraw(accountId, amount, description);
+            return null;
+        });
+    }
+
+    public CompletableFuture<Void> transfer(UUID fromAccountId, UUID toAccountId, Money amount, String description) {
+        return async(() -> {
+            transferService.transfer(fromAccountId, toAccountId, amount, description);
+            return null;
+        });
+    }
+
+    public CompletableFuture<List<Transaction>> transferBatch(List<TransferRequest> transfers) {
+        return async(() -> transferService.transferBatch(transfers));
+    }
+
+    public CompletableFuture<Void> pay(UUID fromAccountId, Money amount, String description) {
+        return async(() -> {
+            paymentService.pay(fromAccountId, amount, description);
+            return null;
+        });
+    }
+
+    public CompletableFuture<BankReport> generateBankReport(int topNAccounts, Duration lookback) {
+        return async(() -> reportService.generateBankReport(topNAccounts, lookback));
+    }
+
+    public CompletableFuture<LedgerRollup> dailyRollup(LocalDate businessDate) {
+        return async(() -> reportService.dailyRollup(businessDate));
+    }
+
+    public CompletableFuture<LedgerRollup> monthlyRollup(YearMonth month) {
+        return async(() -> reportService.monthlyRollup(month));
+    }
+
+    @Override
+    public void close() {
+        executor.close();
+    }
+
+    private <T> CompletableFuture<T> async(Supplier<T> call) {
+        try {
+            return CompletableFuture.supplyAsync(call, executor);
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.failedFuture(new IllegalStateException("Async bank service is closed", e));
+        }
+    }
+}
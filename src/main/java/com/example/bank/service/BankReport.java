@@ -10,6 +10,6 @@ import com.example.bank.domain.Customer;
 public record BankReport(
     BigDecimal totalBalance,
     Map<Customer, BigDecimal> balanceByCustomer,
-    int recentTransactionCount,
+    long recentTransactionCount,
     List<Account> topAccountsByBalance
 ){}
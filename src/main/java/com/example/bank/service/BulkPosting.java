@@ -0,0 +1,26 @@
+package com.example.bank.service;
+
+import java.util.UUID;
+
+import com.example.bank.domain.Money;
+import com.example.bank.domain.TransactionType;
+
+//one entry of an upstream posting file: a deposit into, or a withdrawal or payment out of, one account
+public record BulkPosting(
+    TransactionType type,
+    UUID accountId,
+    Money amount,
+    String description
+){
+    public static BulkPosting deposit(UUID accountId, Money amount, String description) {
+        return new BulkPosting(TransactionType.DEPOSIT, accountId, amount, description);
+    }
+
+    public static BulkPosting withdrawal(UUID accountId, Money amount, String description) {
+        return new BulkPosting(TransactionType.WITHDRAWAL, accountId, amount, description);
+    }
+
+    public static BulkPosting payment(UUID accountId, Money amount, String description) {
+        return new BulkPosting(TransactionType.PAYMENT, accountId, amount, description);
+    }
+}
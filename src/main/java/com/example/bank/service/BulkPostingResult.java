@@ -0,0 +1,14 @@
+package com.example.bank.service;
+
+import com.example.bank.domain.Transaction;
+
+//outcome of one BulkPosting: the recorded transaction, or why the entry was rejected (the other is null)
+public record BulkPostingResult(
+    BulkPosting posting,
+    Transaction transaction,
+    String failure
+){
+    public boolean succeeded() {
+        return transaction != null;
+    }
+}
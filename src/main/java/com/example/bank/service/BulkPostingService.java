@@ -0,0 +1,153 @@
+/*
+Batch posting service for upstream files of deposits, withdrawals and payments
+  - post a list of entries, each succeeding or failing on its own
+
+    A batch is handled as:
+        - validate every entry; a bad entry fails alone and the rest carry on
+        - read the clock once and check the business day is open (a closed day rejects the whole batch)
+        - group the entries by account, keeping file order within each account
+        - per account: one lookup, one posting-gate entry and one shard hop; apply the entries in
+          order with the same CAS updates as the single-entry services, then append the account's
+          transactions to the repository in one batch
+        - a deposit is journaled on its own just before its credit moves; the withdrawals and payments
+          are journaled with the batch, after every credit they could have spent
+        - an entry that throws while being applied (e.g. a balance overflow) fails alone; whatever the
+          group applied is appended even if something escapes, so no balance change goes unrecorded
+        - wait once for the journal to make the last batch durable
+    Results come back in input order.
+*/
+package com.example.bank.service;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+
+import com.example.bank.domain.Account;
+import com.example.bank.domain.Transaction;
+import com.example.bank.domain.TransactionType;
+import com.example.bank.repository.BankRepository;
+
+public class BulkPostingService {
+    private final BankRepository repo;
+    private final Clock clock;
+    private final ZoneId businessZone;
+
+    public BulkPostingService(BankRepository repo, Clock clock, ZoneId businessZone) {
+        this.repo = Objects.requireNonNull(repo, "BankRepository cannot be null");
+        this.clock = Objects.requireNonNull(clock, "Clock cannot be null");
+        this.businessZone = Objects.requireNonNull(businessZone, "Business zone cannot be null");
+    }
+
+    public List<BulkPostingResult> post(List<BulkPosting> postings) {
+        if (postings == null) {
+            throw new IllegalArgumentException("Postings cannot be null");
+        }
+        BulkPostingResult[] results = new BulkPostingResult[postings.size()];
+
+        // Validate entries and group the good ones by account, in file order
+        Map<UUID, List<Integer>> byAccount = new LinkedHashMap<>();
+        for (int i = 0; i < results.length; i++) {
+            BulkPosting posting = postings.get(i);
+            String failure = validate(posting);
+            if (failure != null) {
+                results[i] = new BulkPostingResult(posting, null, failure);
+            } else {
+                byAccount.computeIfAbsent(posting.accountId(), id -> new ArrayList<>()).add(i);
+            }
+        }
+
+        Instant now = Instant.now(clock);
+        LocalDate businessDate = now.atZone(businessZone).toLocalDate();
+        repo.requireOpenBusinessDay(businessDate); //fail fast; each group checks again inside its posting
+
+        long seq = 0;
+        for (Map.Entry<UUID, List<Integer>> group : byAccount.entrySet()) {
+            Account account = repo.getAccount(group.getKey());
+            if (account == null) {
+                for (int i : group.getValue()) {
+                    results[i] = new BulkPostingResult(postings.get(i), null, "Account does not exist");
+                }
+                continue;
+            }
+            seq = Math.max(seq, repo.post(account.getId(),
+                    () -> postGroup(account, group.getValue(), postings, results, now, businessDate)));
+        }
+        repo.awaitDurable(seq);
+        return Arrays.asList(results);
+    }
+
+    private static String validate(BulkPosting posting) {
+        if (posting == null) {
+            return "Posting cannot be null";
+        }
+        if (posting.type() == null || posting.type() == TransactionType.TRANSFER) {
+            return "Posting type must be a deposit, withdrawal or payment";
+        }
+        if (posting.accountId() == null) {
+            return "Account ID cannot be null";
+        }
+        if (posting.amount() == null || !posting.amount().isPositive()) {
+            return "Posting amount must be positive";
+        }
+        return null;
+    }
+
+    //runs on the account's shard; applies the entries in order and records the applied ones as one batch
+    private long postGroup(Account account, List<Integer> entries, List<BulkPosting> postings,
+                           BulkPostingResult[] results, Instant now, LocalDate businessDate) {
+        if (repo.isBusinessDayClosed(businessDate)) {
+            for (int i : entries) {
+                results[i] = new BulkPostingResult(postings.get(i), null, "Business day " + businessDate + " is closed");
+            }
+            return 0;
+        }
+        List<Transaction> batch = new ArrayList<>(entries.size());
+        List<Transaction> debits = new ArrayList<>(entries.size());
+        long seq = 0;
+        try {
+            for (int i : entries) {
+                BulkPosting posting = postings.get(i);
+                try {
+                    boolean credit = posting.type() == TransactionType.DEPOSIT;
+                    Transaction tx = new Transaction(
+                            repo.newId(), now, businessDate, posting.type(),
+                            credit ? null : account.getId(), credit ? account.getId() : null,
+                            posting.amount(), posting.description());
+                    if (credit) {
+                        seq = Math.max(seq, credit(account, tx));
+                    } else if (account.tryWithdraw(posting.amount())) {
+                        debits.add(tx);
+                    } else {
+                        results[i] = new BulkPostingResult(posting, null, "Insufficient funds in the account");
+                        continue;
+                    }
+                    batch.add(tx);
+                    results[i] = new BulkPostingResult(posting, tx, null);
+                } catch (RuntimeException e) {
+                    results[i] = new BulkPostingResult(posting, null, e.getMessage());
+                }
+            }
+        } finally {
+            seq = Math.max(seq, repo.journalTransactions(debits));
+            repo.recordTransactions(batch);
+        }
+        return seq;
+    }
+
+    //the transaction is built before the balance moves and journaled just before the credit, which was checked
+    //first, so nothing can fail between the change and batch.add
+    private long credit(Account account, Transaction tx) {
+        account.checkDeposit(tx.getAmountMoney());
+        long seq = repo.journalTransaction(tx);
+        account.deposit(tx.getAmountMoney());
+        return seq;
+    }
+}
@@ -4,10 +4,10 @@ Single account payment service
 
     Each operation that modifies account balance:
         - validate input
-        - lock per account
-        - perform the operation
+        - check funds and debit in one CAS loop (no account lock)
         - record a transaction
-        - unlock the account
+        - wait for the journal to make the transaction durable
+    In sharded mode the debit and record steps run on the account's shard thread; the durability wait does not.
 */
 
 package com.example.bank.service;
@@ -21,6 +21,7 @@ import java.util.Objects;
 import java.util.UUID;
 
 import com.example.bank.domain.Account;
+import com.example.bank.domain.Money;
 import com.example.bank.domain.Transaction;
 import com.example.bank.domain.TransactionType;
 import com.example.bank.repository.BankRepository;
@@ -37,10 +38,14 @@ public class PaymentService {
     }
 
     public void pay(UUID fromAccountId, BigDecimal amount, String description) {
+        pay(fromAccountId, amount == null ? null : Money.of(amount), description);
+    }
+
+    public void pay(UUID fromAccountId, Money amount, String description) {
         if (fromAccountId == null) {
             throw new IllegalArgumentException("Account ID cannot be null");
         }
-        if (amount == null || amount.compareTo(BigDecimal.ZERO) <= 0) {
+        if (amount == null || !amount.isPositive()) {
             throw new IllegalArgumentException("Payment amount must be greater than zero");
         }
 
@@ -50,27 +55,26 @@ public class PaymentService {
             throw new IllegalArgumentException("Account does not exist");
         }
 
-        // Lock the account to ensure thread safety
-        fromAccount.getLock().lock();
-        try {
-            // Check sufficient funds
-            if (fromAccount.getBalance().compareTo(amount) < 0) {
-                throw new IllegalArgumentException("Insufficient funds in the account");
-            }
-            // Perform the payment
-            fromAccount.withdraw(amount);
+        long seq = repo.post(fromAccountId, () -> postPayment(fromAccount, amount, description));
+        repo.awaitDurable(seq);
+    }
 
-            Instant now = Instant.now(clock);
-            LocalDate businessDate = LocalDate.now(businessZone);
+    //lock-free: the funds check and the debit are one CAS loop; returns the journal sequence to wait on
+    private long postPayment(Account fromAccount, Money amount, String description) {
+        Instant now = Instant.now(clock);
+        LocalDate businessDate = now.atZone(businessZone).toLocalDate();
+        repo.requireOpenBusinessDay(businessDate);
 
-            // Record the transaction
-            repo.addTransaction(new Transaction(
-                                    UUID.randomUUID(), now, businessDate,
-                                    TransactionType.PAYMENT,
-                                    fromAccountId, null, 
-                                    amount, description));
-        } finally {
-            fromAccount.getLock().unlock();
+        // Perform the payment if funds suffice
+        if (!fromAccount.tryWithdraw(amount)) {
+            throw new IllegalArgumentException("Insufficient funds in the account");
         }
+
+        // Record the transaction
+        return repo.addTransaction(new Transaction(
+                                repo.newId(), now, businessDate,
+                                TransactionType.PAYMENT,
+                                fromAccount.getId(), null, 
+                                amount, description));
     }
 }
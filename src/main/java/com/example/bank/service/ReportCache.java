@@ -0,0 +1,129 @@
+/*
+Bounded cache of computed reports, each tagged with the repository version it was computed at
+    - a hit on an unchanged book (same version, computed within the tolerance) is returned as is
+    - once the book has moved on, the cached report is still served for up to stalenessTolerance after
+      it was computed while a background refresh recomputes it; older entries are recomputed inline
+    - reports over a time window drift as the clock moves even when nothing is posted, so an unchanged
+      entry older than the tolerance is served but refreshed in the background too
+    - one refresh per key at a time; at most maxEntries reports are kept, least recently used evicted first
+*/
+package com.example.bank.service;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Function;
+
+import com.example.bank.repository.BankRepository;
+
+final class ReportCache<K, V> implements AutoCloseable {
+    private final BankRepository repo;
+    private final Clock clock;
+    private final Duration stalenessTolerance;
+    private final Map<K, Entry<V>> entries; //access ordered; guarded by itself
+    private final Set<K> refreshing = ConcurrentHashMap.newKeySet();
+    private final ExecutorService refresher = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "report-refresher");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    ReportCache(BankRepository repo, Clock clock, Duration stalenessTolerance, int maxEntries) {
+        this.repo = Objects.requireNonNull(repo, "BankRepository cannot be null");
+        this.clock = Objects.requireNonNull(clock, "Clock cannot be null");
+        if (stalenessTolerance == null || stalenessTolerance.isNegative()) {
+            throw new IllegalArgumentException("Staleness tolerance cannot be null or negative");
+        }
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("Cache size must be positive");
+        }
+        this.stalenessTolerance = stalenessTolerance;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    V get(K key, Function<K, V> compute) {
+        Entry<V> entry;
+        synchronized (entries) {
+            entry = entries.get(key);
+        }
+        if (entry == null) {
+            return computeAndStore(key, compute);
+        }
+        boolean current = entry.version() == repo.getVersion();
+        boolean tolerable = !Duration.between(entry.computedAt(), clock.instant()).minus(stalenessTolerance).isPositive();
+        if (current && tolerable) {
+            return entry.value();
+        }
+        if (current || tolerable) {
+            refreshLater(key, compute);
+            return entry.value();
+        }
+        return computeAndStore(key, compute);
+    }
+
+    void invalidateAll() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    @Override
+    public void close() {
+        refresher.shutdownNow(); //pending refreshes are only an optimisation
+    }
+
+    private V computeAndStore(K key, Function<K, V> compute) {
+        //version first: postings racing the computation leave the entry tagged behind what it saw, never ahead
+        long version = repo.getVersion();
+        Instant computedAt = clock.instant();
+        V value = compute.apply(key);
+        synchronized (entries) {
+            Entry<V> existing = entries.get(key);
+            if (existing == null || existing.version() < version
+                    || (existing.version() == version && !existing.computedAt().isAfter(computedAt))) {
+                entries.put(key, new Entry<>(value, version, computedAt));
+            }
+        }
+        return value;
+    }
+
+    private void refreshLater(K key, Function<K, V> compute) {
+        if (!refreshing.add(key)) {
+            return;
+        }
+        try {
+            refresher.execute(() -> {
+                try {
+                    computeAndStore(key, compute);
+                } catch (RuntimeException e) {
+                    //keep serving the old entry; once past the tolerance the caller recomputes and sees the failure
+                } finally {
+                    refreshing.remove(key);
+                }
+            });
+        } catch (RejectedExecutionException closed) {
+            refreshing.remove(key);
+        }
+    }
+
+    private record Entry<V>(V value, long version, Instant computedAt) {}
+}
@@ -0,0 +1,97 @@
+/*
+Declarative report for ReportEngine: a name, the data set it reads and a reducer over it
+    - the reducer is a java.util.stream.Collector, so any collector (counting, summing, groupingBy...)
+      plugs in; it must be associative, as the engine reduces pieces of the data set in parallel
+    - factories cover the common groupings: accounts by customer or type, transactions by type or
+      business date; Money totals come from balances() and amounts()
+Definitions are compared by identity: keep the instance to read its result from ReportResults.
+*/
+package com.example.bank.service;
+
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.stream.Collector;
+import java.util.stream.Collectors;
+
+import com.example.bank.domain.Account;
+import com.example.bank.domain.AccountType;
+import com.example.bank.domain.Money;
+import com.example.bank.domain.Transaction;
+import com.example.bank.domain.TransactionType;
+
+public final class ReportDefinition<T, R> {
+    enum Source {
+        ACCOUNTS,
+        TRANSACTIONS
+    }
+
+    private final String name;
+    private final Source source;
+    private final Collector<T, ?, R> reducer;
+
+    private ReportDefinition(String name, Source source, Collector<T, ?, R> reducer) {
+        if (name == null || name.isBlank()) {
+            throw new IllegalArgumentException("Report name cannot be null or blank");
+        }
+        this.name = name;
+        this.source = source;
+        this.reducer = Objects.requireNonNull(reducer, "Reducer cannot be null");
+    }
+
+    public static <R> ReportDefinition<Account, R> accounts(String name, Collector<Account, ?, R> reducer) {
+        return new ReportDefinition<>(name, Source.ACCOUNTS, reducer);
+    }
+
+    public static <R> ReportDefinition<Transaction, R> transactions(String name, Collector<Transaction, ?, R> reducer) {
+        return new ReportDefinition<>(name, Source.TRANSACTIONS, reducer);
+    }
+
+    public static <V> ReportDefinition<Account, Map<UUID, V>> accountsByCustomer(String name, Collector<Account, ?, V> reducer) {
+        return accounts(name, Collectors.groupingBy(Account::getCustomerId, reducer));
+    }
+
+    public static <V> ReportDefinition<Account, Map<AccountType, V>> accountsByType(String name, Collector<Account, ?, V> reducer) {
+        return accounts(name, Collectors.groupingBy(Account::getAccountType, reducer));
+    }
+
+    public static <V> ReportDefinition<Transaction, Map<TransactionType, V>> transactionsByType(String name, Collector<Transaction, ?, V> reducer) {
+        return transactions(name, Collectors.groupingBy(Transaction::getType, reducer));
+    }
+
+    //business dates in order
+    public static <V> ReportDefinition<Transaction, Map<LocalDate, V>> transactionsByBusinessDate(String name, Collector<Transaction, ?, V> reducer) {
+        return transactions(name, Collectors.groupingBy(Transaction::getBusinessDate, TreeMap::new, reducer));
+    }
+
+    //sum of account balances
+    public static Collector<Account, ?, Money> balances() {
+        return Collectors.collectingAndThen(
+                Collectors.reducing(0L, (Account account) -> account.getBalanceMoney().minorUnits(), Money::add), Money::ofMinor);
+    }
+
+    //sum of posting amounts
+    public static Collector<Transaction, ?, Money> amounts() {
+        return Collectors.collectingAndThen(
+                Collectors.reducing(0L, (Transaction tx) -> tx.getAmountMoney().minorUnits(), Money::add), Money::ofMinor);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    Source source() {
+        return source;
+    }
+
+    Collector<T, ?, R> reducer() {
+        return reducer;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,146 @@
+/*
+Fused, parallel report runner over the book's accounts and transactions
+    - runs on a long-lived work-stealing pool (the common pool unless one is given); nothing is created
+      or torn down per run
+    - every definition reading the same data set shares one pass: the set's spliterator is split into
+      pieces (BankRepository.splitAccounts / splitTransactions), each piece is read once and fed to
+      every definition's accumulator, and the pieces' containers are combined pairwise back up the
+      fork-join tree, so adding a report adds work per element, not another scan
+    - the account pass and the transaction pass run side by side
+    - passes read live data: balances are read as each account is visited, and the transaction set is
+      pinned when the run starts. Figures that must agree to the cent come from BankRepository.getBalanceTotals
+*/
+package com.example.bank.service;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BiConsumer;
+import java.util.function.BinaryOperator;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collector;
+
+import com.example.bank.domain.Account;
+import com.example.bank.domain.Transaction;
+import com.example.bank.repository.BankRepository;
+
+public class ReportEngine {
+    private static final long LEAF_SIZE = 4096; //pieces at or below this many elements are not split further
+
+    private final BankRepository repo;
+    private final ForkJoinPool pool;
+
+    public ReportEngine(BankRepository repo, ForkJoinPool pool) {
+        this.repo = Objects.requireNonNull(repo, "BankRepository cannot be null");
+        this.pool = Objects.requireNonNull(pool, "Pool cannot be null");
+    }
+
+    public ReportEngine(BankRepository repo) {
+        this(repo, ForkJoinPool.commonPool());
+    }
+
+    public ReportResults run(List<ReportDefinition<?, ?>> definitions) {
+        if (definitions == null || definitions.isEmpty() || definitions.stream().anyMatch(Objects::isNull)) {
+            throw new IllegalArgumentException("Report definitions cannot be null or empty");
+        }
+        List<ReportDefinition<?, ?>> overAccounts = new ArrayList<>();
+        List<ReportDefinition<?, ?>> overTransactions = new ArrayList<>();
+        for (ReportDefinition<?, ?> definition : definitions) {
+            (definition.source() == ReportDefinition.Source.ACCOUNTS ? overAccounts : overTransactions).add(definition);
+        }
+
+        ForkJoinTask<Object[]> accountPass = overAccounts.isEmpty() ? null
+                : pool.submit(new FusedPass<Account>(repo.splitAccounts(), new Reducers<>(overAccounts)));
+        Object[] transactionResults = overTransactions.isEmpty() ? new Object[0]
+                : pool.invoke(new FusedPass<Transaction>(repo.splitTransactions(), new Reducers<>(overTransactions)));
+        Object[] accountResults = accountPass == null ? new Object[0] : accountPass.join();
+
+        Map<ReportDefinition<?, ?>, Object> results = new IdentityHashMap<>();
+        for (int i = 0; i < overAccounts.size(); i++) {
+            results.put(overAccounts.get(i), accountResults[i]);
+        }
+        for (int i = 0; i < overTransactions.size(); i++) {
+            results.put(overTransactions.get(i), transactionResults[i]);
+        }
+        return new ReportResults(results);
+    }
+
+    //the definitions' collectors, unpacked once per run and typed loosely so one pass can drive them all
+    private static final class Reducers<T> {
+        final Supplier<Object>[] suppliers;
+        final BiConsumer<Object, T>[] accumulators;
+        final BinaryOperator<Object>[] combiners;
+        final Function<Object, Object>[] finishers;
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        Reducers(List<ReportDefinition<?, ?>> definitions) {
+            int n = definitions.size();
+            suppliers = new Supplier[n];
+            accumulators = new BiConsumer[n];
+            combiners = new BinaryOperator[n];
+            finishers = new Function[n];
+            for (int i = 0; i < n; i++) {
+                Collector<T, Object, Object> collector = (Collector<T, Object, Object>) definitions.get(i).reducer();
+                suppliers[i] = collector.supplier();
+                accumulators[i] = collector.accumulator();
+                combiners[i] = collector.combiner();
+                finishers[i] = collector.finisher();
+            }
+        }
+    }
+
+    @SuppressWarnings("serial") //Serializable only through ForkJoinTask; passes are never serialized
+    private static final class FusedPass<T> extends RecursiveTask<Object[]> {
+        private final Spliterator<T> piece;
+        private final Reducers<T> reducers;
+        private final boolean root;
+
+        FusedPass(Spliterator<T> piece, Reducers<T> reducers) {
+            this(piece, reducers, true);
+        }
+
+        private FusedPass(Spliterator<T> piece, Reducers<T> reducers, boolean root) {
+            this.piece = piece;
+            this.reducers = reducers;
+            this.root = root;
+        }
+
+        @Override
+        protected Object[] compute() {
+            Object[] containers;
+            Spliterator<T> prefix = piece.estimateSize() > LEAF_SIZE ? piece.trySplit() : null;
+            if (prefix != null) {
+                FusedPass<T> left = new FusedPass<>(prefix, reducers, false);
+                left.fork();
+                Object[] right = new FusedPass<>(piece, reducers, false).compute();
+                containers = left.join();
+                for (int i = 0; i < containers.length; i++) {
+                    containers[i] = reducers.combiners[i].apply(containers[i], right[i]); //prefix first keeps encounter order
+                }
+            } else {
+                containers = new Object[reducers.suppliers.length];
+                for (int i = 0; i < containers.length; i++) {
+                    containers[i] = reducers.suppliers[i].get();
+                }
+                piece.forEachRemaining(element -> {
+                    for (int i = 0; i < containers.length; i++) {
+                        reducers.accumulators[i].accept(containers[i], element);
+                    }
+                });
+            }
+            if (root) {
+                for (int i = 0; i < containers.length; i++) {
+                    containers[i] = reducers.finishers[i].apply(containers[i]);
+                }
+            }
+            return containers;
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.example.bank.service;
+
+import java.util.Collections;
+import java.util.Map;
+
+//results of one ReportEngine run, keyed by the definitions that produced them
+public final class ReportResults {
+    private final Map<ReportDefinition<?, ?>, Object> results;
+
+    ReportResults(Map<ReportDefinition<?, ?>, Object> results) {
+        this.results = Collections.unmodifiableMap(results);
+    }
+
+    @SuppressWarnings("unchecked")
+    public <R> R get(ReportDefinition<?, R> definition) {
+        if (!results.containsKey(definition)) {
+            throw new IllegalArgumentException("Report " + definition + " was not part of this run");
+        }
+        return (R) results.get(definition);
+    }
+
+    public int size() {
+        return results.size();
+    }
+}
@@ -4,87 +4,115 @@ Report data transfer object for ReportService results
 package com.example.bank.service;
 
 import java.math.BigDecimal;
+import java.time.Clock;
 import java.time.Duration;
-import java.time.Instant;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
-import java.util.UUID;
-import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
-import java.util.stream.Collectors;
 
 import com.example.bank.domain.Account;
+import com.example.bank.domain.AccountType;
 import com.example.bank.domain.Customer;
+import com.example.bank.domain.Money;
+import com.example.bank.repository.BalanceTotals;
 import com.example.bank.repository.BankRepository;
+import com.example.bank.repository.LedgerRollup;
 
-public class ReportService {
+public class ReportService implements AutoCloseable {
     private final BankRepository repo;
+    private final ReportEngine engine;
+    private final ReportCache<BankReportKey, BankReport> bankReports; //null when every report is computed fresh
 
     public ReportService(BankRepository repo) {
         this.repo = Objects.requireNonNull(repo, "BankRepository cannot be null");
+        this.engine = new ReportEngine(repo);
+        this.bankReports = null;
+    }
+
+    //cached mode: bank reports are reused while the book is unchanged, and a report up to stalenessTolerance old
+    //is served while a fresh one is computed in the background; at most maxCachedReports parameter sets are kept
+    public ReportService(BankRepository repo, Clock clock, Duration stalenessTolerance, int maxCachedReports) {
+        this.repo = Objects.requireNonNull(repo, "BankRepository cannot be null");
+        this.engine = new ReportEngine(repo);
+        this.bankReports = new ReportCache<>(repo, clock, stalenessTolerance, maxCachedReports);
+    }
+
+    //ad-hoc reports: every definition over the same data set shares one parallel pass
+    public ReportResults run(List<ReportDefinition<?, ?>> definitions) {
+        return engine.run(definitions);
     }
 
     public BankReport generateBankReport(int topNAccounts, Duration lookback) {
-        ExecutorService pool = Executors.newFixedThreadPool(4);
-        try {
-            Callable<BigDecimal> totalBalanceTask = () ->
-                repo.getAllAccounts().stream()
-                    .map(acc -> acc.getBalance())
-                    .reduce(BigDecimal.ZERO, BigDecimal::add);
-
-            Callable<Map<Customer, BigDecimal>> balanceByCustomerTask = () -> {
-                Map<UUID, List<Account>> grouped = repo.getAllAccounts().stream()
-                    .collect(Collectors.groupingBy(acc -> acc.getCustomerId()));
-                Map<Customer, BigDecimal> result = new HashMap<>();
-                for (UUID customerId : grouped.keySet().stream().sorted().toList()) {
-                    Customer customer = repo.getCustomer(customerId);
-                    BigDecimal total = grouped.get(customerId).stream()
-                        .map(acc -> acc.getBalance())
-                        .reduce(BigDecimal.ZERO, BigDecimal::add);
-                    result.put(customer, total);
-                }
-                return result;
-            };
-
-            Callable<Integer> recentTransactionCountTask = () -> 
-                repo.getTransactionsSince(Instant.now().minus(lookback)).size();
-            
-            Callable<List<Account>> topNAccountsTask = () -> 
-                repo.getAllAccounts().stream()
-                    .sorted((a, b) -> b.getBalance().compareTo(a.getBalance()))
-                    .limit(topNAccounts)
-                    .toList();
-
-            Future<BigDecimal> totalBalanceFuture = pool.submit(totalBalanceTask);
-            Future<Map<Customer, BigDecimal>> balanceByCustomerFuture = pool.submit(balanceByCustomerTask);
-            Future<Integer> recentTransactionCountFuture = pool.submit(recentTransactionCountTask);
-            Future<List<Account>> topNAccountsFuture = pool.submit(topNAccountsTask);
-
-            return new BankReport(
-                get(totalBalanceFuture),
-                get(balanceByCustomerFuture),
-                get(recentTransactionCountFuture),
-                get(topNAccountsFuture)
-            );
-        } catch (Exception e) {
-            throw new RuntimeException("Failed to generate bank report", e);
-        } finally {
-            pool.shutdown();
+        if (bankReports == null) {
+            return computeBankReport(new BankReportKey(topNAccounts, lookback));
+        }
+        return bankReports.get(new BankReportKey(topNAccounts, lookback), this::computeBankReport);
+    }
+
+    //drops every cached report; the next request for each is computed inline
+    public void invalidateCachedReports() {
+        if (bankReports != null) {
+            bankReports.invalidateAll();
+        }
+    }
+
+    @Override
+    public void close() {
+        if (bankReports != null) {
+            bankReports.close();
         }
     }
 
-    private <T> T get(Future<T> future) {
-        try {
-            return future.get();
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-            throw new RuntimeException("Thread was interrupted", e);
-        } catch (Exception e) {
-            throw new RuntimeException("Failed to get future result", e);
-        } 
+    //not an engine run: every figure comes from a running aggregate, an index or the rate counters, so there is no
+    //pass over the book to fuse
+    private BankReport computeBankReport(BankReportKey key) {
+        int topNAccounts = key.topNAccounts();
+        Duration lookback = key.lookback();
+        //totals come from the repository's running aggregates: O(1), and O(customers) for the breakdown
+        BalanceTotals totals = repo.getBalanceTotals();
+        Map<Customer, BigDecimal> balanceByCustomer = new HashMap<>();
+        totals.byCustomer().forEach((customerId, total) ->
+            balanceByCustomer.put(repo.getCustomer(customerId), total.toBigDecimal()));
+
+        return new BankReport(
+            totals.total().toBigDecimal(),
+            balanceByCustomer,
+            repo.countTransactionsWithin(lookback), //bucketed counters on the injected clock, or the store
+            repo.getTopAccounts(topNAccounts) //read from the live balance index, not sorted per report
+        );
+    }
+
+    public List<Account> bottomAccounts(int n) {
+        return repo.getBottomAccounts(n);
+    }
+
+    //e.g. overdraft and low-balance alerts
+    public List<Account> accountsBelow(Money threshold) {
+        return repo.getAccountsBelow(threshold);
+    }
+
+    //running balance per account type, e.g. for product dashboards
+    public Map<AccountType, BigDecimal> balanceByAccountType() {
+        Map<AccountType, BigDecimal> result = new EnumMap<>(AccountType.class);
+        repo.getBalanceTotals().byAccountType().forEach((type, total) -> result.put(type, total.toBigDecimal()));
+        return result;
     }
+
+    //a closed day reads its frozen rollup; an open day reads its running totals
+    public LedgerRollup dailyRollup(LocalDate businessDate) {
+        return repo.getRollup(businessDate, businessDate);
+    }
+
+    public LedgerRollup monthlyRollup(YearMonth month) {
+        if (month == null) {
+            throw new IllegalArgumentException("Month cannot be null");
+        }
+        return repo.getRollup(month.atDay(1), month.atEndOfMonth());
+    }
+
+    private record BankReportKey(int topNAccounts, Duration lookback) {}
 }
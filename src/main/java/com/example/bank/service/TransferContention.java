@@ -0,0 +1,12 @@
+package com.example.bank.service;
+
+import java.time.Duration;
+
+//running totals for TransferService.tryTransfer since the service was created
+public record TransferContention(
+    long timedTransfers,
+    long contendedTransfers, //found the source's debit lock taken at least once
+    long backoffs,
+    long busyTransfers,      //gave up at the deadline
+    Duration backoffTime
+){}
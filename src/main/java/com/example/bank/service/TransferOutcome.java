@@ -0,0 +1,7 @@
+package com.example.bank.service;
+
+//result of TransferService.tryTransfer; BUSY means nothing moved and the caller may retry later
+public enum TransferOutcome {
+    COMPLETED,
+    BUSY
+}
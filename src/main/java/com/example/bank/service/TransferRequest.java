@@ -0,0 +1,13 @@
+package com.example.bank.service;
+
+import java.util.UUID;
+
+import com.example.bank.domain.Money;
+
+//one transfer of a settlement batch, see TransferService.transferBatch
+public record TransferRequest(
+    UUID fromAccountId,
+    UUID toAccountId,
+    Money amount,
+    String description
+){}
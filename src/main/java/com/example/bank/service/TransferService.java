@@ -2,34 +2,89 @@
 Two accounts transfer service 
     - validate inputs
     - fetch accounts
-    - lock both accounts (deterministic lock ordering: always lock the lower UUID first to prevent deadlocks)
-        - check sufficient funds
-        - perform the transfer
-        - record a transaction
-    - unlock both accounts
+    - check that the target's balance can take the credit (Account.checkDeposit), before anything moves
+    - check funds and debit the source in one step (Account.tryWithdraw: a CAS on the base cell, plus a
+      short lock on a hot account whose base alone is short)
+    - journal the transfer, then credit the target (a CAS, or a striped credit on hot accounts), so a
+      debit that spends the credit is always journaled after it
+    - record the transaction
+    - wait for the journal to make the transaction durable
+No pair of account locks is taken: each leg is atomic on its own, and the posting gate keeps
+consistent reads from seeing one leg without the other.
+In sharded mode both accounts' steps run on shard threads; across shards the transfer is
+    - checked for room on the target shard
+    - checked and debited on the source shard, then journaled
+    - then credited on the target shard; until then the amount is in flight and counted in neither
+      balance, which only consistent reads (BankRepository.readConsistent) are guaranteed not to observe
+    - then recorded on the source shard, whose log holds the posting
 Logs one TRANSFER transaction
+Settlement batches (transferBatch) net the transfers per account first
+    - funds are checked against each account's net position, not transfer by transfer
+    - each touched balance changes once, in UUID order: net payers are debited, then net payees
+      credited, all inside one posting-gate entry; the batch is journaled between the two, and a payer
+      that falls short has the debits already taken credited back and the batch is rejected before
+      anything is journaled
+    - every net payee is checked first for room to take its credit (Account.checkDeposit), so a
+      balance overflow rejects the batch before any payer is debited
+    - every transfer is still recorded as its own TRANSFER transaction
+    - adapted from "lock every touched account in UUID order": plain debits are lock-free CASes, so
+      there are no account locks that would exclude anything. The gate entry is what makes the batch
+      atomic. Consistent reads see all of it or none of it, a rejected batch included. A plain
+      getBalance() may briefly see a payer debited before a refund
+Timed transfers (tryTransfer) never wait past their deadline
+    - each attempt takes a hot source's debit lock only if it is free; otherwise the caller backs off with
+      jitter, outside the posting gate and off any shard thread, and retries
+    - the deadline also bounds each attempt's wait at the posting gate, on the pipeline and on the
+      shard queues; a transfer that had not started by then never runs
+    - past the deadline the caller gets BUSY with nothing moved
+    - attempts, contended transfers, backoffs, BUSY outcomes and time spent backing off are counted
 */
 
 package com.example.bank.service;
 
 import java.math.BigDecimal;
 import java.time.Clock;
+import java.time.Duration;
 import java.time.Instant;
 import java.time.LocalDate;
 import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.TreeMap;
 import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
 
 import com.example.bank.domain.Account;
+import com.example.bank.domain.DebitResult;
+import com.example.bank.domain.Money;
 import com.example.bank.domain.Transaction;
 import com.example.bank.domain.TransactionType;
 import com.example.bank.repository.BankRepository;
 
 public class TransferService {
+    private static final long BUSY = -1; //post() result when a timed transfer could not start or take the debit lock
+    private static final long MIN_BACKOFF_NANOS = 20_000;
+    private static final long MAX_BACKOFF_NANOS = 5_000_000;
+
     private final BankRepository repo;
     public final Clock clock;
     public final ZoneId businessZone;
 
+    // tryTransfer contention statistics
+    private final LongAdder timedTransfers = new LongAdder();
+    private final LongAdder contendedTransfers = new LongAdder();
+    private final LongAdder backoffs = new LongAdder();
+    private final LongAdder busyTransfers = new LongAdder();
+    private final LongAdder backoffNanos = new LongAdder();
+
     public TransferService(BankRepository repo, Clock clock, ZoneId businessZone) {
         this.repo = Objects.requireNonNull(repo, "BankRepository cannot be null");
         this.clock = Objects.requireNonNull(clock, "Clock cannot be null");
@@ -37,6 +92,53 @@ public class TransferService {
     }
 
     public void transfer(UUID fromAccountId, UUID toAccountId, BigDecimal amount, String description) {
+        transfer(fromAccountId, toAccountId, amount == null ? null : Money.of(amount), description);
+    }
+
+    public void transfer(UUID fromAccountId, UUID toAccountId, Money amount, String description) {
+        Account[] accounts = validateAndFetch(fromAccountId, toAccountId, amount);
+        repo.awaitDurable(post(accounts[0], accounts[1], amount, description, false, 0));
+    }
+
+    //Bounded-latency transfer: if the transfer cannot start (posting gate, pipeline or shard queue) or a hot source's
+    //debit lock stays taken, backs off with jitter and retries until maxWait has passed, then answers BUSY with
+    //nothing moved. Insufficient funds still throw.
+    public TransferOutcome tryTransfer(UUID fromAccountId, UUID toAccountId, Money amount, String description, Duration maxWait) {
+        if (maxWait == null || maxWait.isNegative()) {
+            throw new IllegalArgumentException("Maximum wait cannot be null or negative");
+        }
+        Account[] accounts = validateAndFetch(fromAccountId, toAccountId, amount);
+        long deadline = System.nanoTime() + maxWait.toNanos();
+        timedTransfers.increment();
+        for (int attempt = 0; ; attempt++) {
+            long seq = post(accounts[0], accounts[1], amount, description, true, deadline);
+            if (seq != BUSY) {
+                repo.awaitDurable(seq);
+                return TransferOutcome.COMPLETED;
+            }
+            if (attempt == 0) {
+                contendedTransfers.increment();
+            }
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                busyTransfers.increment();
+                return TransferOutcome.BUSY;
+            }
+            //full jitter over an exponentially growing ceiling, so colliding callers spread out
+            long ceiling = Math.min(MAX_BACKOFF_NANOS, MIN_BACKOFF_NANOS << Math.min(attempt, 16));
+            long pause = Math.min(remaining, ThreadLocalRandom.current().nextLong(1, ceiling + 1));
+            backoffs.increment();
+            backoffNanos.add(pause);
+            LockSupport.parkNanos(pause);
+        }
+    }
+
+    public TransferContention getContentionStats() {
+        return new TransferContention(timedTransfers.sum(), contendedTransfers.sum(), backoffs.sum(),
+                                      busyTransfers.sum(), Duration.ofNanos(backoffNanos.sum()));
+    }
+
+    private Account[] validateAndFetch(UUID fromAccountId, UUID toAccountId, Money amount) {
         // Validate inputs
         if (fromAccountId == null || toAccountId == null) {
             throw new IllegalArgumentException("Account IDs cannot be null");
@@ -44,7 +146,7 @@ public class TransferService {
         if (fromAccountId.equals(toAccountId)) {
             throw new IllegalArgumentException("Cannot transfer to the same account");
         }
-        if (amount == null || amount.compareTo(BigDecimal.ZERO) <= 0) {
+        if (amount == null || !amount.isPositive()) {
             throw new IllegalArgumentException("Transfer amount must be greater than zero");
         }
 
@@ -54,36 +156,243 @@ public class TransferService {
         if (fromAccount == null || toAccount == null) {
             throw new IllegalArgumentException("One or both accounts do not exist");
         }
+        return new Account[] {fromAccount, toAccount};
+    }
 
-        // Lock both accounts to prevent deadlocks by always locking the lower UUID first
-        Account firstLock = fromAccountId.compareTo(toAccountId) < 0 ? fromAccount : toAccount;
-        Account secondLock = fromAccountId.compareTo(toAccountId) < 0 ? toAccount : fromAccount;
+    //returns the journal sequence to wait on; when `timed`, BUSY if the transfer could not start by `deadline`
+    //(System.nanoTime) or a hot source's debit lock was taken
+    private long post(Account fromAccount, Account toAccount, Money amount, String description, boolean timed, long deadline) {
+        boolean wait = !timed;
+        if (repo.sameShard(fromAccount.getId(), toAccount.getId())) {
+            Supplier<Long> transfer = () -> postTransfer(fromAccount, toAccount, amount, description, wait);
+            Long seq = timed ? repo.tryPost(fromAccount.getId(), deadline, transfer) : repo.post(fromAccount.getId(), transfer);
+            return seq == null ? BUSY : seq;
+        }
+        // Cross-shard: check the credit on the target shard, debit on the source shard, journal, credit on the
+        // target shard, then record on the source shard (after both legs, so the posting is indexed with final
+        // balances); one posting-gate entry spans all of it, so consistent reads never see the amount in flight.
+        // Only the check and the debit may give up on their deadline: once the debit is in, the journal record,
+        // the credit and the record always follow.
+        Supplier<Long> transfer = () -> {
+            Supplier<Boolean> room = () -> checkCredit(toAccount, amount);
+            if ((timed ? repo.tryOnShard(toAccount.getId(), deadline, room) : repo.onShard(toAccount.getId(), room)) == null) {
+                return BUSY;
+            }
+            Supplier<Transaction> debit = () -> debitForTransfer(fromAccount, toAccount.getId(), amount, description, wait);
+            Transaction debited = timed ? repo.tryOnShard(fromAccount.getId(), deadline, debit) : repo.onShard(fromAccount.getId(), debit);
+            if (debited == null) {
+                return BUSY;
+            }
+            long journaled = repo.journalTransaction(debited);
+            repo.onShard(toAccount.getId(), () -> credit(toAccount, amount));
+            repo.onShard(fromAccount.getId(), () -> record(debited));
+            return journaled;
+        };
+        Long seq = timed ? repo.tryPosting(deadline, transfer) : repo.posting(transfer);
+        return seq == null ? BUSY : seq;
+    }
 
-        firstLock.getLock().lock();
-        try {
-            secondLock.getLock().lock();
+    //Settlement batch: all transfers apply or none do, as one posting-gate entry (see the header for why no
+    //account locks are taken); returns one recorded transaction per request, in order
+    public List<Transaction> transferBatch(List<TransferRequest> transfers) {
+        if (transfers == null || transfers.isEmpty()) {
+            throw new IllegalArgumentException("Transfer batch cannot be empty");
+        }
+
+        // Validate every request and net the movements per account (minor units, UUID order)
+        Map<UUID, Account> accounts = new HashMap<>();
+        TreeMap<UUID, Long> net = new TreeMap<>();
+        for (int i = 0; i < transfers.size(); i++) {
+            TransferRequest transfer = transfers.get(i);
+            try {
+                validate(transfer);
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Transfer " + i + ": " + e.getMessage(), e);
+            }
+            for (UUID id : List.of(transfer.fromAccountId(), transfer.toAccountId())) {
+                if (accounts.computeIfAbsent(id, repo::getAccount) == null) {
+                    throw new IllegalArgumentException("Transfer " + i + ": One or both accounts do not exist");
+                }
+            }
+            long amount = transfer.amount().minorUnits();
+            net.merge(transfer.fromAccountId(), -amount, Money::add);
+            net.merge(transfer.toAccountId(), amount, Money::add);
+        }
+
+        Instant now = Instant.now(clock);
+        LocalDate businessDate = now.atZone(businessZone).toLocalDate();
+        List<Transaction> recorded = new ArrayList<>(transfers.size());
+        for (TransferRequest transfer : transfers) {
+            recorded.add(new Transaction(
+                    repo.newId(), now, businessDate,
+                    TransactionType.TRANSFER,
+                    transfer.fromAccountId(), transfer.toAccountId(), transfer.amount(), transfer.description()));
+        }
+
+        // One posting-gate entry for the batch, so consistent reads see all of it or none of it
+        long seq = repo.posting(() -> {
+            repo.requireOpenBusinessDay(businessDate);
+            checkPayees(accounts, net);
+            debitPayers(accounts, net);
+            long journaled = repo.journalTransactions(recorded);
+            creditPayees(accounts, net);
+            recordBatch(recorded);
+            return journaled;
+        });
+        repo.awaitDurable(seq);
+        return Collections.unmodifiableList(recorded);
+    }
+
+    private static void validate(TransferRequest transfer) {
+        if (transfer == null) {
+            throw new IllegalArgumentException("Transfer cannot be null");
+        }
+        if (transfer.fromAccountId() == null || transfer.toAccountId() == null) {
+            throw new IllegalArgumentException("Account IDs cannot be null");
+        }
+        if (transfer.fromAccountId().equals(transfer.toAccountId())) {
+            throw new IllegalArgumentException("Cannot transfer to the same account");
+        }
+        if (transfer.amount() == null || !transfer.amount().isPositive()) {
+            throw new IllegalArgumentException("Transfer amount must be greater than zero");
+        }
+    }
+
+    //rejects the batch if a net payee's balance cannot take its credit; runs before anything moves
+    private void checkPayees(Map<UUID, Account> accounts, TreeMap<UUID, Long> net) {
+        for (Map.Entry<UUID, Long> position : net.entrySet()) {
+            if (position.getValue() <= 0) {
+                continue;
+            }
+            UUID id = position.getKey();
+            Money amount = Money.ofMinor(position.getValue());
             try {
-                // Check sufficient funds
-                if (fromAccount.getBalance().compareTo(amount) < 0) {
-                    throw new IllegalArgumentException("Insufficient funds in the source account");
+                repo.onShard(id, () -> {
+                    accounts.get(id).checkDeposit(amount);
+                    return null;
+                });
+            } catch (ArithmeticException e) {
+                throw new IllegalArgumentException("Account " + id + " cannot take its net credit", e);
+            }
+        }
+    }
+
+    //debits every net payer, undoing the debits already taken if one falls short; each balance changes on its own shard
+    private void debitPayers(Map<UUID, Account> accounts, TreeMap<UUID, Long> net) {
+        List<UUID> debited = new ArrayList<>();
+        for (Map.Entry<UUID, Long> position : net.entrySet()) {
+            if (position.getValue() >= 0) {
+                continue;
+            }
+            UUID id = position.getKey();
+            Money debit = Money.ofMinor(-position.getValue());
+            if (!repo.onShard(id, () -> accounts.get(id).tryWithdraw(debit))) {
+                for (UUID refunded : debited) {
+                    Money refund = Money.ofMinor(-net.get(refunded));
+                    repo.onShard(refunded, () -> credit(accounts.get(refunded), refund));
                 }
-                // Perform the transfer
-                fromAccount.withdraw(amount);
-                toAccount.deposit(amount);
-
-                // Record the transaction
-                Instant now = Instant.now(clock);
-                LocalDate businessDate = now.atZone(businessZone).toLocalDate();
-
-                repo.addTransaction(new Transaction(
-                        UUID.randomUUID(), now, businessDate,
-                        TransactionType.TRANSFER,
-                        fromAccountId, toAccountId, amount, description));
-            } finally {
-                secondLock.getLock().unlock();
+                throw new IllegalArgumentException("Insufficient funds in account " + id + " for its net debit");
+            }
+            debited.add(id);
+        }
+    }
+
+    //credits every net payee once the batch is journaled, each on its own shard
+    private void creditPayees(Map<UUID, Account> accounts, TreeMap<UUID, Long> net) {
+        for (Map.Entry<UUID, Long> position : net.entrySet()) {
+            if (position.getValue() > 0) {
+                Money amount = Money.ofMinor(position.getValue());
+                repo.onShard(position.getKey(), () -> credit(accounts.get(position.getKey()), amount));
             }
-        } finally {
-            firstLock.getLock().unlock();
         }
     }
+
+    //logs each source account's transfers on its shard in one append
+    private void recordBatch(List<Transaction> recorded) {
+        Map<UUID, List<Transaction>> bySource = new LinkedHashMap<>();
+        for (Transaction tx : recorded) {
+            bySource.computeIfAbsent(tx.getFromAccountId(), id -> new ArrayList<>()).add(tx);
+        }
+        for (Map.Entry<UUID, List<Transaction>> group : bySource.entrySet()) {
+            repo.onShard(group.getKey(), () -> record(group.getValue()));
+        }
+    }
+
+    //runs on the shard both accounts share; returns the journal sequence to wait on
+    private long postTransfer(Account fromAccount, Account toAccount, Money amount, String description, boolean wait) {
+        Instant now = Instant.now(clock);
+        LocalDate businessDate = now.atZone(businessZone).toLocalDate();
+        repo.requireOpenBusinessDay(businessDate);
+
+        // Check room for the credit, check funds and debit in one step, journal, then credit; neither needs the
+        // other account's lock
+        checkCredit(toAccount, amount);
+        if (!debit(fromAccount, amount, wait)) {
+            return BUSY;
+        }
+        Transaction tx = new Transaction(
+                repo.newId(), now, businessDate,
+                TransactionType.TRANSFER,
+                fromAccount.getId(), toAccount.getId(), amount, description);
+        long seq = repo.journalTransaction(tx);
+        toAccount.deposit(amount);
+
+        // Record the transaction
+        repo.recordTransaction(tx);
+        return seq;
+    }
+
+    //runs on the source shard; returns the posting to journal and record around the credit leg, or null when BUSY
+    private Transaction debitForTransfer(Account fromAccount, UUID toAccountId, Money amount, String description, boolean wait) {
+        Instant now = Instant.now(clock);
+        LocalDate businessDate = now.atZone(businessZone).toLocalDate();
+        repo.requireOpenBusinessDay(businessDate);
+
+        if (!debit(fromAccount, amount, wait)) {
+            return null;
+        }
+        return new Transaction(
+                repo.newId(), now, businessDate,
+                TransactionType.TRANSFER,
+                fromAccount.getId(), toAccountId, amount, description);
+    }
+
+    //false only when `wait` is off and a hot source's debit lock is taken; insufficient funds throw
+    private static boolean debit(Account fromAccount, Money amount, boolean wait) {
+        DebitResult result = wait
+                ? (fromAccount.tryWithdraw(amount) ? DebitResult.DEBITED : DebitResult.INSUFFICIENT_FUNDS)
+                : fromAccount.tryWithdrawNow(amount);
+        if (result == DebitResult.INSUFFICIENT_FUNDS) {
+            throw new IllegalArgumentException("Insufficient funds in the source account");
+        }
+        return result == DebitResult.DEBITED;
+    }
+
+    //runs on the target shard before the debit; a transfer the target's balance cannot take is rejected
+    private static Boolean checkCredit(Account toAccount, Money amount) {
+        try {
+            toAccount.checkDeposit(amount);
+        } catch (ArithmeticException e) {
+            throw new IllegalArgumentException("The target account cannot take the transfer", e);
+        }
+        return Boolean.TRUE;
+    }
+
+    //runs on the target shard; Account.deposit throws on a balance overflow, so a credit is checked with
+    //Account.checkDeposit before its debit and only fails if concurrent credits filled the balance in between
+    private Void credit(Account toAccount, Money amount) {
+        toAccount.deposit(amount);
+        return null;
+    }
+
+    //runs on the source shard, whose log holds the posting
+    private Void record(Transaction transaction) {
+        repo.recordTransaction(transaction);
+        return null;
+    }
+
+    private Void record(List<Transaction> transactions) {
+        repo.recordTransactions(transactions);
+        return null;
+    }
 }
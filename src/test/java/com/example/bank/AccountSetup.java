@@ -1,13 +1,22 @@
 package com.example.bank;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
 import org.junit.jupiter.api.Test;
 
 import com.example.bank.domain.Account;
 import com.example.bank.domain.AccountType;
 import com.example.bank.domain.Customer;
+import com.example.bank.domain.DebitResult;
+import com.example.bank.domain.Money;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class AccountSetup extends TestSetup{
@@ -43,4 +52,137 @@ public class AccountSetup extends TestSetup{
         assertTrue(accounts.stream().anyMatch(a -> a.getId().equals(aT.getId())), "Should contain first account");
         assertTrue(accounts.stream().anyMatch(a -> a.getId().equals(aT2.getId())), "Should contain second account");
     }
+
+    @Test
+    public void balancesAreFixedPointMoney() {
+        Account a = repo.addAccount(alice.getId(), AccountType.CHECKING, bd("0.10"));
+        accountService.deposit(a.getId(), Money.parse("0.20"), "Dime and dimes");
+        assertEquals(Money.ofMinor(30), a.getBalanceMoney(), "Money arithmetic should be exact");
+        assertEquals(bd("0.30"), a.getBalance(), "The BigDecimal view should keep the currency scale");
+        assertThrows(IllegalArgumentException.class, () -> accountService.deposit(a.getId(), bd("0.001"), "Too precise"),
+                     "Sub-cent amounts should be rejected, not rounded");
+        assertThrows(ArithmeticException.class, () -> Money.ofMinor(Long.MAX_VALUE).plus(Money.ofMinor(1)),
+                     "Overflow should be detected");
+    }
+
+    @Test
+    public void lockFreeWithdrawalsNeverOverdrawAHotAccount() throws InterruptedException {
+        Account hot = repo.addAccount(alice.getId(), AccountType.CHECKING, bd("100.00"));
+        Account other = repo.addAccount(bob.getId(), AccountType.CHECKING, bd("100.00"));
+        repo.markHot(hot.getId(), 4); //the opening balance stays in the base cell; credits land in the stripes
+        assertTrue(hot.isHot());
+        AtomicInteger rejected = new AtomicInteger();
+        AtomicReference<String> failure = new AtomicReference<>(); //first failure seen by a worker, asserted below
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            int kind = t % 4;
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < 2_000; i++) {
+                    try {
+                        switch (kind) {
+                            case 0 -> accountService.withdraw(hot.getId(), bd("1.00"), "Cash");
+                            case 1 -> paymentService.pay(hot.getId(), bd("1.00"), "Coffee");
+                            case 2 -> transferService.transfer(hot.getId(), other.getId(), bd("1.00"), "Out");
+                            default -> transferService.transfer(other.getId(), hot.getId(), bd("1.00"), "In");
+                        }
+                    } catch (IllegalArgumentException insufficientFunds) {
+                        rejected.incrementAndGet();
+                    } catch (RuntimeException e) {
+                        failure.compareAndSet(null, "Unexpected failure: " + e);
+                    }
+                    Money balance = hot.getBalanceMoney();
+                    if (balance.minorUnits() < 0) {
+                        failure.compareAndSet(null, "The balance went negative: " + balance);
+                    }
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(null, failure.get(), "The balance should never go negative, nor a debit fail unexpectedly");
+
+        long net = repo.getTransactionsByAccount(hot.getId()).stream()
+            .mapToLong(tx -> hot.getId().equals(tx.getToAccountId()) ? tx.getAmountMoney().minorUnits() : -tx.getAmountMoney().minorUnits())
+            .sum();
+        assertEquals(Money.ofMinor(net), hot.getBalanceMoney(), "The balance should match its postings");
+        long left = repo.getAllTransactions().stream()
+            .filter(tx -> tx.getToAccountId() == null)
+            .mapToLong(tx -> tx.getAmountMoney().minorUnits())
+            .sum();
+        assertEquals(Money.parse("200.00"), hot.getBalanceMoney().plus(other.getBalanceMoney()).plus(Money.ofMinor(left)),
+                     "Money should only leave through withdrawals and payments");
+        assertTrue(rejected.get() > 0, "Some debits should have found the account empty");
+    }
+
+    @Test
+    public void stripedHotAccountKeepsOneBalance() throws InterruptedException {
+        Account hot = repo.addAccount(alice.getId(), AccountType.CHECKING, bd("10.00"));
+        Account other = repo.addAccount(bob.getId(), AccountType.CHECKING, bd("500.00"));
+        repo.markHot(hot.getId(), 8);
+        assertTrue(hot.isHot(), "The account should be striped");
+        assertThrows(IllegalArgumentException.class, () -> repo.markHot(other.getId(), 1));
+
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < 500; i++) {
+                    accountService.deposit(hot.getId(), bd("1.00"), "Fan-in");
+                }
+            }));
+        }
+        threads.add(new Thread(() -> {
+            for (int i = 0; i < 100; i++) {
+                transferService.transfer(other.getId(), hot.getId(), bd("1.00"), "In");
+            }
+        }));
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(Money.parse("2110.00"), hot.getBalanceMoney(), "Stripes should add up to one balance");
+
+        //one debit larger than any single stripe has to gather from all of them
+        accountService.withdraw(hot.getId(), bd("2100.00"), "Sweep");
+        assertEquals(Money.parse("10.00"), hot.getBalanceMoney());
+        assertThrows(IllegalArgumentException.class, () -> paymentService.pay(hot.getId(), bd("10.01"), "Too much"));
+        assertEquals(Money.parse("10.00"), hot.getBalanceMoney(), "A rejected debit should leave the stripes intact");
+        transferService.transfer(hot.getId(), other.getId(), bd("10.00"), "Out");
+        assertEquals(Money.ZERO, hot.getBalanceMoney());
+    }
+
+    @Test
+    public void hotAccountDebitsTheBaseCellWithoutTheLock() throws InterruptedException {
+        Account hot = repo.addAccount(alice.getId(), AccountType.CHECKING, bd("50.00"));
+        repo.markHot(hot.getId(), 4);
+        accountService.deposit(hot.getId(), bd("30.00"), "Striped credit");
+
+        CountDownLatch held = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Thread holder = new Thread(() -> {
+            hot.getLock().lock();
+            try {
+                held.countDown();
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                hot.getLock().unlock();
+            }
+        });
+        holder.start();
+        held.await();
+        try {
+            assertEquals(DebitResult.DEBITED, hot.tryWithdrawNow(Money.parse("20.00")),
+                         "A debit the base cell covers should not need the lock");
+            assertEquals(DebitResult.BUSY, hot.tryWithdrawNow(Money.parse("40.00")),
+                         "A debit that must gather the stripes needs the lock");
+        } finally {
+            release.countDown();
+            holder.join();
+        }
+        assertEquals(DebitResult.DEBITED, hot.tryWithdrawNow(Money.parse("40.00")), "Base and stripes together cover it");
+        assertEquals(Money.parse("20.00"), hot.getBalanceMoney());
+    }
 }
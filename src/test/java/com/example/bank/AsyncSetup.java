@@ -0,0 +1,49 @@
+package com.example.bank;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import org.junit.jupiter.api.Test;
+
+import com.example.bank.domain.Account;
+import com.example.bank.domain.AccountType;
+import com.example.bank.domain.Money;
+import com.example.bank.service.AsyncBankService;
+import com.example.bank.service.BankReport;
+
+public class AsyncSetup extends TestSetup {
+    @Test
+    public void thousandsOfRequestsRunWithoutAPool() {
+        Account hot = repo.addAccount(alice.getId(), AccountType.CHECKING, bd("0.00"));
+        Account other = repo.addAccount(bob.getId(), AccountType.CHECKING, bd("0.00"));
+        try (AsyncBankService async = new AsyncBankService(accountService, transferService, paymentService, reportService)) {
+            List<CompletableFuture<Void>> requests = new ArrayList<>();
+            for (int i = 0; i < 5_000; i++) {
+                requests.add(async.deposit(hot.getId(), Money.parse("2.00"), "Fan-in"));
+                requests.add(async.transfer(other.getId(), hot.getId(), Money.parse("1.00"), "Maybe"));
+            }
+            long bounced = requests.stream().filter(request -> {
+                try {
+                    request.get();
+                    return false;
+                } catch (ExecutionException e) {
+                    return e.getCause() instanceof IllegalArgumentException;
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+            }).count();
+            assertEquals(5_000, bounced, "Transfers out of an empty account should fail with the service's exception");
+            assertEquals(Money.parse("10000.00"), hot.getBalanceMoney());
+
+            BankReport report = async.generateBankReport(1, Duration.ofDays(1)).join();
+            assertEquals(bd("10000.00"), report.totalBalance());
+            assertTrue(report.topAccountsByBalance().contains(hot), "The report should run on the facade too");
+        }
+    }
+}
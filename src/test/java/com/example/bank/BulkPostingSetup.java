@@ -0,0 +1,104 @@
+package com.example.bank;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.UUID;
+
+import org.junit.jupiter.api.Test;
+
+import com.example.bank.domain.Account;
+import com.example.bank.domain.AccountType;
+import com.example.bank.domain.Customer;
+import com.example.bank.domain.Money;
+import com.example.bank.domain.Transaction;
+import com.example.bank.domain.TransactionType;
+import com.example.bank.repository.BankRepository;
+import com.example.bank.repository.FsyncPolicy;
+import com.example.bank.repository.Journal;
+import com.example.bank.service.BulkPosting;
+import com.example.bank.service.BulkPostingResult;
+import com.example.bank.service.BulkPostingService;
+
+public class BulkPostingSetup extends TestSetup {
+    @Test
+    public void anEntryThatThrowsMidGroupLeavesTheRestRecorded() {
+        Account checking = repo.addAccount(alice.getId(), AccountType.CHECKING, bd("10.00"));
+        BulkPostingService bulk = new BulkPostingService(repo, clock, businessZone);
+
+        List<BulkPostingResult> results = bulk.post(List.of(
+            BulkPosting.deposit(checking.getId(), Money.parse("5.00"), "Before"),
+            BulkPosting.deposit(checking.getId(), Money.ofMinor(Long.MAX_VALUE), "Overflows the balance"),
+            BulkPosting.payment(checking.getId(), Money.parse("3.00"), "After")));
+
+        assertTrue(results.get(0).succeeded());
+        assertFalse(results.get(1).succeeded(), "The overflowing entry should fail alone");
+        assertEquals("Money overflow", results.get(1).failure());
+        assertTrue(results.get(2).succeeded(), "Entries after the failure should still apply");
+        assertEquals(Money.parse("12.00"), checking.getBalanceMoney());
+        List<Transaction> history = repo.getTransactionsByAccount(checking.getId());
+        assertEquals(3, history.size(), "Every applied entry should be recorded, plus the initial deposit");
+        long net = history.stream()
+            .mapToLong(tx -> checking.getId().equals(tx.getToAccountId()) ? tx.getAmountMoney().minorUnits() : -tx.getAmountMoney().minorUnits())
+            .sum();
+        assertEquals(checking.getBalanceMoney(), Money.ofMinor(net), "No balance change should go unrecorded");
+    }
+
+    @Test
+    public void entriesSucceedOrFailOnTheirOwnInFileOrder() {
+        Account checking = repo.addAccount(alice.getId(), AccountType.CHECKING, bd("10.00"));
+        Account savings = repo.addAccount(bob.getId(), AccountType.SAVINGS, bd("0.00"));
+        BulkPostingService bulk = new BulkPostingService(repo, clock, businessZone);
+
+        List<BulkPostingResult> results = bulk.post(List.of(
+            BulkPosting.payment(checking.getId(), Money.parse("15.00"), "Too early"),
+            BulkPosting.deposit(savings.getId(), Money.parse("5.00"), "Interest"),
+            BulkPosting.deposit(checking.getId(), Money.parse("20.00"), "Paycheck"),
+            BulkPosting.payment(checking.getId(), Money.parse("15.00"), "Rent"),
+            BulkPosting.deposit(UUID.randomUUID(), Money.parse("1.00"), "Nobody"),
+            BulkPosting.withdrawal(savings.getId(), Money.ZERO, "Nothing"),
+            new BulkPosting(TransactionType.TRANSFER, checking.getId(), Money.parse("1.00"), "Not bulk")));
+
+        assertEquals(7, results.size());
+        assertFalse(results.get(0).succeeded(), "A payment before the funds arrive should fail");
+        assertEquals("Insufficient funds in the account", results.get(0).failure());
+        assertTrue(results.get(1).succeeded());
+        assertTrue(results.get(2).succeeded());
+        assertTrue(results.get(3).succeeded(), "Entries for one account apply in file order");
+        assertEquals("Account does not exist", results.get(4).failure());
+        assertFalse(results.get(5).succeeded(), "Non-positive amounts are rejected");
+        assertFalse(results.get(6).succeeded(), "Transfers are not bulk postings");
+
+        assertEquals(Money.parse("15.00"), checking.getBalanceMoney());
+        assertEquals(Money.parse("5.00"), savings.getBalanceMoney());
+        List<Transaction> history = repo.getTransactionsByAccount(checking.getId());
+        assertEquals(3, history.size(), "Only successful entries are recorded");
+        assertEquals("Rent", history.get(0).getDescription());
+        assertEquals(results.get(3).transaction(), history.get(0));
+    }
+
+    @Test
+    public void batchesAreJournaledLikeSinglePostings() throws IOException {
+        Path dir = Files.createTempDirectory("journal");
+        UUID accountId;
+        try (BankRepository durable = new BankRepository(clock, businessZone, new Journal(dir, FsyncPolicy.PER_BATCH))) {
+            Customer carol = durable.addCustomer("Carol", "carol@email.com");
+            Account account = durable.addAccount(carol.getId(), AccountType.CHECKING, bd("0.00"));
+            accountId = account.getId();
+            new BulkPostingService(durable, clock, businessZone).post(List.of(
+                BulkPosting.deposit(accountId, Money.parse("100.00"), "Payroll"),
+                BulkPosting.payment(accountId, Money.parse("40.00"), "Rent"),
+                BulkPosting.payment(accountId, Money.parse("70.00"), "Bounced")));
+        }
+
+        try (BankRepository recovered = new BankRepository(clock, businessZone, new Journal(dir, FsyncPolicy.PER_BATCH))) {
+            assertEquals(Money.parse("60.00"), recovered.getAccount(accountId).getBalanceMoney(), "Balance should be rebuilt");
+            assertEquals(2, recovered.getTransactionsByAccount(accountId).size(), "History should be rebuilt");
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package com.example.bank;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.Test;
+
+import com.example.bank.domain.Account;
+import com.example.bank.domain.AccountType;
+import com.example.bank.domain.Customer;
+import com.example.bank.domain.Transaction;
+import com.example.bank.domain.TransactionType;
+import com.example.bank.repository.BankRepository;
+import com.example.bank.repository.FsyncPolicy;
+import com.example.bank.repository.HeapTransactionStore;
+import com.example.bank.repository.Journal;
+import com.example.bank.repository.LedgerBucket;
+import com.example.bank.repository.ScanDirection;
+import com.example.bank.repository.TransactionFilter;
+import com.example.bank.repository.TransactionStore;
+import com.example.bank.service.AccountService;
+import com.example.bank.service.PaymentService;
+import com.example.bank.service.TransferService;
+
+public class JournalSetup extends TestSetup {
+    @Test
+    public void replayRebuildsCustomersAccountsAndHistory() throws IOException {
+        Path dir = Files.createTempDirectory("journal");
+        UUID carolId;
+        UUID checkingId;
+        UUID savingsId;
+        try (BankRepository durable = new BankRepository(clock, businessZone, new Journal(dir, FsyncPolicy.PER_BATCH))) {
+            Customer carol = durable.addCustomer("Carol", "carol@email.com");
+            Account checking = durable.addAccount(carol.getId(), AccountType.CHECKING, bd("100.00"));
+            Account savings = durable.addAccount(carol.getId(), AccountType.SAVINGS, bd("0.00"));
+            new AccountService(durable, clock, businessZone).deposit(checking.getId(), bd("50.00"), "Paycheck");
+            new TransferService(durable, clock, businessZone).transfer(checking.getId(), savings.getId(), bd("30.00"), "Save");
+            new PaymentService(durable, clock, businessZone).pay(checking.getId(), bd("20.00"), "Rent");
+            carolId = carol.getId();
+            checkingId = checking.getId();
+            savingsId = savings.getId();
+        }
+
+        try (BankRepository recovered = new BankRepository(clock, businessZone, new Journal(dir, FsyncPolicy.PER_BATCH))) {
+            assertNotNull(recovered.getCustomer(carolId), "Customer should be recovered");
+            assertEquals(bd("100.00"), recovered.getAccount(checkingId).getBalance(), "Checking balance should be rebuilt");
+            assertEquals(bd("30.00"), recovered.getAccount(savingsId).getBalance(), "Savings balance should be rebuilt");
+            assertEquals(4, recovered.getTransactionsByAccount(checkingId).size(), "Checking history should be rebuilt");
+            assertEquals(2, recovered.getAccountsByCustomer(carolId).size(), "Customer index should be rebuilt");
+        }
+    }
+
+    @Test
+    public void tornTailIsTruncatedOnReplay() throws IOException {
+        Path dir = Files.createTempDirectory("journal");
+        UUID accountId;
+        try (BankRepository durable = new BankRepository(clock, businessZone, new Journal(dir, FsyncPolicy.PER_OPERATION))) {
+            Customer carol = durable.addCustomer("Carol", "carol@email.com");
+            accountId = durable.addAccount(carol.getId(), AccountType.CHECKING, bd("10.00")).getId();
+        }
+        try (FileChannel channel = FileChannel.open(dir.resolve("journal-000000.log"), StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            channel.write(ByteBuffer.wrap(new byte[] {0, 0, 0, 42, 3, 1, 2}));
+        }
+
+        try (BankRepository recovered = new BankRepository(clock, businessZone, new Journal(dir, FsyncPolicy.PER_OPERATION))) {
+            assertEquals(bd("10.00"), recovered.getAccount(accountId).getBalance(), "Intact records should replay");
+            new AccountService(recovered, clock, businessZone).deposit(accountId, bd("5.00"), "After crash");
+        }
+        try (BankRepository recovered = new BankRepository(clock, businessZone, new Journal(dir, FsyncPolicy.PER_OPERATION))) {
+            assertEquals(bd("15.00"), recovered.getAccount(accountId).getBalance(), "Appends after truncation should replay");
+        }
+    }
+
+    @Test
+    public void concurrentPostingsShareGroupCommits() throws Exception {
+        Path dir = Files.createTempDirectory("journal");
+        UUID accountId;
+        try (BankRepository durable = new BankRepository(clock, businessZone, new Journal(dir, FsyncPolicy.PER_BATCH))) {
+            Customer carol = durable.addCustomer("Carol", "carol@email.com");
+            accountId = durable.addAccount(carol.getId(), AccountType.CHECKING, bd("0.00")).getId();
+            AccountService service = new AccountService(durable, clock, businessZone);
+            List<Thread> threads = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                threads.add(new Thread(() -> {
+                    for (int i = 0; i < 100; i++) {
+                        service.deposit(accountId, bd("1.00"), "Deposit");
+                    }
+                }));
+            }
+            threads.forEach(Thread::start);
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        }
+        try (BankRepository recovered = new BankRepository(clock, businessZone, new Journal(dir, FsyncPolicy.INTERVAL))) {
+            assertEquals(bd("800.00"), recovered.getAccount(accountId).getBalance(), "Every acknowledged deposit should replay");
+        }
+    }
+
+    @Test
+    public void checkpointLetsRecoveryReplayOnlyTheTail() throws IOException {
+        Path dir = Files.createTempDirectory("journal");
+        UUID accountId;
+        try (BankRepository durable = new BankRepository(clock, businessZone, new Journal(dir, FsyncPolicy.PER_BATCH))) {
+            Customer carol = durable.addCustomer("Carol", "carol@email.com");
+            accountId = durable.addAccount(carol.getId(), AccountType.CHECKING, bd("100.00")).getId();
+            AccountService service = new AccountService(durable, clock, businessZone);
+            service.deposit(accountId, bd("10.00"), "Before checkpoint");
+            durable.checkpoint();
+            service.withdraw(accountId, bd("30.00"), "After checkpoint");
+        }
+
+        try (BankRepository recovered = new BankRepository(clock, businessZone, new Journal(dir, FsyncPolicy.PER_BATCH))) {
+            assertEquals(bd("80.00"), recovered.getAccount(accountId).getBalance(), "Snapshot plus tail should rebuild the balance");
+            assertEquals(3, recovered.getTransactionsByAccount(accountId).size(), "History should survive the checkpoint");
+            assertEquals("Before checkpoint", recovered.getTransactionsByAccount(accountId).get(1).getDescription());
+            recovered.checkpoint();
+        }
+        try (BankRepository recovered = new BankRepository(clock, businessZone, new Journal(dir, FsyncPolicy.PER_BATCH))) {
+            assertEquals(bd("80.00"), recovered.getAccount(accountId).getBalance(), "A second checkpoint should be loadable");
+            assertEquals(3, recovered.getTransactionsByAccount(accountId).size(), "Checkpointed history should not be lost or doubled");
+        }
+    }
+
+    @Test
+    public void checkpointedHistoryStaysOnDiskUntilItIsRead() throws IOException {
+        Path dir = Files.createTempDirectory("journal");
+        LocalDate today = Instant.now(clock).atZone(businessZone).toLocalDate();
+        UUID accountId;
+        try (BankRepository durable = new BankRepository(clock, businessZone, new Journal(dir, FsyncPolicy.PER_BATCH))) {
+            Customer carol = durable.addCustomer("Carol", "carol@email.com");
+            accountId = durable.addAccount(carol.getId(), AccountType.CHECKING, bd("100.00")).getId();
+            AccountService service = new AccountService(durable, clock, businessZone);
+            service.deposit(accountId, bd("10.00"), "Before checkpoint");
+            service.deposit(accountId, bd("10.00"), "Before checkpoint");
+            durable.checkpoint();
+            service.withdraw(accountId, bd("30.00"), "After checkpoint");
+        }
+
+        Journal journal = new Journal(dir, FsyncPolicy.PER_BATCH);
+        try (BankRepository recovered = new BankRepository(clock, businessZone, journal)) {
+            assertEquals(bd("90.00"), recovered.getAccount(accountId).getBalance(), "Snapshot plus tail should rebuild the balance");
+            assertEquals(bd("120.00"), recovered.getRollup(today, today).total(accountId, LedgerBucket.DEPOSITS),
+                         "The ledger should come back from the snapshot, not from the archived postings");
+            assertEquals(0, journal.archivedSegmentReads(), "Startup should leave checkpointed postings on disk");
+
+            assertEquals(4, recovered.getTransactionsByAccount(accountId).size(), "Archived history should still be readable");
+            assertEquals(4, recovered.streamTransactions(TransactionFilter.all(), ScanDirection.OLDEST_FIRST).count(),
+                         "Cursors should walk the archive and the live store");
+            assertEquals(1, journal.archivedSegmentReads(), "The sealed segment should be read once, on demand");
+        }
+    }
+
+    @Test
+    public void noJournalPrefixReplaysAWithdrawalAheadOfTheDepositItSpent() throws Exception {
+        Path dir = Files.createTempDirectory("journal");
+        CountDownLatch spent = new CountDownLatch(1);
+        AtomicBoolean holdDeposits = new AtomicBoolean();
+        //holds a deposit's in-memory record until the withdrawal has gone through, widening the window between
+        //the deposit's credit and its journal record as far as it goes
+        TransactionStore store = new HeapTransactionStore() {
+            @Override
+            public void append(Transaction transaction) {
+                if (transaction.getType() == TransactionType.DEPOSIT && holdDeposits.get()) {
+                    try {
+                        spent.await(10, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                super.append(transaction);
+            }
+        };
+        UUID accountId;
+        try (BankRepository durable = new BankRepository(clock, businessZone, new Journal(dir, FsyncPolicy.PER_BATCH), store)) {
+            Customer carol = durable.addCustomer("Carol", "carol@email.com");
+            Account account = durable.addAccount(carol.getId(), AccountType.CHECKING, bd("0.00"));
+            accountId = account.getId();
+            AccountService service = new AccountService(durable, clock, businessZone);
+            holdDeposits.set(true);
+            Thread depositor = new Thread(() -> service.deposit(accountId, bd("25.00"), "Paycheck"));
+            depositor.start();
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (account.getBalance().signum() == 0 && System.nanoTime() < deadline) {
+                Thread.onSpinWait();
+            }
+            service.withdraw(accountId, bd("25.00"), "Spend the paycheck");
+            spent.countDown();
+            depositor.join();
+        }
+
+        //a crash can cut the journal after any record: no prefix may hold the withdrawal without the deposit
+        Path segment = dir.resolve("journal-000000.log");
+        byte[] journal = Files.readAllBytes(segment);
+        List<Integer> recordEnds = new ArrayList<>();
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(segment))) {
+            int end = 0;
+            while (end < journal.length) {
+                int length = in.readInt();
+                in.skipNBytes(length + 4L); //body and checksum
+                end += length + 8;
+                recordEnds.add(end);
+            }
+        }
+        for (int end : recordEnds) {
+            Path prefix = Files.createTempDirectory("journal");
+            Files.write(prefix.resolve("journal-000000.log"), Arrays.copyOf(journal, end));
+            try (BankRepository recovered = new BankRepository(clock, businessZone, new Journal(prefix, FsyncPolicy.PER_BATCH))) {
+                Account account = recovered.getAccount(accountId);
+                assertTrue(account == null || account.getBalance().signum() >= 0,
+                           "A journal cut after " + end + " bytes should not replay an overdrawn account");
+            }
+        }
+        try (BankRepository recovered = new BankRepository(clock, businessZone, new Journal(dir, FsyncPolicy.PER_BATCH))) {
+            assertEquals(bd("0.00"), recovered.getAccount(accountId).getBalance(), "The whole journal should replay both postings");
+            assertEquals(2, recovered.getTransactionsByAccount(accountId).size());
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package com.example.bank;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.Test;
+
+import com.example.bank.domain.Account;
+import com.example.bank.domain.AccountType;
+import com.example.bank.repository.BankRepository;
+import com.example.bank.repository.FsyncPolicy;
+import com.example.bank.repository.Journal;
+import com.example.bank.repository.LedgerBucket;
+import com.example.bank.repository.LedgerRollup;
+import com.example.bank.service.AccountService;
+import com.example.bank.service.PaymentService;
+import com.example.bank.service.ReportService;
+import com.example.bank.service.TransferService;
+
+public class LedgerSetup extends TestSetup {
+    @Test
+    public void businessDateFollowsTheInjectedClock() {
+        Account a = repo.addAccount(alice.getId(), AccountType.CHECKING, bd("0.00"));
+        Clock lateEvening = Clock.fixed(Instant.parse("2023-03-01T03:00:00Z"), ZoneId.of("UTC"));
+        new AccountService(repo, lateEvening, businessZone).deposit(a.getId(), bd("5.00"), "Night deposit");
+        assertEquals(LocalDate.of(2023, 2, 28), repo.getTransactionsByAccount(a.getId()).get(0).getBusinessDate(),
+                     "Business date should come from the clock in the business zone");
+    }
+
+    @Test
+    public void closingADayFreezesItsRollup() {
+        Clock today = Clock.fixed(Instant.parse("2023-01-03T15:00:00Z"), ZoneId.of("UTC"));
+        Clock dayOne = Clock.fixed(Instant.parse("2023-01-01T15:00:00Z"), ZoneId.of("UTC"));
+        Clock dayTwo = Clock.fixed(Instant.parse("2023-01-02T15:00:00Z"), ZoneId.of("UTC"));
+        BankRepository ledger = new BankRepository(today, businessZone);
+        var carol = ledger.addCustomer("Carol", "carol@email.com");
+        Account checking = ledger.addAccount(carol.getId(), AccountType.CHECKING, bd("0.00"));
+        Account savings = ledger.addAccount(carol.getId(), AccountType.SAVINGS, bd("0.00"));
+
+        new AccountService(ledger, dayOne, businessZone).deposit(checking.getId(), bd("100.00"), "Paycheck");
+        new TransferService(ledger, dayOne, businessZone).transfer(checking.getId(), savings.getId(), bd("30.00"), "Save");
+        new PaymentService(ledger, dayOne, businessZone).pay(checking.getId(), bd("12.50"), "Lunch");
+        new AccountService(ledger, dayTwo, businessZone).withdraw(checking.getId(), bd("7.50"), "Cash");
+
+        LocalDate first = LocalDate.of(2023, 1, 1);
+        LedgerRollup closed = ledger.closeBusinessDay(first);
+        assertTrue(ledger.isBusinessDayClosed(first), "The day should be closed");
+        assertEquals(3L, closed.postingCount(), "The rollup should count the day's postings");
+        assertEquals(bd("100.00"), closed.total(checking.getId(), LedgerBucket.DEPOSITS), "Deposits should be totalled per account");
+        assertEquals(bd("30.00"), closed.total(checking.getId(), LedgerBucket.TRANSFERS_OUT), "Transfers out should be totalled");
+        assertEquals(bd("30.00"), closed.total(savings.getId(), LedgerBucket.TRANSFERS_IN), "Transfers in should be totalled");
+        assertEquals(bd("12.50"), closed.total(AccountType.CHECKING, LedgerBucket.PAYMENTS), "Payments should be totalled per account type");
+        assertEquals(bd("0.00"), closed.total(checking.getId(), LedgerBucket.WITHDRAWALS), "The next day's posting is not part of the rollup");
+
+        assertThrows(IllegalStateException.class,
+                     () -> new PaymentService(ledger, dayOne, businessZone).pay(savings.getId(), bd("1.00"), "Late"),
+                     "Postings dated on a closed day should be rejected");
+        assertEquals(bd("30.00"), ledger.getAccount(savings.getId()).getBalance(), "A rejected posting should not move money");
+        assertThrows(IllegalStateException.class, () -> ledger.closeBusinessDay(first), "A day closes once");
+        assertThrows(IllegalArgumentException.class, () -> ledger.closeBusinessDay(LocalDate.of(2023, 1, 3)), "Today cannot be closed");
+
+        ReportService reports = new ReportService(ledger);
+        assertEquals(bd("7.50"), reports.dailyRollup(LocalDate.of(2023, 1, 2)).total(AccountType.CHECKING, LedgerBucket.WITHDRAWALS),
+                     "Open days should report their running totals");
+        LedgerRollup january = reports.monthlyRollup(YearMonth.of(2023, 1));
+        assertEquals(4L, january.postingCount(), "The month should merge its days");
+        assertEquals(bd("100.00"), january.total(AccountType.CHECKING, LedgerBucket.DEPOSITS), "Monthly totals should include closed days");
+    }
+
+    @Test
+    public void postingsRacingACloseAreEitherRolledUpOrRejected() throws Exception {
+        Clock today = Clock.fixed(Instant.parse("2023-01-03T15:00:00Z"), ZoneId.of("UTC"));
+        Clock dayOne = Clock.fixed(Instant.parse("2023-01-01T15:00:00Z"), ZoneId.of("UTC"));
+        BankRepository ledger = new BankRepository(today, businessZone);
+        var carol = ledger.addCustomer("Carol", "carol@email.com");
+        Account checking = ledger.addAccount(carol.getId(), AccountType.CHECKING, bd("0.00"));
+        AccountService deposits = new AccountService(ledger, dayOne, businessZone);
+
+        AtomicInteger accepted = new AtomicInteger();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread[] writers = new Thread[4];
+        for (int t = 0; t < writers.length; t++) {
+            writers[t] = new Thread(() -> {
+                for (int i = 0; i < 500; i++) {
+                    try {
+                        deposits.deposit(checking.getId(), bd("1.00"), "Racing");
+                        accepted.incrementAndGet();
+                    } catch (IllegalStateException closed) {
+                        return; //the day closed under us
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                        return;
+                    }
+                }
+            });
+            writers[t].start();
+        }
+        Thread.sleep(5);
+        LedgerRollup closed = ledger.closeBusinessDay(LocalDate.of(2023, 1, 1));
+        for (Thread writer : writers) {
+            writer.join();
+        }
+
+        assertEquals(null, failure.get(), "Writers should only see the day close");
+        assertEquals(accepted.get(), closed.postingCount(), "Every accepted posting should be in the rollup");
+        assertEquals(bd(accepted.get() + ".00"), ledger.getAccount(checking.getId()).getBalance(),
+                     "Money should move only for postings the ledger recorded");
+        assertEquals(accepted.get(), ledger.getTransactionsByAccount(checking.getId()).size(), "History should match the ledger");
+    }
+
+    @Test
+    public void closedDaysSurviveRestartAndCheckpoint() throws IOException {
+        Clock today = Clock.fixed(Instant.parse("2023-01-03T15:00:00Z"), ZoneId.of("UTC"));
+        Clock dayOne = Clock.fixed(Instant.parse("2023-01-01T15:00:00Z"), ZoneId.of("UTC"));
+        LocalDate first = LocalDate.of(2023, 1, 1);
+        Path dir = Files.createTempDirectory("journal");
+        UUID accountId;
+        try (BankRepository durable = new BankRepository(today, businessZone, new Journal(dir, FsyncPolicy.PER_BATCH))) {
+            var carol = durable.addCustomer("Carol", "carol@email.com");
+            accountId = durable.addAccount(carol.getId(), AccountType.CHECKING, bd("0.00")).getId();
+            new AccountService(durable, dayOne, businessZone).deposit(accountId, bd("40.00"), "Paycheck");
+            durable.closeBusinessDay(first);
+        }
+
+        try (BankRepository recovered = new BankRepository(today, businessZone, new Journal(dir, FsyncPolicy.PER_BATCH))) {
+            assertTrue(recovered.isBusinessDayClosed(first), "A close should be replayed from the journal");
+            assertEquals(bd("40.00"), new ReportService(recovered).dailyRollup(first).total(accountId, LedgerBucket.DEPOSITS),
+                         "The replayed rollup should hold the day's postings");
+            assertThrows(IllegalStateException.class,
+                         () -> new AccountService(recovered, dayOne, businessZone).deposit(accountId, bd("1.00"), "Late"),
+                         "A replayed close should still reject postings");
+            recovered.checkpoint();
+        }
+        try (BankRepository recovered = new BankRepository(today, businessZone, new Journal(dir, FsyncPolicy.PER_BATCH))) {
+            assertTrue(recovered.isBusinessDayClosed(first), "A close should survive a checkpoint");
+            assertEquals(bd("40.00"), recovered.getAccount(accountId).getBalance(), "The rejected posting should not have moved money");
+        }
+    }
+}
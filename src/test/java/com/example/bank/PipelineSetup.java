@@ -0,0 +1,129 @@
+package com.example.bank;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.junit.jupiter.api.Test;
+
+import com.example.bank.domain.Account;
+import com.example.bank.domain.AccountType;
+import com.example.bank.domain.Money;
+import com.example.bank.domain.Transaction;
+import com.example.bank.domain.TransactionType;
+import com.example.bank.repository.BankRepository;
+import com.example.bank.repository.FsyncPolicy;
+import com.example.bank.repository.Journal;
+import com.example.bank.repository.PostingPipeline;
+import com.example.bank.service.AccountService;
+import com.example.bank.service.PaymentService;
+import com.example.bank.service.TransferService;
+
+public class PipelineSetup extends TestSetup {
+    @Test
+    public void pipelinedPostingsApplyInSequence() throws InterruptedException {
+        //a tiny ring keeps publishers waiting on the completion stage as well
+        PostingPipeline pipeline = new PostingPipeline(8);
+        BankRepository pipelined = new BankRepository(clock, businessZone, null, pipeline);
+        var carol = pipelined.addCustomer("Carol", "carol@email.com");
+        List<UUID> ids = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            ids.add(pipelined.addAccount(carol.getId(), AccountType.CHECKING, bd("50.00")).getId());
+        }
+        TransferService transfers = new TransferService(pipelined, clock, businessZone);
+        AccountService accounts = new AccountService(pipelined, clock, businessZone);
+        List<Thread> writers = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            writers.add(new Thread(() -> {
+                for (int i = 0; i < 500; i++) {
+                    UUID from = ids.get(ThreadLocalRandom.current().nextInt(ids.size()));
+                    UUID to = ids.get(ThreadLocalRandom.current().nextInt(ids.size()));
+                    try {
+                        if (from.equals(to)) {
+                            accounts.withdraw(to, bd("1.00"), "Fee");
+                        } else {
+                            transfers.transfer(from, to, bd("7.00"), "Shuffle");
+                        }
+                    } catch (IllegalArgumentException insufficientFunds) {
+                        //expected now and then
+                    }
+                }
+            }));
+        }
+        writers.forEach(Thread::start);
+        for (int i = 0; i < 200; i++) {
+            //run on the business thread, a read sees balances and history at the same point in the sequence
+            Money total = pipelined.readConsistent(() -> {
+                Money balances = pipelined.getAllAccounts().stream().map(Account::getBalanceMoney).reduce(Money.ZERO, Money::plus);
+                Money fees = pipelined.getAllTransactions().stream()
+                    .filter(tx -> tx.getType() == TransactionType.WITHDRAWAL)
+                    .map(Transaction::getAmountMoney).reduce(Money.ZERO, Money::plus);
+                return balances.plus(fees);
+            });
+            assertEquals(Money.parse("300.00"), total, "Reads sequenced between postings should balance");
+        }
+        for (Thread writer : writers) {
+            writer.join();
+        }
+
+        for (UUID id : ids) {
+            Account account = pipelined.getAccount(id);
+            long net = pipelined.getTransactionsByAccount(id).stream()
+                .mapToLong(tx -> id.equals(tx.getToAccountId()) ? tx.getAmountMoney().minorUnits() : -tx.getAmountMoney().minorUnits())
+                .sum();
+            assertEquals(Money.ofMinor(net), account.getBalanceMoney(), "Every applied command should be recorded");
+        }
+        pipelined.close();
+        assertThrows(IllegalStateException.class, () -> pipeline.submit(() -> 1), "A closed pipeline rejects commands");
+    }
+
+    @Test
+    public void pipelinedCommandsCompleteOnceDurable() throws IOException {
+        Path dir = Files.createTempDirectory("journal");
+        UUID accountId;
+        try (BankRepository pipelined = new BankRepository(clock, businessZone,
+                new Journal(dir, FsyncPolicy.PER_BATCH), new PostingPipeline(16))) {
+            var carol = pipelined.addCustomer("Carol", "carol@email.com");
+            accountId = pipelined.addAccount(carol.getId(), AccountType.CHECKING, bd("10.00")).getId();
+            new PaymentService(pipelined, clock, businessZone).pay(accountId, bd("4.00"), "Lunch");
+            assertThrows(IllegalArgumentException.class,
+                         () -> new PaymentService(pipelined, clock, businessZone).pay(accountId, bd("40.00"), "Too much"),
+                         "Command failures should reach the caller unchanged");
+        }
+        try (BankRepository recovered = new BankRepository(clock, businessZone, new Journal(dir, FsyncPolicy.PER_BATCH))) {
+            assertEquals(Money.parse("6.00"), recovered.getAccount(accountId).getBalanceMoney());
+            assertTrue(recovered.getTransactionsByAccount(accountId).size() == 2, "Both postings should be journaled");
+        }
+    }
+
+    @Test
+    public void accountOpeningsAreSequencedWithReads() throws InterruptedException {
+        BankRepository pipelined = new BankRepository(clock, businessZone, null, new PostingPipeline(8));
+        var carol = pipelined.addCustomer("Carol", "carol@email.com");
+        Thread opener = new Thread(() -> {
+            for (int i = 0; i < 500; i++) {
+                pipelined.addAccount(carol.getId(), AccountType.CHECKING, bd("10.00"));
+            }
+        });
+        opener.start();
+        for (int i = 0; i < 300; i++) {
+            boolean whole = pipelined.readConsistent(() -> {
+                long opened = pipelined.getAllAccounts().size();
+                Money balances = pipelined.getAllAccounts().stream().map(Account::getBalanceMoney).reduce(Money.ZERO, Money::plus);
+                return pipelined.getAllTransactions().size() == opened && balances.equals(Money.ofMinor(1_000 * opened));
+            });
+            assertTrue(whole, "A read should see an account together with its opening deposit, or neither");
+        }
+        opener.join();
+        assertEquals(Money.parse("5000.00"), pipelined.getBalanceTotals().total());
+        pipelined.close();
+    }
+}
@@ -0,0 +1,275 @@
+package com.example.bank;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+
+import com.example.bank.domain.Account;
+import com.example.bank.domain.AccountType;
+import com.example.bank.domain.Customer;
+import com.example.bank.domain.Money;
+import com.example.bank.domain.Transaction;
+import com.example.bank.domain.TransactionType;
+import com.example.bank.repository.BalanceTotals;
+import com.example.bank.repository.BankRepository;
+import com.example.bank.repository.FsyncPolicy;
+import com.example.bank.repository.Journal;
+import com.example.bank.repository.ShardRouter;
+import com.example.bank.repository.TransactionRates;
+import com.example.bank.service.AccountService;
+import com.example.bank.service.BankReport;
+import com.example.bank.service.BulkPosting;
+import com.example.bank.service.BulkPostingService;
+import com.example.bank.service.ReportDefinition;
+import com.example.bank.service.ReportResults;
+import com.example.bank.service.ReportService;
+import com.example.bank.service.TransferRequest;
+import com.example.bank.service.TransferService;
+
+public class ReportSetup extends TestSetup {
+    @Test
+    public void aggregatesFollowEveryPosting() {
+        Account aliceChecking = repo.addAccount(alice.getId(), AccountType.CHECKING, bd("100.00"));
+        Account aliceSavings = repo.addAccount(alice.getId(), AccountType.SAVINGS, bd("0.00"));
+        Account bobChecking = repo.addAccount(bob.getId(), AccountType.CHECKING, bd("20.00"));
+
+        accountService.deposit(bobChecking.getId(), bd("5.00"), "Cash");
+        accountService.withdraw(aliceChecking.getId(), bd("10.00"), "ATM");
+        paymentService.pay(bobChecking.getId(), bd("3.00"), "Coffee");
+        transferService.transfer(aliceChecking.getId(), aliceSavings.getId(), bd("40.00"), "Save");
+        transferService.transfer(aliceChecking.getId(), bobChecking.getId(), bd("7.00"), "Lunch");
+        transferService.transferBatch(List.of(
+            new TransferRequest(bobChecking.getId(), aliceSavings.getId(), Money.parse("1.00"), "Pay back"),
+            new TransferRequest(aliceSavings.getId(), bobChecking.getId(), Money.parse("2.00"), "Gift")));
+        new BulkPostingService(repo, clock, businessZone).post(List.of(
+            BulkPosting.deposit(aliceSavings.getId(), Money.parse("0.50"), "Interest"),
+            BulkPosting.payment(bobChecking.getId(), Money.parse("1000.00"), "Bounced")));
+
+        BalanceTotals totals = repo.getBalanceTotals();
+        assertEquals(Money.parse("112.50"), totals.total());
+        assertEquals(aliceChecking.getBalanceMoney().plus(aliceSavings.getBalanceMoney()), totals.customer(alice.getId()));
+        assertEquals(bobChecking.getBalanceMoney(), totals.customer(bob.getId()));
+        assertEquals(aliceChecking.getBalanceMoney().plus(bobChecking.getBalanceMoney()), totals.accountType(AccountType.CHECKING));
+        assertEquals(aliceSavings.getBalanceMoney(), totals.accountType(AccountType.SAVINGS));
+
+        BankReport report = reportService.generateBankReport(1, Duration.ofDays(1));
+        assertEquals(bd("112.50"), report.totalBalance());
+        assertEquals(Map.of(alice, bd("82.50"), bob, bd("30.00")), report.balanceByCustomer());
+        assertEquals(List.of(aliceChecking), report.topAccountsByBalance());
+        assertEquals(bd("39.50"), reportService.balanceByAccountType().get(AccountType.SAVINGS));
+    }
+
+    @Test
+    public void recoveredAggregatesMatchTheBalances() throws IOException {
+        Path dir = Files.createTempDirectory("journal");
+        try (BankRepository durable = new BankRepository(clock, businessZone, new Journal(dir, FsyncPolicy.PER_BATCH))) {
+            Customer carol = durable.addCustomer("Carol", "carol@email.com");
+            Account checking = durable.addAccount(carol.getId(), AccountType.CHECKING, bd("100.00"));
+            durable.addAccount(carol.getId(), AccountType.SAVINGS, bd("0.00"));
+            new AccountService(durable, clock, businessZone).withdraw(checking.getId(), bd("30.00"), "Rent");
+        }
+        try (BankRepository recovered = new BankRepository(clock, businessZone, new Journal(dir, FsyncPolicy.PER_BATCH))) {
+            BalanceTotals totals = recovered.getBalanceTotals();
+            assertEquals(Money.parse("70.00"), totals.total(), "Replayed postings should not be counted twice");
+            assertEquals(Money.parse("70.00"), totals.accountType(AccountType.CHECKING));
+            assertEquals(BigDecimal.ZERO.setScale(2), totals.accountType(AccountType.SAVINGS).toBigDecimal());
+        }
+    }
+
+    @Test
+    public void balanceIndexAnswersRankingsLive() throws InterruptedException {
+        BankRepository sharded = new BankRepository(clock, businessZone, null, new ShardRouter(3));
+        Customer carol = sharded.addCustomer("Carol", "carol@email.com");
+        List<Account> accounts = new ArrayList<>();
+        for (int i = 0; i < 12; i++) {
+            accounts.add(sharded.addAccount(carol.getId(), AccountType.CHECKING, new BigDecimal(i * 10).setScale(2)));
+        }
+        TransferService transfers = new TransferService(sharded, clock, businessZone);
+        List<Thread> writers = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            writers.add(new Thread(() -> {
+                for (int i = 0; i < 300; i++) {
+                    Account from = accounts.get(ThreadLocalRandom.current().nextInt(accounts.size()));
+                    Account to = accounts.get(ThreadLocalRandom.current().nextInt(accounts.size()));
+                    if (from != to) {
+                        try {
+                            transfers.transfer(from.getId(), to.getId(), bd("3.00"), "Shuffle");
+                        } catch (IllegalArgumentException insufficientFunds) {
+                            //expected now and then
+                        }
+                    }
+                }
+            }));
+        }
+        writers.forEach(Thread::start);
+        for (Thread writer : writers) {
+            writer.join();
+        }
+
+        Comparator<Account> byBalance = Comparator.comparing(Account::getBalanceMoney);
+        List<Account> sorted = accounts.stream().sorted(byBalance).toList();
+        assertEquals(sorted.subList(9, 12).stream().map(Account::getBalanceMoney).toList().reversed(),
+                     sharded.getTopAccounts(3).stream().map(Account::getBalanceMoney).toList(),
+                     "Every leg, cross-shard credits included, should be reflected in the index");
+        assertEquals(sorted.subList(0, 2).stream().map(Account::getBalanceMoney).toList(),
+                     sharded.getBottomAccounts(2).stream().map(Account::getBalanceMoney).toList());
+        Money threshold = sorted.get(5).getBalanceMoney();
+        List<Account> below = sharded.getAccountsBelow(threshold);
+        assertEquals(accounts.stream().filter(a -> a.getBalanceMoney().compareTo(threshold) < 0).count(), below.size());
+        assertTrue(below.stream().allMatch(a -> a.getBalanceMoney().compareTo(threshold) < 0), "Only accounts under the threshold");
+        assertEquals(12, sharded.getTopAccounts(100).size(), "Each account appears once");
+        sharded.close();
+    }
+
+    @Test
+    public void rateCountersSlideWithTheInjectedClock() {
+        Account checking = repo.addAccount(alice.getId(), AccountType.CHECKING, bd("0.00"));
+        Account savings = repo.addAccount(bob.getId(), AccountType.SAVINGS, bd("0.00"));
+        Instant now = clock.instant();
+        for (Duration ago : List.of(Duration.ofDays(3), Duration.ofHours(2), Duration.ofSeconds(90), Duration.ofSeconds(10))) {
+            Clock then = Clock.fixed(now.minus(ago), ZoneId.of("UTC"));
+            new AccountService(repo, then, businessZone).deposit(checking.getId(), bd("10.00"), "Deposit");
+            new TransferService(repo, then, businessZone).transfer(checking.getId(), savings.getId(), bd("4.00"), "Save");
+        }
+
+        TransactionRates lastMinute = repo.getTransactionRates(Duration.ofSeconds(30));
+        assertEquals(2, lastMinute.count());
+        assertEquals(1, lastMinute.count(TransactionType.TRANSFER));
+        assertEquals(Money.parse("14.00"), lastMinute.amount());
+        assertEquals(2, lastMinute.legs(AccountType.CHECKING), "A transfer counts on both of its legs");
+        assertEquals(Money.parse("4.00"), lastMinute.amount(AccountType.SAVINGS));
+
+        assertEquals(4, repo.getTransactionRates(Duration.ofMinutes(5)).count());
+        assertEquals(6, repo.getTransactionRates(Duration.ofDays(1)).count());
+        assertEquals(Money.parse("40.00"), repo.getTransactionRates(Duration.ofDays(7)).amount(TransactionType.DEPOSIT));
+        assertEquals(6, reportService.generateBankReport(1, Duration.ofDays(1)).recentTransactionCount(),
+                     "The report should count by the repository's clock, not the wall clock");
+        assertThrows(IllegalArgumentException.class, () -> repo.getTransactionRates(Duration.ofDays(1000)));
+        assertEquals(8, reportService.generateBankReport(1, Duration.ofDays(1000)).recentTransactionCount(),
+                     "Lookbacks longer than the counters keep should be counted over the store");
+    }
+
+    @Test
+    public void fusedDefinitionsShareOnePass() {
+        Account checking = repo.addAccount(alice.getId(), AccountType.CHECKING, bd("0.00"));
+        Account savings = repo.addAccount(alice.getId(), AccountType.SAVINGS, bd("0.00"));
+        Account bobChecking = repo.addAccount(bob.getId(), AccountType.CHECKING, bd("50.00"));
+        List<BulkPosting> postings = new ArrayList<>();
+        for (int i = 0; i < 20_000; i++) {
+            postings.add(BulkPosting.deposit(checking.getId(), Money.parse("1.00"), "Salary"));
+        }
+        new BulkPostingService(repo, clock, businessZone).post(postings);
+        for (int i = 0; i < 500; i++) {
+            transferService.transfer(checking.getId(), savings.getId(), bd("2.00"), "Save");
+        }
+
+        ReportDefinition<Transaction, Map<TransactionType, Long>> countByType =
+            ReportDefinition.transactionsByType("count by type", Collectors.counting());
+        ReportDefinition<Transaction, Map<LocalDate, Money>> amountByDate =
+            ReportDefinition.transactionsByBusinessDate("amount by date", ReportDefinition.amounts());
+        ReportDefinition<Transaction, List<Transaction>> history =
+            ReportDefinition.transactions("history", Collectors.toList());
+        ReportDefinition<Account, Map<UUID, Money>> byCustomer =
+            ReportDefinition.accountsByCustomer("balance by customer", ReportDefinition.balances());
+        ReportDefinition<Account, Map<AccountType, Long>> accountsByType =
+            ReportDefinition.accountsByType("accounts by type", Collectors.counting());
+        ReportResults results = reportService.run(List.of(countByType, amountByDate, history, byCustomer, accountsByType));
+
+        assertEquals(5, results.size());
+        assertEquals(Map.of(TransactionType.DEPOSIT, 20_001L, TransactionType.TRANSFER, 500L), results.get(countByType));
+        assertEquals(Map.of(LocalDate.now(clock.withZone(businessZone)), Money.parse("21050.00")), results.get(amountByDate));
+        List<Transaction> ordered = results.get(history);
+        assertEquals(20_501, ordered.size(), "The opening deposit is a posting too");
+        assertTrue(ordered.getFirst().getType() == TransactionType.DEPOSIT && ordered.getLast().getType() == TransactionType.TRANSFER,
+                   "Pieces should be combined in posting order");
+        assertEquals(repo.getBalanceTotals().byCustomer(), results.get(byCustomer));
+        assertEquals(Map.of(AccountType.CHECKING, 2L, AccountType.SAVINGS, 1L), results.get(accountsByType));
+
+        ReportDefinition<Account, Long> other = ReportDefinition.accounts("not run", Collectors.counting());
+        assertThrows(IllegalArgumentException.class, () -> results.get(other));
+        assertThrows(IllegalArgumentException.class, () -> reportService.run(List.of()));
+    }
+
+    @Test
+    public void cachedReportsFollowTheRepositoryVersion() throws InterruptedException {
+        Account checking = repo.addAccount(alice.getId(), AccountType.CHECKING, bd("100.00"));
+        MutableClock cacheClock = new MutableClock(clock.instant());
+        try (ReportService cached = new ReportService(repo, cacheClock, Duration.ofSeconds(5), 2)) {
+            BankReport first = cached.generateBankReport(5, Duration.ofDays(30));
+            assertSame(first, cached.generateBankReport(5, Duration.ofDays(30)), "Unchanged book: served from the cache");
+            assertNotSame(first, cached.generateBankReport(3, Duration.ofDays(30)), "Parameters are part of the key");
+
+            long version = repo.getVersion();
+            accountService.deposit(checking.getId(), bd("25.00"), "Cash");
+            assertTrue(repo.getVersion() > version, "Every posting bumps the version");
+            assertSame(first, cached.generateBankReport(5, Duration.ofDays(30)), "Stale but within tolerance: served at once");
+            BankReport refreshed = first;
+            for (int i = 0; i < 500 && refreshed == first; i++) {
+                Thread.sleep(10);
+                refreshed = cached.generateBankReport(5, Duration.ofDays(30));
+            }
+            assertEquals(bd("125.00"), refreshed.totalBalance(), "The background refresh replaces the stale entry");
+
+            accountService.withdraw(checking.getId(), bd("5.00"), "ATM");
+            cacheClock.advance(Duration.ofSeconds(6));
+            assertEquals(bd("120.00"), cached.generateBankReport(5, Duration.ofDays(30)).totalBalance(),
+                         "Past the tolerance a stale entry is recomputed inline");
+
+            cached.generateBankReport(1, Duration.ofDays(1));
+            BankReport evicted = cached.generateBankReport(3, Duration.ofDays(30));
+            cached.generateBankReport(1, Duration.ofDays(1));
+            cached.generateBankReport(2, Duration.ofDays(1)); //third key: evicts the least recently used
+            assertNotSame(evicted, cached.generateBankReport(3, Duration.ofDays(30)));
+        }
+        assertThrows(IllegalArgumentException.class, () -> new ReportService(repo, clock, Duration.ofSeconds(-1), 10));
+        assertThrows(IllegalArgumentException.class, () -> new ReportService(repo, clock, Duration.ZERO, 0));
+    }
+
+    private static final class MutableClock extends Clock {
+        private volatile Instant now;
+
+        MutableClock(Instant now) {
+            this.now = now;
+        }
+
+        void advance(Duration by) {
+            now = now.plus(by);
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneId.of("UTC");
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+    }
+}
@@ -0,0 +1,291 @@
+package com.example.bank;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.junit.jupiter.api.Test;
+
+import com.example.bank.domain.Account;
+import com.example.bank.domain.AccountType;
+import com.example.bank.domain.Money;
+import com.example.bank.domain.Transaction;
+import com.example.bank.domain.TransactionType;
+import com.example.bank.repository.BankRepository;
+import com.example.bank.repository.ConsistentReadStats;
+import com.example.bank.repository.ScanDirection;
+import com.example.bank.repository.ShardRouter;
+import com.example.bank.repository.TransactionFilter;
+import com.example.bank.repository.TransactionPage;
+import com.example.bank.service.AccountService;
+import com.example.bank.service.PaymentService;
+import com.example.bank.service.TransferRequest;
+import com.example.bank.service.TransferService;
+
+public class ShardSetup extends TestSetup {
+    @Test
+    public void crossShardTransfersConserveMoney() throws InterruptedException {
+        ShardRouter router = new ShardRouter(4);
+        BankRepository sharded = new BankRepository(clock, businessZone, null, router);
+        var carol = sharded.addCustomer("Carol", "carol@email.com");
+        List<UUID> ids = new ArrayList<>();
+        for (int i = 0; i < 16; i++) {
+            ids.add(sharded.addAccount(carol.getId(), AccountType.CHECKING, bd("1000.00")).getId());
+        }
+        assertTrue(ids.stream().map(router::shardOf).distinct().count() > 1, "Accounts should spread over shards");
+
+        TransferService transfers = new TransferService(sharded, clock, businessZone);
+        ExecutorService clients = Executors.newFixedThreadPool(8);
+        for (int t = 0; t < 8; t++) {
+            clients.submit(() -> {
+                for (int i = 0; i < 500; i++) {
+                    UUID from = ids.get(ThreadLocalRandom.current().nextInt(ids.size()));
+                    UUID to = ids.get(ThreadLocalRandom.current().nextInt(ids.size()));
+                    if (!from.equals(to)) {
+                        try {
+                            transfers.transfer(from, to, bd("3.00"), "Shuffle");
+                        } catch (IllegalArgumentException insufficientFunds) {
+                            //expected now and then
+                        }
+                    }
+                }
+            });
+        }
+        clients.shutdown();
+        assertTrue(clients.awaitTermination(30, TimeUnit.SECONDS), "Transfers should finish");
+
+        BigDecimal total = sharded.getAllAccounts().stream().map(Account::getBalance).reduce(BigDecimal.ZERO, BigDecimal::add);
+        assertEquals(bd("16000.00"), total, "Transfers should neither create nor destroy money");
+        long postings = sharded.getAllTransactions().size();
+        long legs = ids.stream().mapToLong(id -> sharded.getTransactionsByAccount(id).size()).sum();
+        assertEquals(2 * postings - 16, legs, "Every transfer should be indexed on both legs, initial deposits on one");
+        sharded.close();
+    }
+
+    @Test
+    public void shardedServicesReportErrorsToTheCaller() {
+        BankRepository sharded = new BankRepository(clock, businessZone, null, new ShardRouter(2));
+        var carol = sharded.addCustomer("Carol", "carol@email.com");
+        Account a = sharded.addAccount(carol.getId(), AccountType.CHECKING, bd("10.00"));
+        new AccountService(sharded, clock, businessZone).deposit(a.getId(), bd("5.00"), "Top up");
+        assertThrows(IllegalArgumentException.class,
+                     () -> new PaymentService(sharded, clock, businessZone).pay(a.getId(), bd("50.00"), "Too much"),
+                     "Shard tasks should surface their exceptions unchanged");
+        assertEquals(bd("15.00"), sharded.getAccount(a.getId()).getBalance(), "A failed payment should not move money");
+        assertEquals(2, sharded.getRecentTransactions(10).size(), "Recent history should merge the shards");
+        sharded.close();
+    }
+
+    @Test
+    public void balanceSnapshotsNeverSeeTransfersInFlight() throws InterruptedException {
+        BankRepository sharded = new BankRepository(clock, businessZone, null, new ShardRouter(4));
+        var carol = sharded.addCustomer("Carol", "carol@email.com");
+        List<UUID> ids = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            ids.add(sharded.addAccount(carol.getId(), AccountType.CHECKING, bd("100.00")).getId());
+        }
+        TransferService transfers = new TransferService(sharded, clock, businessZone);
+        AtomicBoolean done = new AtomicBoolean();
+        List<Thread> writers = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            writers.add(new Thread(() -> {
+                while (!done.get()) {
+                    UUID from = ids.get(ThreadLocalRandom.current().nextInt(ids.size()));
+                    UUID to = ids.get(ThreadLocalRandom.current().nextInt(ids.size()));
+                    if (!from.equals(to)) {
+                        try {
+                            transfers.transfer(from, to, bd("0.50"), "Shuffle");
+                        } catch (IllegalArgumentException insufficientFunds) {
+                            //expected now and then
+                        }
+                    }
+                }
+            }));
+        }
+        writers.forEach(Thread::start);
+        try {
+            for (int i = 0; i < 2_000; i++) {
+                Money total = sharded.getBalanceSnapshot().values().stream().reduce(Money.ZERO, Money::plus);
+                assertEquals(Money.parse("800.00"), total, "A snapshot should never catch a transfer half done");
+            }
+        } finally {
+            done.set(true);
+            for (Thread writer : writers) {
+                writer.join();
+            }
+            sharded.close();
+        }
+    }
+
+    @Test
+    public void settlementBatchesSpanShards() {
+        ShardRouter router = new ShardRouter(4);
+        BankRepository sharded = new BankRepository(clock, businessZone, null, router);
+        var carol = sharded.addCustomer("Carol", "carol@email.com");
+        List<UUID> ids = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            ids.add(sharded.addAccount(carol.getId(), AccountType.CHECKING, bd("5.00")).getId());
+        }
+        //a ring of 10.00 transfers only works because every account is paid back before the batch settles
+        List<TransferRequest> ring = new ArrayList<>();
+        for (int i = 0; i < ids.size(); i++) {
+            ring.add(new TransferRequest(ids.get(i), ids.get((i + 1) % ids.size()), Money.parse("10.00"), "Ring"));
+        }
+        new TransferService(sharded, clock, businessZone).transferBatch(ring);
+
+        for (UUID id : ids) {
+            assertEquals(Money.parse("5.00"), sharded.getAccount(id).getBalanceMoney(), "A closed ring nets to zero");
+            assertEquals(3, sharded.getTransactionsByAccount(id).size(), "Both legs should be indexed on every shard");
+        }
+        assertEquals(16, sharded.getAllTransactions().size());
+        sharded.close();
+    }
+
+    @Test
+    public void cursorsMergeTheShardsByTimestamp() {
+        ShardRouter router = new ShardRouter(4);
+        BankRepository sharded = new BankRepository(clock, businessZone, null, router);
+        var carol = sharded.addCustomer("Carol", "carol@email.com");
+        List<UUID> ids = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            ids.add(sharded.addAccount(carol.getId(), AccountType.CHECKING, bd("0.00")).getId());
+        }
+        assertTrue(ids.stream().map(router::shardOf).distinct().count() > 1, "Accounts should spread over shards");
+        Instant start = Instant.parse("2023-02-01T00:00:00Z");
+        for (int i = 0; i < 3_000; i++) {
+            UUID target = ids.get(ThreadLocalRandom.current().nextInt(ids.size()));
+            Transaction tx = new Transaction(UUID.randomUUID(), start.plusSeconds(i), LocalDate.of(2023, 2, 1),
+                                             TransactionType.DEPOSIT, null, target, bd("1.00"), "Tick " + i);
+            sharded.onShard(target, () -> sharded.addTransaction(tx));
+        }
+
+        List<Transaction> forward = sharded.streamTransactions(TransactionFilter.all(), ScanDirection.OLDEST_FIRST).toList();
+        assertEquals(3_000, forward.size());
+        for (int i = 0; i < forward.size(); i++) {
+            assertEquals(start.plusSeconds(i), forward.get(i).getTimestamp(), "Shards should merge into one time order");
+        }
+
+        TransactionFilter window = TransactionFilter.forAccount(ids.get(0)).between(start.plusSeconds(500), start.plusSeconds(2_500));
+        List<Transaction> expected = sharded.getAllTransactions().stream().filter(window::matches).toList();
+        List<Transaction> backward = new ArrayList<>();
+        String token = null;
+        do {
+            TransactionPage page = sharded.getTransactionPage(window, ScanDirection.NEWEST_FIRST, token, 7);
+            backward.addAll(page.items());
+            token = page.nextPageToken();
+            if (backward.size() == 14) {
+                //postings appended mid-scan are after every shard's snapshot point
+                Transaction late = new Transaction(UUID.randomUUID(), start.plusSeconds(2_000), LocalDate.of(2023, 2, 1),
+                                                   TransactionType.DEPOSIT, null, ids.get(0), bd("1.00"), "Late");
+                sharded.onShard(ids.get(0), () -> sharded.addTransaction(late));
+            }
+        } while (token != null);
+        assertEquals(expected, backward, "Pages should resume every shard where the last page left it");
+        assertThrows(IllegalArgumentException.class,
+                     () -> repo.getTransactionPage(window, ScanDirection.NEWEST_FIRST,
+                                                   sharded.getTransactionPage(window, ScanDirection.NEWEST_FIRST, null, 1).nextPageToken(), 1),
+                     "A sharded token should not resume on an unsharded repository");
+        sharded.close();
+    }
+
+    @Test
+    public void writersKeepPostingWhileConsistentReadsRun() throws InterruptedException {
+        List<UUID> ids = new ArrayList<>();
+        for (int i = 0; i < 64; i++) {
+            ids.add(repo.addAccount(alice.getId(), AccountType.CHECKING, bd("100.00")).getId());
+        }
+        AtomicBoolean reading = new AtomicBoolean(true);
+        AtomicLong postedDuringReads = new AtomicLong();
+        List<Thread> writers = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            writers.add(new Thread(() -> {
+                while (reading.get()) {
+                    UUID from = ids.get(ThreadLocalRandom.current().nextInt(ids.size()));
+                    UUID to = ids.get(ThreadLocalRandom.current().nextInt(ids.size()));
+                    if (!from.equals(to)) {
+                        try {
+                            transferService.transfer(from, to, bd("0.25"), "Shuffle");
+                            postedDuringReads.incrementAndGet();
+                        } catch (IllegalArgumentException insufficientFunds) {
+                            //expected now and then
+                        }
+                    }
+                }
+            }));
+        }
+        writers.forEach(Thread::start);
+        int reads = 0;
+        List<Long> progressPerWindow = new ArrayList<>();
+        try {
+            //reads back to back for 10 windows of 50ms; writers should post in every one of them
+            for (int window = 0; window < 10; window++) {
+                long before = postedDuringReads.get();
+                long end = System.nanoTime() + 50_000_000L;
+                while (System.nanoTime() < end) {
+                    Money total = repo.getBalanceSnapshot().values().stream().reduce(Money.ZERO, Money::plus);
+                    assertEquals(Money.parse("6400.00"), total, "Every read should still be a point-in-time cut");
+                    reads++;
+                }
+                progressPerWindow.add(postedDuringReads.get() - before);
+            }
+        } finally {
+            reading.set(false);
+            for (Thread writer : writers) {
+                writer.join();
+            }
+        }
+        assertTrue(progressPerWindow.stream().filter(posted -> posted == 0).count() <= 1,
+                   "Writers should keep completing transfers while reads run back to back: " + progressPerWindow);
+
+        ConsistentReadStats stats = repo.getConsistentReadStats();
+        assertEquals(reads, stats.optimisticReads() + stats.fencedReads(), "Every read is either validated or fenced");
+        assertTrue(stats.longestFence().compareTo(Duration.ofSeconds(2)) < 0, "Fences should be short and bounded");
+    }
+
+    @Test
+    public void aConsistentReadFinishesWhileSlowPostingsKeepOverlapping() throws InterruptedException {
+        Account account = repo.addAccount(alice.getId(), AccountType.CHECKING, bd("100.00"));
+        AtomicBoolean reading = new AtomicBoolean(true);
+        List<Thread> writers = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            writers.add(new Thread(() -> {
+                //each posting stays in flight for 5ms, far past the fence's drain budget, and they overlap
+                while (reading.get()) {
+                    repo.post(account.getId(), () -> {
+                        LockSupport.parkNanos(5_000_000L);
+                        return 0L;
+                    });
+                }
+            }));
+        }
+        writers.forEach(Thread::start);
+        long started = System.nanoTime();
+        try {
+            for (int i = 0; i < 20; i++) {
+                assertEquals(Money.parse("100.00"), repo.readConsistent(account::getBalanceMoney));
+            }
+        } finally {
+            reading.set(false);
+            for (Thread writer : writers) {
+                writer.join();
+            }
+        }
+        assertTrue(System.nanoTime() - started < 3_000_000_000L, "Reads should not be starved by overlapping postings");
+        assertTrue(repo.getConsistentReadStats().fencedReads() > 0, "The reads should have needed the fence");
+    }
+}
@@ -34,8 +34,8 @@ public abstract class TestSetup {
 
     @BeforeEach
     public void setup() {
-       Clock clock = Clock.fixed(Instant.parse("2023-01-01T10:00:00Z"), ZoneId.of("UTC"));
-       ZoneId businessZone = ZoneId.of("America/New_York");
+       clock = Clock.fixed(Instant.parse("2023-01-01T10:00:00Z"), ZoneId.of("UTC"));
+       businessZone = ZoneId.of("America/New_York");
 
        repo = new BankRepository(clock, businessZone);
        accountService = new AccountService(repo, clock, businessZone);
@@ -0,0 +1,383 @@
+package com.example.bank;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.junit.jupiter.api.Test;
+
+import com.example.bank.domain.Account;
+import com.example.bank.domain.AccountType;
+import com.example.bank.domain.Transaction;
+import com.example.bank.domain.TransactionType;
+import com.example.bank.repository.BankRepository;
+import com.example.bank.repository.HeapTransactionStore;
+import com.example.bank.repository.OffHeapTransactionStore;
+import com.example.bank.repository.ScanDirection;
+import com.example.bank.repository.TieredTransactionStore;
+import com.example.bank.repository.TransactionFilter;
+import com.example.bank.repository.TransactionPage;
+import com.example.bank.service.AccountService;
+import com.example.bank.service.PaymentService;
+import com.example.bank.service.TransferService;
+
+public class TransactionSetup extends TestSetup {
+    @Test
+    public void accountHistoryCoversBothLegsNewestFirst() {
+        Account a = repo.addAccount(alice.getId(), AccountType.CHECKING, bd("100.00"));
+        Account b = repo.addAccount(bob.getId(), AccountType.SAVINGS, bd("50.00"));
+
+        accountService.deposit(a.getId(), bd("25.00"), "Paycheck");
+        transferService.transfer(a.getId(), b.getId(), bd("40.00"), "Rent");
+        paymentService.pay(b.getId(), bd("10.00"), "Groceries");
+
+        List<Transaction> aHistory = repo.getTransactionsByAccount(a.getId());
+        assertEquals(3, aHistory.size(), "Alice should see initial deposit, deposit and transfer");
+        assertEquals(TransactionType.TRANSFER, aHistory.get(0).getType(), "Newest posting should come first");
+        assertEquals(TransactionType.DEPOSIT, aHistory.get(2).getType(), "Initial deposit should come last");
+
+        List<Transaction> bHistory = repo.getTransactionsByAccount(b.getId());
+        assertEquals(3, bHistory.size(), "Bob should see initial deposit, incoming transfer and payment");
+        assertEquals(TransactionType.PAYMENT, bHistory.get(0).getType(), "Newest posting should come first");
+        assertEquals(TransactionType.TRANSFER, bHistory.get(1).getType(), "Incoming transfer leg should be indexed");
+    }
+
+    @Test
+    public void concurrentDepositsAreAllIndexed() throws InterruptedException {
+        Account a = repo.addAccount(alice.getId(), AccountType.CHECKING, bd("0.00"));
+
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < 250; i++) {
+                    accountService.deposit(a.getId(), bd("1.00"), "Deposit");
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(2000, repo.getTransactionsByAccount(a.getId()).size(), "Every deposit should be indexed");
+        assertEquals(bd("2000.00"), a.getBalance(), "Balance should reflect every deposit");
+        assertTrue(repo.getTransactionsByAccount(UUID.randomUUID()).isEmpty(), "Unknown account has no history");
+    }
+
+    @Test
+    public void timeRangeQueriesSpanSegments() {
+        Account a = repo.addAccount(alice.getId(), AccountType.CHECKING, bd("0.00"));
+        Instant start = Instant.parse("2023-02-01T00:00:00Z");
+        for (int i = 0; i < 10_000; i++) {
+            repo.addTransaction(new Transaction(UUID.randomUUID(), start.plusSeconds(i), LocalDate.of(2023, 2, 1),
+                                                TransactionType.DEPOSIT, null, a.getId(), bd("1.00"), "Tick " + i));
+        }
+
+        List<Transaction> since = repo.getTransactionsSince(start.plusSeconds(9_000));
+        assertEquals(999, since.size(), "Only postings strictly after the bound should match");
+        assertEquals(start.plusSeconds(9_999), since.get(0).getTimestamp(), "Newest posting should come first");
+
+        List<Transaction> between = repo.getTransactionsBetween(start.plusSeconds(4_000), start.plusSeconds(4_500));
+        assertEquals(500, between.size(), "Range should be exclusive at the start and inclusive at the end");
+        assertEquals(start.plusSeconds(4_500), between.get(0).getTimestamp(), "Newest posting should come first");
+
+        assertEquals(999, repo.countTransactionsSince(start.plusSeconds(9_000)), "Count should match the since query");
+        assertEquals(10_000, repo.countTransactionsSince(start.minusSeconds(1)), "Every posting is after an earlier bound");
+        assertEquals(5, repo.getRecentTransactions(5).size(), "Recent should honour the limit");
+    }
+
+    @Test
+    public void offHeapStoreAnswersLikeTheHeapStore() {
+        BankRepository offHeap = new BankRepository(clock, businessZone, null, new OffHeapTransactionStore());
+        var carol = offHeap.addCustomer("Carol", "carol@email.com");
+        Account a = offHeap.addAccount(carol.getId(), AccountType.CHECKING, bd("100.00"));
+        Account b = offHeap.addAccount(carol.getId(), AccountType.SAVINGS, bd("0.00"));
+        new AccountService(offHeap, clock, businessZone).deposit(a.getId(), bd("12.34"), "Paycheck");
+        new TransferService(offHeap, clock, businessZone).transfer(a.getId(), b.getId(), bd("40.00"), "Save");
+        new PaymentService(offHeap, clock, businessZone).pay(b.getId(), bd("5.00"), "Coffee");
+
+        List<Transaction> aHistory = offHeap.getTransactionsByAccount(a.getId());
+        assertEquals(3, aHistory.size(), "Both legs should be indexed off-heap");
+        Transaction transfer = aHistory.get(0);
+        assertEquals(TransactionType.TRANSFER, transfer.getType(), "Newest posting should come first");
+        assertEquals(a.getId(), transfer.getFromAccountId(), "From leg should round-trip");
+        assertEquals(b.getId(), transfer.getToAccountId(), "To leg should round-trip");
+        assertEquals(bd("40.00"), transfer.getAmount(), "Amount should round-trip with its scale");
+        assertEquals("Save", transfer.getDescription(), "Description should come back from the dictionary");
+        assertEquals(Instant.now(clock), transfer.getTimestamp(), "Timestamp should round-trip");
+        assertEquals(null, aHistory.get(2).getFromAccountId(), "Missing legs should stay null");
+
+        assertEquals(4, offHeap.getAllTransactions().size(), "Every posting should be stored");
+        assertEquals(4, offHeap.countTransactionsSince(Instant.now(clock).minusSeconds(1)), "Count should see every posting");
+        assertEquals(0, offHeap.getTransactionsSince(Instant.now(clock)).size(), "Since is exclusive");
+        assertEquals(2, offHeap.getRecentTransactions(2).size(), "Recent should honour the limit");
+    }
+
+    @Test
+    public void offHeapStoreKeepsDescriptionsPastTheDictionary() {
+        OffHeapTransactionStore store = new OffHeapTransactionStore();
+        Instant start = Instant.parse("2023-02-01T00:00:00Z");
+        UUID accountId = UUID.randomUUID();
+        int postings = 70_000; //past the dictionary and across a chunk boundary
+        for (int i = 0; i < postings; i++) {
+            store.append(new Transaction(UUID.randomUUID(), start.plusMillis(i), LocalDate.of(2023, 2, 1),
+                                         TransactionType.DEPOSIT, null, accountId, bd("1.00"), "Invoice é #" + i));
+        }
+        store.append(new Transaction(UUID.randomUUID(), start.plusMillis(postings), LocalDate.of(2023, 2, 1),
+                                     TransactionType.DEPOSIT, null, accountId, bd("1.00"), "Invoice é #7"));
+
+        List<Transaction> history = store.byAccount(accountId);
+        assertEquals(postings + 1, history.size(), "Every posting should be indexed");
+        for (int i = 0; i < postings; i++) {
+            assertEquals("Invoice é #" + i, history.get(postings - i).getDescription(), "Description " + i + " should round-trip");
+        }
+        assertEquals("Invoice é #7", history.get(0).getDescription(), "A dictionary description should still be reused");
+    }
+
+    @Test
+    public void concurrentAppendersAllLandAndStayFindableByTime() throws InterruptedException {
+        HeapTransactionStore store = new HeapTransactionStore();
+        Instant start = Instant.parse("2023-02-01T00:00:00Z");
+        UUID accountId = UUID.randomUUID();
+        List<Thread> writers = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            int writer = t;
+            writers.add(new Thread(() -> {
+                for (int i = 0; i < 5_000; i++) {
+                    //writers run at different clock offsets, so later positions can carry earlier timestamps
+                    Transaction tx = new Transaction(UUID.randomUUID(), start.plusMillis(i * 8L + writer * 997L), LocalDate.of(2023, 2, 1),
+                                                     TransactionType.DEPOSIT, null, accountId, bd("1.00"), "Tick");
+                    if (i % 10 == 0) {
+                        store.appendAll(List.of(tx));
+                    } else {
+                        store.append(tx);
+                    }
+                }
+            }));
+        }
+        writers.forEach(Thread::start);
+        for (Thread writer : writers) {
+            writer.join();
+        }
+
+        List<Transaction> all = store.all();
+        assertEquals(40_000, store.size(), "Every claimed position should be published");
+        assertEquals(40_000, all.stream().map(Transaction::getId).distinct().count(), "No posting should be lost or doubled");
+        for (long from : new long[] {0, 3_000, 20_000, 39_000}) {
+            Instant lo = start.plusMillis(from);
+            Instant hi = lo.plusMillis(2_000);
+            long expected = all.stream().filter(tx -> tx.getTimestamp().isAfter(lo) && !tx.getTimestamp().isAfter(hi)).count();
+            assertEquals(expected, store.between(lo, hi).size(), "A time range should find every posting in it");
+            assertEquals(expected, store.countBetween(lo, hi), "Counts should agree with the postings");
+        }
+    }
+
+    @Test
+    public void tieredStoreReadsAcrossHotAndColdTiers() throws IOException {
+        Path dir = Files.createTempDirectory("segments");
+        TieredTransactionStore store = new TieredTransactionStore(dir, 1);
+        BankRepository tiered = new BankRepository(clock, businessZone, null, store);
+        var carol = tiered.addCustomer("Carol", "carol@email.com");
+        Account a = tiered.addAccount(carol.getId(), AccountType.CHECKING, bd("0.00"));
+        Account b = tiered.addAccount(carol.getId(), AccountType.SAVINGS, bd("0.00"));
+        Instant start = Instant.parse("2023-02-01T00:00:00Z");
+        for (int i = 0; i < 100_000; i++) {
+            UUID target = i % 4 == 0 ? b.getId() : a.getId();
+            tiered.addTransaction(new Transaction(UUID.randomUUID(), start.plusMillis(i), LocalDate.of(2023, 2, 1),
+                                                  TransactionType.DEPOSIT, null, target, bd("1.25"), "Tick " + (i % 10)));
+        }
+        tiered.close(); //waits for the roller to finish
+
+        try (var files = Files.list(dir)) {
+            assertTrue(files.findAny().isPresent(), "Older postings should have been rolled to disk");
+        }
+        assertEquals(100_000, tiered.getAllTransactions().size(), "All postings should be readable across tiers");
+        assertEquals(25_000, tiered.getTransactionsByAccount(b.getId()).size(), "Account history should span both tiers");
+        List<Transaction> oldest = tiered.getTransactionsBetween(start.minusMillis(1), start.plusMillis(9));
+        assertEquals(10, oldest.size(), "Cold postings should be found by time range");
+        assertEquals(start.plusMillis(9), oldest.get(0).getTimestamp(), "Cold results should be newest first");
+        assertEquals(bd("1.25"), oldest.get(0).getAmount(), "Amounts should round-trip through the cold tier");
+        assertEquals("Tick 9", oldest.get(0).getDescription(), "Descriptions should round-trip through the cold tier");
+        assertEquals(99_000, tiered.countTransactionsSince(start.plusMillis(999)), "Counts should span both tiers");
+        assertEquals(25_000, tiered.streamTransactions(TransactionFilter.forAccount(b.getId()), ScanDirection.OLDEST_FIRST).count(),
+                     "A cursor should stream across both tiers");
+        assertEquals(start, tiered.streamTransactions(TransactionFilter.all(), ScanDirection.OLDEST_FIRST).findFirst().get().getTimestamp(),
+                     "A forward cursor should start at the oldest cold posting");
+    }
+
+    @Test
+    public void statementLookupsSkipColdFilesWithoutTheAccount() throws IOException {
+        Path dir = Files.createTempDirectory("segments");
+        Instant start = Instant.parse("2023-02-01T00:00:00Z");
+        UUID rare = UUID.randomUUID();
+        int files = 5;
+        int perFile = 16 * 4096; //SEGMENTS_PER_FILE log segments per cold file
+        TieredTransactionStore store = new TieredTransactionStore(dir, 1);
+        try (store) { //closing waits for the roller to finish
+            //every posting but one goes to a fresh account, so each file holds tens of thousands of distinct ids
+            for (int i = 0; i < (files + 2) * perFile; i++) {
+                UUID target = i == perFile + 7 ? rare : UUID.randomUUID();
+                store.append(new Transaction(UUID.randomUUID(), start.plusMillis(i), LocalDate.of(2023, 2, 1),
+                                             TransactionType.DEPOSIT, null, target, bd("1.00"), "Tick"));
+            }
+        }
+        try (var cold = Files.list(dir)) {
+            assertTrue(cold.count() >= files, "Older postings should have been rolled to disk");
+        }
+
+        long before = store.coldSegmentReads();
+        assertEquals(1, store.byAccount(rare).size(), "The rare account's posting should be found");
+        long touched = store.coldSegmentReads() - before;
+        assertTrue(touched >= 1 && touched <= 2, "A statement lookup should decode few cold files, decoded " + touched);
+    }
+
+    @Test
+    public void tieredStoreKeepsPostingsHotWhenARollFails() throws IOException {
+        Path dir = Files.createTempDirectory("segments");
+        Instant start = Instant.parse("2023-02-01T00:00:00Z");
+        int postings = 18 * 4096 + 1; //past the hot window plus one file's worth of log segments
+        UUID accountId = UUID.randomUUID();
+        TieredTransactionStore store = new TieredTransactionStore(dir, 1);
+        try (store) { //closing waits for the roller to finish
+            Files.delete(dir); //every cold file write now fails
+            for (int i = 0; i < postings; i++) {
+                store.append(new Transaction(UUID.randomUUID(), start.plusMillis(i), LocalDate.of(2023, 2, 1),
+                                             TransactionType.DEPOSIT, null, accountId, bd("1.00"), "Tick"));
+            }
+        }
+
+        assertNotNull(store.rollFailure(), "The failed roll should be reported");
+        assertEquals(postings, store.all().size(), "Postings that could not be rolled should stay readable");
+        assertEquals(postings, store.byAccount(accountId).size(), "The hot account index should keep them too");
+    }
+
+    @Test
+    public void cursorsPageThroughAStableSnapshot() {
+        Account a = repo.addAccount(alice.getId(), AccountType.CHECKING, bd("0.00"));
+        Account b = repo.addAccount(alice.getId(), AccountType.SAVINGS, bd("0.00"));
+        Instant start = Instant.parse("2023-02-01T00:00:00Z");
+        for (int i = 0; i < 10_000; i++) {
+            UUID target = i % 3 == 0 ? b.getId() : a.getId();
+            repo.addTransaction(new Transaction(UUID.randomUUID(), start.plusSeconds(i), LocalDate.of(2023, 2, 1),
+                                                TransactionType.DEPOSIT, null, target, bd("1.00"), "Tick " + i));
+        }
+
+        TransactionFilter window = TransactionFilter.forAccount(b.getId()).between(start.plusSeconds(5_000), start.plusSeconds(8_000));
+        List<Transaction> forward = new ArrayList<>();
+        String token = null;
+        do {
+            TransactionPage page = repo.getTransactionPage(window, ScanDirection.OLDEST_FIRST, token, 70);
+            assertTrue(page.items().size() <= 70, "Pages should honour their size");
+            forward.addAll(page.items());
+            token = page.nextPageToken();
+            if (forward.size() == 140) {
+                //postings appended mid-scan are after the snapshot point
+                repo.addTransaction(new Transaction(UUID.randomUUID(), start.plusSeconds(7_000), LocalDate.of(2023, 2, 1),
+                                                    TransactionType.DEPOSIT, null, b.getId(), bd("1.00"), "Late"));
+            }
+        } while (token != null);
+        assertEquals(1_000, forward.size(), "Every third posting in the window belongs to the account");
+        assertEquals(start.plusSeconds(5_001), forward.get(0).getTimestamp(), "Forward pages should start at the oldest match");
+        assertEquals(start.plusSeconds(7_998), forward.get(999).getTimestamp(), "Forward pages should end at the newest match");
+
+        List<Transaction> backward = repo.streamTransactions(window, ScanDirection.NEWEST_FIRST).toList();
+        assertEquals(1_001, backward.size(), "A new cursor should see the posting appended before it opened");
+        assertEquals("Late", backward.get(0).getDescription(), "Backward cursors should start at the newest match");
+        assertEquals(forward.get(0), backward.get(1_000), "Backward cursors should end where forward ones start");
+
+        TransactionPage last = repo.getTransactionPage(TransactionFilter.all(), ScanDirection.NEWEST_FIRST, null, 3);
+        assertEquals("Late", last.items().get(0).getDescription(), "Unfiltered pages should start at the newest posting");
+        TransactionPage next = repo.getTransactionPage(TransactionFilter.all(), ScanDirection.NEWEST_FIRST, last.nextPageToken(), 3);
+        assertEquals(repo.getRecentTransactions(6).subList(3, 6), next.items(), "A token should resume right after its page");
+    }
+
+    @Test
+    public void accountCursorsReadOnlyTheAccountsPostingsOffHeap() {
+        LongAdder rowsRead = new LongAdder();
+        BankRepository offHeap = new BankRepository(clock, businessZone, null, new OffHeapTransactionStore() {
+            @Override
+            public List<Transaction> range(long from, long to) {
+                List<Transaction> rows = super.range(from, to);
+                rowsRead.add(rows.size());
+                return rows;
+            }
+        });
+        var carol = offHeap.addCustomer("Carol", "carol@email.com");
+        Account a = offHeap.addAccount(carol.getId(), AccountType.CHECKING, bd("0.00"));
+        Account b = offHeap.addAccount(carol.getId(), AccountType.SAVINGS, bd("0.00"));
+        Instant start = Instant.parse("2023-02-01T00:00:00Z");
+        for (int i = 0; i < 20_000; i++) {
+            UUID target = i % 100 == 0 ? b.getId() : a.getId();
+            offHeap.addTransaction(new Transaction(UUID.randomUUID(), start.plusSeconds(i), LocalDate.of(2023, 2, 1),
+                                                   TransactionType.DEPOSIT, null, target, bd("1.00"), "Tick " + i));
+        }
+
+        TransactionFilter window = TransactionFilter.forAccount(b.getId()).between(start.plusSeconds(5_000), start.plusSeconds(15_000));
+        List<Transaction> forward = new ArrayList<>();
+        String token = null;
+        do {
+            TransactionPage page = offHeap.getTransactionPage(window, ScanDirection.OLDEST_FIRST, token, 7);
+            forward.addAll(page.items());
+            token = page.nextPageToken();
+        } while (token != null);
+        assertEquals(100, forward.size(), "Every hundredth posting in the window belongs to the account");
+        assertEquals(start.plusSeconds(5_100), forward.get(0).getTimestamp(), "Forward pages should start at the oldest match");
+        assertEquals(start.plusSeconds(15_000), forward.get(99).getTimestamp(), "Forward pages should end at the newest match");
+
+        List<Transaction> backward = new ArrayList<>();
+        do {
+            TransactionPage page = offHeap.getTransactionPage(window, ScanDirection.NEWEST_FIRST, token, 7);
+            backward.addAll(page.items());
+            token = page.nextPageToken();
+        } while (token != null);
+        assertEquals(forward.stream().map(Transaction::getId).toList(), backward.reversed().stream().map(Transaction::getId).toList(),
+                     "Backward pages should hold the same postings newest first");
+
+        rowsRead.reset();
+        assertEquals(100, offHeap.streamTransactions(window, ScanDirection.NEWEST_FIRST).count(), "A scan should find every match");
+        assertEquals(200, rowsRead.sum(), "An account scan should read only the account's postings, not the whole log");
+    }
+
+    @Test
+    public void transactionIdsFollowCreationOrder() throws InterruptedException {
+        Account account = repo.addAccount(alice.getId(), AccountType.CHECKING, bd("0.00"));
+        //the fixed test clock never ticks, so order comes from the per-thread sequence and borrowed milliseconds
+        for (int i = 0; i < 5_000; i++) {
+            accountService.deposit(account.getId(), bd("1.00"), "Tick");
+        }
+        List<Transaction> history = repo.getTransactionsByAccount(account.getId());
+        for (int i = 1; i < history.size(); i++) {
+            assertTrue(history.get(i - 1).getId().compareTo(history.get(i).getId()) > 0, "Newer postings should have larger ids");
+        }
+        assertEquals(7, history.get(0).getId().version(), "Ids should be UUIDv7");
+        assertEquals(clock.millis(), history.get(history.size() - 1).getId().getMostSignificantBits() >>> 16,
+                     "Ids should lead with the creation millisecond");
+
+        Set<UUID> seen = ConcurrentHashMap.newKeySet();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    seen.add(repo.newId());
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(40_000, seen.size(), "Threads should never mint the same id");
+    }
+}
@@ -0,0 +1,260 @@
+package com.example.bank;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import org.junit.jupiter.api.Test;
+
+import com.example.bank.domain.Account;
+import com.example.bank.domain.AccountType;
+import com.example.bank.domain.Money;
+import com.example.bank.domain.Transaction;
+import com.example.bank.repository.BankRepository;
+import com.example.bank.repository.PostingPipeline;
+import com.example.bank.repository.ShardRouter;
+import com.example.bank.service.TransferContention;
+import com.example.bank.service.TransferOutcome;
+import com.example.bank.service.TransferRequest;
+import com.example.bank.service.TransferService;
+
+public class TransferSetup extends TestSetup {
+    @Test
+    public void settlementBatchesCheckFundsAgainstNetPositions() {
+        Account a = repo.addAccount(alice.getId(), AccountType.CHECKING, bd("10.00"));
+        Account b = repo.addAccount(bob.getId(), AccountType.CHECKING, bd("10.00"));
+        Account c = repo.addAccount(bob.getId(), AccountType.SAVINGS, bd("0.00"));
+
+        //a sends 50 but receives 45 back, so it only needs 5 of its own
+        List<TransferRequest> batch = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            batch.add(new TransferRequest(a.getId(), b.getId(), Money.parse("10.00"), "Out " + i));
+            batch.add(new TransferRequest(b.getId(), a.getId(), Money.parse("9.00"), "Back " + i));
+        }
+        batch.add(new TransferRequest(b.getId(), c.getId(), Money.parse("1.00"), "Fee"));
+        List<Transaction> recorded = transferService.transferBatch(batch);
+
+        assertEquals(11, recorded.size(), "Every transfer is recorded on its own");
+        assertEquals(Money.parse("5.00"), a.getBalanceMoney());
+        assertEquals(Money.parse("14.00"), b.getBalanceMoney());
+        assertEquals(Money.parse("1.00"), c.getBalanceMoney());
+        assertEquals(10, repo.getTransactionsByAccount(a.getId()).size() - 1, "Both legs of a's transfers are indexed");
+        assertEquals("Fee", repo.getTransactionsByAccount(c.getId()).get(0).getDescription());
+    }
+
+    @Test
+    public void settlementBatchesApplyAllOrNothing() {
+        Account a = repo.addAccount(alice.getId(), AccountType.CHECKING, bd("10.00"));
+        Account b = repo.addAccount(bob.getId(), AccountType.CHECKING, bd("10.00"));
+        Account c = repo.addAccount(bob.getId(), AccountType.SAVINGS, bd("0.00"));
+        long before = repo.getAllTransactions().size();
+
+        IllegalArgumentException shortfall = assertThrows(IllegalArgumentException.class, () -> transferService.transferBatch(List.of(
+            new TransferRequest(a.getId(), c.getId(), Money.parse("10.00"), "Fine"),
+            new TransferRequest(b.getId(), c.getId(), Money.parse("10.01"), "Too much"))));
+        assertTrue(shortfall.getMessage().contains(b.getId().toString()), "The short account should be named");
+        assertThrows(IllegalArgumentException.class, () -> transferService.transferBatch(List.of(
+            new TransferRequest(a.getId(), c.getId(), Money.parse("1.00"), "Fine"),
+            new TransferRequest(b.getId(), b.getId(), Money.parse("1.00"), "Self"))));
+
+        assertEquals(Money.parse("10.00"), a.getBalanceMoney(), "A rejected batch moves nothing");
+        assertEquals(Money.parse("10.00"), b.getBalanceMoney());
+        assertEquals(Money.ZERO, c.getBalanceMoney());
+        assertEquals(before, repo.getAllTransactions().size(), "A rejected batch records nothing");
+    }
+
+    @Test
+    public void settlementBatchesRejectACreditThatWouldOverflow() {
+        Account a = repo.addAccount(alice.getId(), AccountType.CHECKING, bd("10.00"));
+        Account c = repo.addAccount(bob.getId(), AccountType.SAVINGS, bd("0.00"));
+        Account full = repo.addAccount(bob.getId(), AccountType.CHECKING, Money.ofMinor(Long.MAX_VALUE - 500));
+        long before = repo.getAllTransactions().size();
+
+        IllegalArgumentException overflow = assertThrows(IllegalArgumentException.class, () -> transferService.transferBatch(List.of(
+            new TransferRequest(a.getId(), c.getId(), Money.parse("1.00"), "Fine"),
+            new TransferRequest(a.getId(), full.getId(), Money.parse("5.01"), "Too much"))));
+        assertTrue(overflow.getMessage().contains(full.getId().toString()), "The full account should be named");
+
+        assertEquals(Money.parse("10.00"), a.getBalanceMoney(), "No payer is debited for a batch that cannot credit");
+        assertEquals(Money.ZERO, c.getBalanceMoney());
+        assertEquals(Money.ofMinor(Long.MAX_VALUE - 500), full.getBalanceMoney());
+        assertEquals(before, repo.getAllTransactions().size(), "A rejected batch records nothing");
+    }
+
+    @Test
+    public void consistentReadsNeverSeeHalfASettlementBatch() throws InterruptedException {
+        Account a = repo.addAccount(alice.getId(), AccountType.CHECKING, bd("100.00"));
+        Account b = repo.addAccount(bob.getId(), AccountType.CHECKING, bd("0.00"));
+        Account c = repo.addAccount(bob.getId(), AccountType.SAVINGS, bd("0.00"));
+        assertTrue(a.getId().compareTo(b.getId()) < 0, "Ids are time-ordered, so a is debited before b");
+        AtomicBoolean done = new AtomicBoolean();
+        AtomicReference<String> torn = new AtomicReference<>();
+        Thread reader = new Thread(() -> {
+            while (!done.get()) {
+                Money total = repo.readConsistent(() -> a.getBalanceMoney().plus(b.getBalanceMoney()).plus(c.getBalanceMoney()));
+                if (!total.equals(Money.parse("100.00"))) {
+                    torn.compareAndSet(null, "A consistent read saw " + total);
+                }
+            }
+        });
+        reader.start();
+        int rejected = 0;
+        try {
+            for (int i = 0; i < 2_000; i++) {
+                //the second batch debits a, then finds b short and hands a's debit back
+                transferService.transferBatch(List.of(
+                    new TransferRequest(a.getId(), b.getId(), Money.parse("1.00"), "Out"),
+                    new TransferRequest(b.getId(), c.getId(), Money.parse("1.00"), "On")));
+                try {
+                    transferService.transferBatch(List.of(
+                        new TransferRequest(a.getId(), c.getId(), Money.parse("1.00"), "Fine"),
+                        new TransferRequest(b.getId(), c.getId(), Money.parse("1.00"), "Short")));
+                } catch (IllegalArgumentException shortfall) {
+                    rejected++;
+                }
+                transferService.transferBatch(List.of(new TransferRequest(c.getId(), a.getId(), Money.parse("1.00"), "Back")));
+            }
+        } finally {
+            done.set(true);
+            reader.join();
+        }
+        assertEquals(null, torn.get());
+        assertEquals(2_000, rejected, "b never holds anything between batches");
+        assertEquals(Money.parse("100.00"), a.getBalanceMoney(), "Rejected batches should leave a whole");
+    }
+
+    @Test
+    public void timedTransfersAnswerBusyInsteadOfHanging() throws InterruptedException {
+        Account hot = repo.addAccount(alice.getId(), AccountType.CHECKING, bd("0.00"));
+        Account other = repo.addAccount(bob.getId(), AccountType.CHECKING, bd("0.00"));
+        repo.markHot(hot.getId(), 4);
+        accountService.deposit(hot.getId(), bd("100.00"), "Striped"); //the base cell stays empty, so debits need the lock
+
+        CountDownLatch held = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Thread holder = new Thread(() -> {
+            hot.getLock().lock();
+            try {
+                held.countDown();
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                hot.getLock().unlock();
+            }
+        });
+        holder.start();
+        held.await();
+
+        long started = System.nanoTime();
+        TransferOutcome outcome = transferService.tryTransfer(hot.getId(), other.getId(), Money.parse("10.00"), "Busy", Duration.ofMillis(30));
+        long waitedMillis = (System.nanoTime() - started) / 1_000_000;
+        assertEquals(TransferOutcome.BUSY, outcome);
+        assertTrue(waitedMillis < 1_000, "The caller should get an answer near its deadline");
+        assertEquals(Money.parse("100.00"), hot.getBalanceMoney(), "A busy transfer moves nothing");
+        assertEquals(Money.ZERO, other.getBalanceMoney());
+
+        release.countDown();
+        holder.join();
+        assertEquals(TransferOutcome.COMPLETED,
+                     transferService.tryTransfer(hot.getId(), other.getId(), Money.parse("10.00"), "Free", Duration.ofMillis(30)));
+        assertEquals(Money.parse("10.00"), other.getBalanceMoney());
+        assertThrows(IllegalArgumentException.class,
+                     () -> transferService.tryTransfer(other.getId(), hot.getId(), Money.parse("50.00"), "Short", Duration.ZERO));
+
+        TransferContention stats = transferService.getContentionStats();
+        assertEquals(3, stats.timedTransfers());
+        assertEquals(1, stats.contendedTransfers());
+        assertEquals(1, stats.busyTransfers());
+        assertTrue(stats.backoffs() > 0 && !stats.backoffTime().isZero(), "Backoffs should be counted");
+    }
+
+    @Test
+    public void transfersRejectACreditThatWouldOverflowBeforeDebiting() {
+        Account source = repo.addAccount(alice.getId(), AccountType.CHECKING, bd("10.00"));
+        Account full = repo.addAccount(bob.getId(), AccountType.CHECKING, Money.ofMinor(Long.MAX_VALUE - 500));
+        assertThrows(IllegalArgumentException.class, () -> transferService.transfer(source.getId(), full.getId(), Money.parse("5.01"), "Too much"));
+        assertEquals(Money.parse("10.00"), source.getBalanceMoney(), "The source keeps its money");
+        assertEquals(1, repo.getTransactionsByAccount(source.getId()).size(), "Nothing is recorded");
+
+        try (BankRepository sharded = new BankRepository(clock, businessZone, null, new ShardRouter(2))) {
+            var carol = sharded.addCustomer("Carol", "carol@email.com");
+            Account from = sharded.addAccount(carol.getId(), AccountType.CHECKING, bd("10.00"));
+            Account to = sharded.addAccount(carol.getId(), AccountType.SAVINGS, Money.ofMinor(Long.MAX_VALUE - 500));
+            while (sharded.sameShard(from.getId(), to.getId())) {
+                to = sharded.addAccount(carol.getId(), AccountType.SAVINGS, Money.ofMinor(Long.MAX_VALUE - 500));
+            }
+            UUID target = to.getId();
+            TransferService crossShard = new TransferService(sharded, clock, businessZone);
+            assertThrows(IllegalArgumentException.class, () -> crossShard.transfer(from.getId(), target, Money.parse("5.01"), "Too much"));
+            assertEquals(Money.parse("10.00"), from.getBalanceMoney(), "A cross-shard transfer checks the target before the debit");
+            assertEquals(Money.ofMinor(Long.MAX_VALUE - 500), to.getBalanceMoney());
+        }
+    }
+
+    @Test
+    public void timedTransfersGiveUpOnABusyShardOrPipeline() throws InterruptedException {
+        try (BankRepository sharded = new BankRepository(clock, businessZone, null, new ShardRouter(2))) {
+            var carol = sharded.addCustomer("Carol", "carol@email.com");
+            Account source = sharded.addAccount(carol.getId(), AccountType.CHECKING, bd("100.00"));
+            Account target = sharded.addAccount(carol.getId(), AccountType.SAVINGS, bd("0.00"));
+            assertBusyWhileStalled(sharded, source, target, stall -> sharded.onShard(source.getId(), stall));
+        }
+        try (BankRepository pipelined = new BankRepository(clock, businessZone, null, new PostingPipeline(16))) {
+            var carol = pipelined.addCustomer("Carol", "carol@email.com");
+            Account source = pipelined.addAccount(carol.getId(), AccountType.CHECKING, bd("100.00"));
+            Account target = pipelined.addAccount(carol.getId(), AccountType.SAVINGS, bd("0.00"));
+            assertBusyWhileStalled(pipelined, source, target, pipelined::posting);
+        }
+    }
+
+    //stalls the thread the source's postings run on, then expects a timed transfer out of the (not hot) source to
+    //answer BUSY near its deadline and never run, even once the stall ends
+    private void assertBusyWhileStalled(BankRepository bank, Account source, Account target,
+                                        Consumer<Supplier<Void>> runStall) throws InterruptedException {
+        TransferService timed = new TransferService(bank, clock, businessZone);
+        CountDownLatch stalled = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Thread staller = new Thread(() -> runStall.accept(() -> {
+            stalled.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return null;
+        }));
+        staller.start();
+        stalled.await();
+
+        long started = System.nanoTime();
+        TransferOutcome outcome;
+        try {
+            outcome = timed.tryTransfer(source.getId(), target.getId(), Money.parse("10.00"), "Stalled", Duration.ofMillis(30));
+        } finally {
+            release.countDown();
+            staller.join();
+        }
+        long waitedMillis = (System.nanoTime() - started) / 1_000_000;
+        assertEquals(TransferOutcome.BUSY, outcome, "A stalled source should answer BUSY");
+        assertTrue(waitedMillis < 1_000, "The caller should get an answer near its deadline");
+        assertFalse(source.isHot(), "The source was never hot");
+
+        assertEquals(TransferOutcome.COMPLETED,
+                     timed.tryTransfer(source.getId(), target.getId(), Money.parse("1.00"), "Free", Duration.ofMillis(500)));
+        assertEquals(Money.parse("99.00"), source.getBalanceMoney(), "The abandoned transfer should never run");
+        assertEquals(Money.parse("1.00"), target.getBalanceMoney());
+        assertEquals(1, timed.getContentionStats().busyTransfers());
+    }
+}